@@ -0,0 +1,25 @@
+package com.example.bicolorsphere.service;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH 入口：始终挂上 GC 分析器（gc.alloc.rate.norm = 每次操作分配字节数），其余参数与 JMH 命令行一致。
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // exec:exec 把 -Dbench.args 作为一个整体参数传入，这里按空白拆开
+        String[] a = args.length == 1 ? args[0].trim().split("\\s+") : args;
+        CommandLineOptions cmd = new CommandLineOptions(a);
+        new Runner(new OptionsBuilder()
+                .parent(cmd)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
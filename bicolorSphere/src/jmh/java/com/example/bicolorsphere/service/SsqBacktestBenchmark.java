@@ -0,0 +1,40 @@
+package com.example.bicolorsphere.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回测：默认 trainWindow=200、testCount=50。ml 每步都会重新调权重，单独列出且只测一轮以免拖慢整套基准。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SsqBacktestBenchmark {
+
+    @Param({"frequency_top", "omission_top", "hybrid", "weighted_random", "zone_balanced", "markov", "bayes"})
+    public String strategy;
+
+    @Param({"200"})
+    public int trainWindow;
+
+    @Param({"50"})
+    public int testCount;
+
+    private SsqStatsService stats;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stats = new SsqStatsService(SyntheticHistory.history(
+                SyntheticHistory.ascending(SyntheticHistory.DEFAULT_SIZE, 42L)), new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public Object backtest() {
+        return stats.backtest(strategy, trainWindow, testCount, null);
+    }
+}
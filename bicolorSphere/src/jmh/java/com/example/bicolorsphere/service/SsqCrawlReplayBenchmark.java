@@ -0,0 +1,90 @@
+package com.example.bicolorsphere.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 回放模式下顺序抓完整个语料（读文件 + 模拟延迟 + 解析），结果为一轮耗时。
+ * corpus 为空时用 fixtures 下的 3 个页面循环生成 150 页；也可指定 record 模式录下的目录。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SsqCrawlReplayBenchmark {
+
+    private static final String[] FIXTURES = {
+            "fixtures/ssq_wqhg_page1.html", "fixtures/ssq_wqhg_page2.html", "fixtures/ssq_wqhg_page3.html"
+    };
+    private static final int SYNTHETIC_PAGES = 150;
+
+    @Param({""})
+    public String corpus;
+
+    @Param({"0", "5"})
+    public long latencyMs;
+
+    private Path dir;
+    private boolean generated;
+    private int pages;
+    private SsqCrawlerService crawler;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        generated = corpus.isEmpty();
+        dir = generated ? Files.createTempDirectory("ssq-corpus-") : Paths.get(corpus);
+        if (generated) {
+            for (int p = 1; p <= SYNTHETIC_PAGES; p++) {
+                Files.write(dir.resolve(SsqCorpusPageFetcher.fileName("?pageNum=" + p)), fixture(FIXTURES[(p - 1) % FIXTURES.length]));
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            pages = (int) files.filter(f -> f.getFileName().toString().matches("page-\\d+\\.html")).count();
+        }
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        crawler = new SsqCrawlerService(new SsqCorpusPageFetcher(null, registry, SsqCorpusPageFetcher.Mode.REPLAY, dir, latencyMs, 0), registry);
+        if (crawler.fetchPage(1).isEmpty()) {
+            throw new IllegalStateException("no rows parsed from " + dir);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (!generated) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(f);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public int replayAllPages() throws IOException {
+        int rows = 0;
+        for (int p = 1; p <= pages; p++) {
+            rows += crawler.fetchPage(p).size();
+        }
+        return rows;
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = SsqCrawlReplayBenchmark.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("fixture not found: " + name);
+            }
+            return StreamUtils.copyToByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.bicolorsphere.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 页面解析（不含网络）：fixtures 下保存的开奖历史页面，HTML 解析 + 逐行提取号码。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SsqCrawlerParseBenchmark {
+
+    @Param({"fixtures/ssq_wqhg_page1.html", "fixtures/ssq_wqhg_page2.html", "fixtures/ssq_wqhg_page3.html"})
+    public String fixture;
+
+    private SsqCrawlerService crawler;
+    private String html;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        // 只测 parsePage，不发请求
+        crawler = new SsqCrawlerService(null, new SimpleMeterRegistry());
+        try (InputStream in = SsqCrawlerParseBenchmark.class.getClassLoader().getResourceAsStream(fixture)) {
+            if (in == null) {
+                throw new IOException("fixture not found: " + fixture);
+            }
+            html = new String(StreamUtils.copyToByteArray(in), StandardCharsets.UTF_8);
+        }
+        if (crawler.parsePage(html).size() != 20) {
+            throw new IllegalStateException("unexpected row count in " + fixture);
+        }
+    }
+
+    @Benchmark
+    public List<?> parsePage() {
+        return crawler.parsePage(html);
+    }
+}
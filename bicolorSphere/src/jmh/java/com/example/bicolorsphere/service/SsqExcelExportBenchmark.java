@@ -0,0 +1,38 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导出 xlsx：默认上限 5000 行以内的常见规模。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class SsqExcelExportBenchmark {
+
+    @Param({"500", "3000"})
+    public int rows;
+
+    private SsqExcelExportService export;
+    private List<SsqDraw> draws;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        export = new SsqExcelExportService(new SimpleMeterRegistry());
+        draws = SyntheticHistory.latestFirst(SyntheticHistory.ascending(SyntheticHistory.DEFAULT_SIZE, 42L), rows);
+    }
+
+    @Benchmark
+    public byte[] exportDraws() throws IOException {
+        return export.exportDraws(draws);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 较重的整体路径：recommend（8 组候选回测）、ml 融合权重调参（每次调用前清空权重缓存）、ml 回测。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SsqModelBenchmark {
+
+    @Param({"300"})
+    public int latestN;
+
+    private SsqStatsService stats;
+    private List<SsqDraw> ordered;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<SsqDraw> all = SyntheticHistory.ascending(SyntheticHistory.DEFAULT_SIZE, 42L);
+        stats = new SsqStatsService(SyntheticHistory.history(all), new SimpleMeterRegistry());
+        ordered = SyntheticHistory.latestFirst(all, latestN);
+        Collections.reverse(ordered);
+        ordered = new ArrayList<SsqDraw>(ordered);
+    }
+
+    @Benchmark
+    public Object recommend() {
+        return stats.recommend(200, 80);
+    }
+
+    @Benchmark
+    public int[] tuneEnsembleWeights() {
+        SsqStatsService.clearEnsembleWeightCache();
+        return stats.getOrTuneEnsembleWeights(ordered);
+    }
+
+    @Benchmark
+    @Measurement(iterations = 1, time = 5)
+    public Object backtestMl() {
+        return stats.backtest("ml", 200, 20, null);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单注采样：pickFromDraws 各策略（ml 的融合权重在 setup 中已调好并缓存，这里只测采样本身）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SsqPickBenchmark {
+
+    @Param({"frequency_top", "omission_top", "hybrid", "weighted_random", "zone_balanced", "markov", "bayes", "ml"})
+    public String strategy;
+
+    @Param({"300"})
+    public int latestN;
+
+    private SsqStatsService stats;
+    private List<SsqDraw> draws;
+    private SsqRandom root;
+    private long step;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<SsqDraw> all = SyntheticHistory.ascending(SyntheticHistory.DEFAULT_SIZE, 42L);
+        stats = new SsqStatsService(SyntheticHistory.history(all), new SimpleMeterRegistry());
+        draws = SyntheticHistory.latestFirst(all, latestN);
+        root = SsqRandom.of(42L);
+        stats.pickFromDraws(draws, strategy, SsqRandom.of(0), null);
+    }
+
+    @Benchmark
+    public Object pick() {
+        return stats.pickFromDraws(draws, strategy, root.derive(step++), null);
+    }
+}
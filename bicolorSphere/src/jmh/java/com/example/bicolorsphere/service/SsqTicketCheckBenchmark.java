@@ -0,0 +1,49 @@
+package com.example.bicolorsphere.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量兑奖核心循环：每次调用核对 10 万注，按注数折算即为每秒核对注数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SsqTicketCheckBenchmark {
+
+    private static final int TICKETS = 100000;
+
+    private long[] reds;
+    private int[] blues;
+    private int[] tiers;
+    private long[] counts;
+    private long drawRed;
+    private int drawBlue;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random rnd = new Random(42L);
+        reds = new long[TICKETS];
+        blues = new int[TICKETS];
+        for (int i = 0; i < TICKETS; i++) {
+            reds[i] = SsqBitmask.randomReds(rnd);
+            blues[i] = SsqBitmask.blueBit(1 + rnd.nextInt(16));
+        }
+        tiers = new int[TICKETS];
+        counts = new long[7];
+        drawRed = SsqBitmask.randomReds(rnd);
+        drawBlue = SsqBitmask.blueBit(1 + rnd.nextInt(16));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKETS)
+    public long[] evaluate() {
+        SsqTicketService.evaluate(reds, blues, TICKETS, drawRed, drawBlue, tiers, counts);
+        return counts;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import com.example.bicolorsphere.repo.SsqDrawRepository;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准用的合成开奖历史：固定种子，期号/开奖日按真实规则（每周二、四、日开奖，期号按年重置）生成。
+ */
+final class SyntheticHistory {
+
+    static final int DEFAULT_SIZE = 3000;
+
+    private SyntheticHistory() {
+    }
+
+    /**
+     * 期号升序。
+     */
+    static List<SsqDraw> ascending(int size, long seed) {
+        Random rnd = new Random(seed);
+        List<SsqDraw> out = new ArrayList<SsqDraw>(size);
+        LocalDate day = LocalDate.of(2003, 2, 23);
+        int year = day.getYear();
+        int seq = 0;
+        while (out.size() < size) {
+            DayOfWeek w = day.getDayOfWeek();
+            if (w == DayOfWeek.TUESDAY || w == DayOfWeek.THURSDAY || w == DayOfWeek.SUNDAY) {
+                if (day.getYear() != year) {
+                    year = day.getYear();
+                    seq = 0;
+                }
+                seq++;
+                String drawNo = String.format("%d%03d", year, seq);
+                out.add(new SsqDraw(drawNo, day, randomReds(rnd), 1 + rnd.nextInt(16)));
+            }
+            day = day.plusDays(1);
+        }
+        return out;
+    }
+
+    /**
+     * 期号倒序（与 repository.latest 一致）。
+     */
+    static List<SsqDraw> latestFirst(List<SsqDraw> ascending, int limit) {
+        int n = Math.min(limit, ascending.size());
+        List<SsqDraw> out = new ArrayList<SsqDraw>(ascending.subList(ascending.size() - n, ascending.size()));
+        Collections.reverse(out);
+        return out;
+    }
+
+    static SsqDrawHistory history(List<SsqDraw> ascending) {
+        SsqDrawRepository repo = new SsqDrawRepository(null, null) {
+            @Override
+            public List<SsqDraw> allAscending() {
+                return ascending;
+            }
+
+            @Override
+            public String fingerprint() {
+                return ascending.size() + ":" + ascending.get(ascending.size() - 1).getDrawNo();
+            }
+        };
+        return new SsqDrawHistory(repo, Integer.MAX_VALUE / 1000);
+    }
+
+    private static List<Integer> randomReds(Random rnd) {
+        boolean[] used = new boolean[34];
+        List<Integer> reds = new ArrayList<Integer>(6);
+        while (reds.size() < 6) {
+            int v = 1 + rnd.nextInt(33);
+            if (!used[v]) {
+                used[v] = true;
+                reds.add(v);
+            }
+        }
+        Collections.sort(reds);
+        return reds;
+    }
+}
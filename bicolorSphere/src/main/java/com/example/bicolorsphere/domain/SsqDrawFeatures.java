@@ -0,0 +1,106 @@
+package com.example.bicolorsphere.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一期开奖红球的派生特征，入库时计算一次写入 ssq_draw 的特征列。
+ */
+public class SsqDrawFeatures {
+    private final int sum;
+    private final int span;
+    private final int oddCount;
+    private final int zone1;
+    private final int zone2;
+    private final int zone3;
+    private final int acValue;
+    private final int consecutivePairs;
+    private final Integer repeatPrev;
+
+    private SsqDrawFeatures(int sum, int span, int oddCount, int zone1, int zone2, int zone3,
+                            int acValue, int consecutivePairs, Integer repeatPrev) {
+        this.sum = sum;
+        this.span = span;
+        this.oddCount = oddCount;
+        this.zone1 = zone1;
+        this.zone2 = zone2;
+        this.zone3 = zone3;
+        this.acValue = acValue;
+        this.consecutivePairs = consecutivePairs;
+        this.repeatPrev = repeatPrev;
+    }
+
+    /**
+     * @param prevReds 上一期红球，没有上一期时为 null（repeatPrev 为 null）
+     */
+    public static SsqDrawFeatures of(List<Integer> reds, List<Integer> prevReds) {
+        List<Integer> r = new ArrayList<Integer>(reds);
+        Collections.sort(r);
+        int sum = 0;
+        int odd = 0;
+        int z1 = 0, z2 = 0, z3 = 0;
+        int consecutive = 0;
+        Set<Integer> diffs = new HashSet<Integer>();
+        for (int i = 0; i < r.size(); i++) {
+            int v = r.get(i);
+            sum += v;
+            if ((v & 1) == 1) odd++;
+            if (v <= 11) z1++; else if (v <= 22) z2++; else z3++;
+            if (i > 0 && v == r.get(i - 1) + 1) consecutive++;
+            for (int j = 0; j < i; j++) {
+                diffs.add(v - r.get(j));
+            }
+        }
+        int span = r.isEmpty() ? 0 : r.get(r.size() - 1) - r.get(0);
+        int ac = Math.max(0, diffs.size() - (r.size() - 1));
+        return new SsqDrawFeatures(sum, span, odd, z1, z2, z3, ac, consecutive, repeatCount(reds, prevReds));
+    }
+
+    public static Integer repeatCount(List<Integer> reds, List<Integer> prevReds) {
+        if (prevReds == null) return null;
+        int n = 0;
+        for (Integer v : reds) {
+            if (prevReds.contains(v)) n++;
+        }
+        return n;
+    }
+
+    public int getSum() {
+        return sum;
+    }
+
+    public int getSpan() {
+        return span;
+    }
+
+    public int getOddCount() {
+        return oddCount;
+    }
+
+    public int getZone1() {
+        return zone1;
+    }
+
+    public int getZone2() {
+        return zone2;
+    }
+
+    public int getZone3() {
+        return zone3;
+    }
+
+    public int getAcValue() {
+        return acValue;
+    }
+
+    public int getConsecutivePairs() {
+        return consecutivePairs;
+    }
+
+    public Integer getRepeatPrev() {
+        return repeatPrev;
+    }
+}
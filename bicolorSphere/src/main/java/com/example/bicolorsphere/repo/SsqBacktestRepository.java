@@ -0,0 +1,282 @@
+package com.example.bicolorsphere.repo;
+
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 持久化的滚动回测：ssq_backtest_config 一行一个配置，ssq_backtest_step 逐期存预测、命中和截至该期的累计值，
+ * 任意最近 T 期的汇总 = 最后一行的累计值 − 倒数第 T+1 行的累计值。
+ */
+@Repository
+@DependsOn("ssqSchemaMigrator")
+public class SsqBacktestRepository {
+
+    private static final String STEP_COLUMNS = "config_id, step_no, draw_no, window_start, predict_reds, predict_blue, red_hit, blue_hit, " +
+            "cum_red_hit, cum_blue_hit, cum_both_hit, cum_dist0, cum_dist1, cum_dist2, cum_dist3, cum_dist4, cum_dist5, cum_dist6";
+
+    private static final RowMapper<ConfigRow> CONFIG_MAPPER = (rs, rowNum) -> new ConfigRow(
+            rs.getLong("id"),
+            rs.getString("strategy"),
+            rs.getString("options_key"),
+            rs.getInt("train_window"),
+            rs.getLong("seed"),
+            rs.getInt("steps"),
+            rs.getString("last_draw_no")
+    );
+
+    private static final RowMapper<StepRow> STEP_MAPPER = (rs, rowNum) -> {
+        int[] dist = new int[7];
+        for (int i = 0; i < dist.length; i++) {
+            dist[i] = rs.getInt("cum_dist" + i);
+        }
+        return new StepRow(
+                rs.getInt("step_no"),
+                rs.getString("draw_no"),
+                rs.getString("window_start"),
+                rs.getString("predict_reds"),
+                rs.getInt("predict_blue"),
+                rs.getInt("red_hit"),
+                rs.getInt("blue_hit") != 0,
+                rs.getInt("cum_red_hit"),
+                rs.getInt("cum_blue_hit"),
+                rs.getInt("cum_both_hit"),
+                dist
+        );
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public SsqBacktestRepository(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public ConfigRow findConfig(String strategy, String optionsKey, int trainWindow, long seed) {
+        List<ConfigRow> rows = jdbcTemplate.query(
+                "SELECT id, strategy, options_key, train_window, seed, steps, last_draw_no FROM ssq_backtest_config " +
+                        "WHERE strategy=? AND options_key=? AND train_window=? AND seed=?",
+                CONFIG_MAPPER, strategy, optionsKey, trainWindow, seed);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * 已存在时不重复插入，返回库里那一行。
+     */
+    public ConfigRow insertConfig(String strategy, String optionsKey, int trainWindow, long seed) {
+        jdbcTemplate.update(
+                "INSERT IGNORE INTO ssq_backtest_config(strategy, options_key, train_window, seed) VALUES (?,?,?,?)",
+                strategy, optionsKey, trainWindow, seed);
+        return findConfig(strategy, optionsKey, trainWindow, seed);
+    }
+
+    public List<ConfigRow> listConfigs() {
+        return jdbcTemplate.query(
+                "SELECT id, strategy, options_key, train_window, seed, steps, last_draw_no FROM ssq_backtest_config ORDER BY id ASC",
+                CONFIG_MAPPER);
+    }
+
+    public long countConfigs() {
+        Long v = jdbcTemplate.queryForObject("SELECT COUNT(1) FROM ssq_backtest_config", Long.class);
+        return v == null ? 0 : v;
+    }
+
+    public void touchConfig(long configId) {
+        jdbcTemplate.update("UPDATE ssq_backtest_config SET last_used_at=CURRENT_TIMESTAMP, updated_at=updated_at WHERE id=?", configId);
+    }
+
+    /**
+     * 只保留最近被查询过的 keep 个配置，其余连同逐期结果删除，返回删除的配置数。
+     */
+    public int evictConfigs(int keep) {
+        long excess = countConfigs() - Math.max(0, keep);
+        if (excess <= 0) return 0;
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM ssq_backtest_config ORDER BY last_used_at ASC, id ASC LIMIT ?", Long.class, excess);
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Long id : ids) {
+                jdbcTemplate.update("DELETE FROM ssq_backtest_step WHERE config_id=?", id);
+                jdbcTemplate.update("DELETE FROM ssq_backtest_config WHERE id=?", id);
+            }
+        });
+        return ids.size();
+    }
+
+    public StepRow step(long configId, int stepNo) {
+        List<StepRow> rows = jdbcTemplate.query(
+                "SELECT " + STEP_COLUMNS + " FROM ssq_backtest_step WHERE config_id=? AND step_no=?",
+                STEP_MAPPER, configId, stepNo);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * step_no 在 [fromStep, toStep] 内的行，按 step_no 升序。
+     */
+    public List<StepRow> steps(long configId, int fromStep, int toStep) {
+        return jdbcTemplate.query(
+                "SELECT " + STEP_COLUMNS + " FROM ssq_backtest_step WHERE config_id=? AND step_no BETWEEN ? AND ? ORDER BY step_no ASC",
+                STEP_MAPPER, configId, fromStep, toStep);
+    }
+
+    /**
+     * 追加若干期（step_no 必须紧接已存的最后一期），并更新配置行的期数与最后一期；两者在同一事务里，
+     * 不会出现步骤已写入而 steps 没跟上、下次追加撞主键的情况。
+     */
+    public void appendSteps(long configId, List<StepRow> steps) {
+        if (steps.isEmpty()) return;
+        List<Object[]> args = new ArrayList<Object[]>(steps.size());
+        for (StepRow s : steps) {
+            int[] d = s.getCumDist();
+            args.add(new Object[]{
+                    configId, s.getStepNo(), s.getDrawNo(), s.getWindowStart(), s.getPredictReds(), s.getPredictBlue(),
+                    s.getRedHit(), s.isBlueHit() ? 1 : 0, s.getCumRedHit(), s.getCumBlueHit(), s.getCumBothHit(),
+                    d[0], d[1], d[2], d[3], d[4], d[5], d[6]
+            });
+        }
+        StepRow last = steps.get(steps.size() - 1);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO ssq_backtest_step(" + STEP_COLUMNS + ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)",
+                    args);
+            jdbcTemplate.update("UPDATE ssq_backtest_config SET steps=?, last_draw_no=? WHERE id=?",
+                    last.getStepNo(), last.getDrawNo(), configId);
+        });
+    }
+
+    public void clearSteps(long configId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM ssq_backtest_step WHERE config_id=?", configId);
+            jdbcTemplate.update("UPDATE ssq_backtest_config SET steps=0, last_draw_no=NULL WHERE id=?", configId);
+        });
+    }
+
+    public static class ConfigRow {
+        private final long id;
+        private final String strategy;
+        private final String optionsKey;
+        private final int trainWindow;
+        private final long seed;
+        private final int steps;
+        private final String lastDrawNo;
+
+        public ConfigRow(long id, String strategy, String optionsKey, int trainWindow, long seed, int steps, String lastDrawNo) {
+            this.id = id;
+            this.strategy = strategy;
+            this.optionsKey = optionsKey;
+            this.trainWindow = trainWindow;
+            this.seed = seed;
+            this.steps = steps;
+            this.lastDrawNo = lastDrawNo;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getStrategy() {
+            return strategy;
+        }
+
+        public String getOptionsKey() {
+            return optionsKey;
+        }
+
+        public int getTrainWindow() {
+            return trainWindow;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int getSteps() {
+            return steps;
+        }
+
+        public String getLastDrawNo() {
+            return lastDrawNo;
+        }
+    }
+
+    public static class StepRow {
+        private final int stepNo;
+        private final String drawNo;
+        private final String windowStart;
+        private final String predictReds;
+        private final int predictBlue;
+        private final int redHit;
+        private final boolean blueHit;
+        private final int cumRedHit;
+        private final int cumBlueHit;
+        private final int cumBothHit;
+        private final int[] cumDist;
+
+        public StepRow(int stepNo, String drawNo, String windowStart, String predictReds, int predictBlue,
+                       int redHit, boolean blueHit, int cumRedHit, int cumBlueHit, int cumBothHit, int[] cumDist) {
+            this.stepNo = stepNo;
+            this.drawNo = drawNo;
+            this.windowStart = windowStart;
+            this.predictReds = predictReds;
+            this.predictBlue = predictBlue;
+            this.redHit = redHit;
+            this.blueHit = blueHit;
+            this.cumRedHit = cumRedHit;
+            this.cumBlueHit = cumBlueHit;
+            this.cumBothHit = cumBothHit;
+            this.cumDist = cumDist;
+        }
+
+        public int getStepNo() {
+            return stepNo;
+        }
+
+        public String getDrawNo() {
+            return drawNo;
+        }
+
+        public String getWindowStart() {
+            return windowStart;
+        }
+
+        public String getPredictReds() {
+            return predictReds;
+        }
+
+        public int getPredictBlue() {
+            return predictBlue;
+        }
+
+        public int getRedHit() {
+            return redHit;
+        }
+
+        public boolean isBlueHit() {
+            return blueHit;
+        }
+
+        public int getCumRedHit() {
+            return cumRedHit;
+        }
+
+        public int getCumBlueHit() {
+            return cumBlueHit;
+        }
+
+        public int getCumBothHit() {
+            return cumBothHit;
+        }
+
+        /**
+         * 截至本期红球命中 0..6 个的期数。
+         */
+        public int[] getCumDist() {
+            return cumDist;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.bicolorsphere.repo;
+
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * 抓取失败页重试队列（ssq_crawl_failed_page），一页一行。
+ */
+@Repository
+@DependsOn("ssqSchemaMigrator")
+public class SsqCrawlFailureRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SsqCrawlFailureRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 首次失败时插入；已在队列中时只累加次数、更新原因，newest_draw_no 保留首次失败时的值。
+     */
+    public int markFailed(int pageNum, String newestDrawNo, String error) {
+        return jdbcTemplate.update(
+                "INSERT INTO ssq_crawl_failed_page(page_num, newest_draw_no, last_error) VALUES (?,?,?) " +
+                        "ON DUPLICATE KEY UPDATE attempts = attempts + 1, last_error = VALUES(last_error)",
+                pageNum, newestDrawNo, truncate(error));
+    }
+
+    public int remove(int pageNum) {
+        return jdbcTemplate.update("DELETE FROM ssq_crawl_failed_page WHERE page_num = ?", pageNum);
+    }
+
+    public List<FailedPage> list(int limit) {
+        return jdbcTemplate.query(
+                "SELECT page_num, newest_draw_no, attempts, last_error, created_at, updated_at FROM ssq_crawl_failed_page " +
+                        "ORDER BY page_num ASC LIMIT ?",
+                (rs, rowNum) -> new FailedPage(
+                        rs.getInt("page_num"),
+                        rs.getString("newest_draw_no"),
+                        rs.getInt("attempts"),
+                        rs.getString("last_error"),
+                        rs.getTimestamp("created_at"),
+                        rs.getTimestamp("updated_at")
+                ),
+                Math.max(1, limit));
+    }
+
+    public long count() {
+        Long v = jdbcTemplate.queryForObject("SELECT COUNT(1) FROM ssq_crawl_failed_page", Long.class);
+        return v == null ? 0 : v;
+    }
+
+    private static String truncate(String s) {
+        if (s == null) return null;
+        return s.length() <= 512 ? s : s.substring(0, 512);
+    }
+
+    public static class FailedPage {
+        private final int pageNum;
+        private final String newestDrawNo;
+        private final int attempts;
+        private final String lastError;
+        private final Timestamp createdAt;
+        private final Timestamp updatedAt;
+
+        public FailedPage(int pageNum, String newestDrawNo, int attempts, String lastError, Timestamp createdAt, Timestamp updatedAt) {
+            this.pageNum = pageNum;
+            this.newestDrawNo = newestDrawNo;
+            this.attempts = attempts;
+            this.lastError = lastError;
+            this.createdAt = createdAt;
+            this.updatedAt = updatedAt;
+        }
+
+        public int getPageNum() {
+            return pageNum;
+        }
+
+        public String getNewestDrawNo() {
+            return newestDrawNo;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        public Timestamp getCreatedAt() {
+            return createdAt;
+        }
+
+        public Timestamp getUpdatedAt() {
+            return updatedAt;
+        }
+    }
+}
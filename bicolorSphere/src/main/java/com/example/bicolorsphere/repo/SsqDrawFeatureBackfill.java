@@ -0,0 +1,42 @@
+package com.example.bicolorsphere.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动后回填 V4 之前入库数据的特征列；已回填时只是一次 COUNT 查询。
+ */
+@Component
+public class SsqDrawFeatureBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(SsqDrawFeatureBackfill.class);
+
+    private final SsqDrawRepository repository;
+    private final boolean enabled;
+
+    public SsqDrawFeatureBackfill(SsqDrawRepository repository,
+                                  @Value("${app.ssq.features.backfillOnStartup:true}") boolean enabled) {
+        this.repository = repository;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int updated = repository.backfillFeatures();
+            if (updated > 0) {
+                log.info("ssq_draw feature columns backfilled: {} rows in {} ms", updated, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.warn("ssq_draw feature backfill failed", e);
+        }
+    }
+}
@@ -1,41 +1,34 @@
 package com.example.bicolorsphere.repo;
 
 import com.example.bicolorsphere.domain.SsqDraw;
+import com.example.bicolorsphere.domain.SsqDrawFeatures;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.Date;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 @Repository
+@DependsOn("ssqSchemaMigrator")
 public class SsqDrawRepository {
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
 
-    public SsqDrawRepository(JdbcTemplate jdbcTemplate) {
+    public SsqDrawRepository(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
         this.jdbcTemplate = jdbcTemplate;
-        ensureComments();
-    }
-
-    private void ensureComments() {
-        try {
-            jdbcTemplate.execute("ALTER TABLE ssq_draw COMMENT='双色球开奖记录表'");
-            jdbcTemplate.execute("ALTER TABLE ssq_draw MODIFY COLUMN draw_no VARCHAR(20) NOT NULL COMMENT '期号'");
-            jdbcTemplate.execute("ALTER TABLE ssq_draw MODIFY COLUMN draw_date DATE NULL COMMENT '开奖日期'");
-            jdbcTemplate.execute("ALTER TABLE ssq_draw MODIFY COLUMN red1 INT NOT NULL COMMENT '红球1'");
-            jdbcTemplate.execute("ALTER TABLE ssq_draw MODIFY COLUMN red2 INT NOT NULL COMMENT '红球2'");
-            jdbcTemplate.execute("ALTER TABLE ssq_draw MODIFY COLUMN red3 INT NOT NULL COMMENT '红球3'");
-            jdbcTemplate.execute("ALTER TABLE ssq_draw MODIFY COLUMN red4 INT NOT NULL COMMENT '红球4'");
-            jdbcTemplate.execute("ALTER TABLE ssq_draw MODIFY COLUMN red5 INT NOT NULL COMMENT '红球5'");
-            jdbcTemplate.execute("ALTER TABLE ssq_draw MODIFY COLUMN red6 INT NOT NULL COMMENT '红球6'");
-            jdbcTemplate.execute("ALTER TABLE ssq_draw MODIFY COLUMN blue INT NOT NULL COMMENT '蓝球'");
-        } catch (Exception ignore) {
-        }
+        this.transactionTemplate = transactionTemplate;
     }
 
     private static final RowMapper<SsqDraw> MAPPER = (rs, rowNum) -> {
@@ -53,9 +46,13 @@ public class SsqDrawRepository {
         return new SsqDraw(drawNo, drawDate, reds, blue);
     };
 
+    /**
+     * 插入时一并写入派生特征列。repeat_prev 依赖上一期，由同一条 INSERT ... SELECT 的子查询按库里上一期算出，
+     * 不再先查一次邻居；只有真正插入了（补录较早期号）才再发一条 UPDATE 修正其后一期的 repeat_prev。
+     */
     public int upsertIgnore(SsqDraw draw) {
-        return jdbcTemplate.update(
-                "INSERT IGNORE INTO ssq_draw(draw_no, draw_date, red1, red2, red3, red4, red5, red6, blue) VALUES (?,?,?,?,?,?,?,?,?)",
+        SsqDrawFeatures f = SsqDrawFeatures.of(draw.getReds(), null);
+        List<Object> args = new ArrayList<Object>(Arrays.<Object>asList(
                 draw.getDrawNo(),
                 draw.getDrawDate() == null ? null : Date.valueOf(draw.getDrawDate()),
                 draw.getReds().get(0),
@@ -64,8 +61,166 @@ public class SsqDrawRepository {
                 draw.getReds().get(3),
                 draw.getReds().get(4),
                 draw.getReds().get(5),
-                draw.getBlue()
+                draw.getBlue(),
+                f.getSum(),
+                f.getSpan(),
+                f.getOddCount(),
+                f.getZone1(),
+                f.getZone2(),
+                f.getZone3(),
+                f.getAcValue(),
+                f.getConsecutivePairs()
+        ));
+        args.addAll(repeatArgs(draw.getReds()));
+        args.add(draw.getDrawNo());
+        int inserted = jdbcTemplate.update(
+                "INSERT IGNORE INTO ssq_draw(draw_no, draw_date, red1, red2, red3, red4, red5, red6, blue, " +
+                        "red_sum, red_span, odd_count, zone1, zone2, zone3, ac_value, consecutive_pairs, repeat_prev) " +
+                        "SELECT ?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?, " +
+                        "(SELECT " + repeatExpr("p") + " FROM ssq_draw p WHERE p.draw_no < ? ORDER BY p.draw_no DESC LIMIT 1)",
+                args.toArray()
         );
+        if (inserted > 0) {
+            jdbcTemplate.update(
+                    "UPDATE ssq_draw n JOIN (SELECT draw_no FROM ssq_draw WHERE draw_no > ? ORDER BY draw_no ASC LIMIT 1) x " +
+                            "ON n.draw_no = x.draw_no SET n.repeat_prev = " + repeatExpr("n"),
+                    prepend(draw.getDrawNo(), repeatArgs(draw.getReds())));
+        }
+        return inserted;
+    }
+
+    /**
+     * 表别名 alias 那一行的红球与 6 个参数（见 {@link #repeatArgs}）重复的个数。
+     */
+    private static String repeatExpr(String alias) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 6; i++) {
+            if (i > 1) sb.append(" + ");
+            sb.append('(').append(alias).append(".red").append(i).append(" IN (?,?,?,?,?,?))");
+        }
+        return sb.toString();
+    }
+
+    private static List<Object> repeatArgs(List<Integer> reds) {
+        List<Object> out = new ArrayList<Object>(36);
+        for (int i = 0; i < 6; i++) {
+            out.addAll(reds);
+        }
+        return out;
+    }
+
+    private static Object[] prepend(Object first, List<Object> rest) {
+        List<Object> out = new ArrayList<Object>(rest.size() + 1);
+        out.add(first);
+        out.addAll(rest);
+        return out.toArray();
+    }
+
+    /**
+     * 批量导入：先与库里已有的期按期号合并，顺序算出特征列（含 repeat_prev），再按 batchSize 一批 INSERT IGNORE；
+     * 新期插在已有期之前时，顺带批量修正其后那一期的 repeat_prev。结果与逐条 {@link #upsertIgnore} 一致。
+     *
+     * @param draws 期号不重复
+     * @return 新插入行数
+     */
+    public int bulkInsertIgnore(Collection<SsqDraw> draws, int batchSize) {
+        TreeMap<String, List<Integer>> merged = new TreeMap<String, List<Integer>>();
+        jdbcTemplate.query("SELECT draw_no, red1, red2, red3, red4, red5, red6 FROM ssq_draw", (RowCallbackHandler) rs -> {
+            List<Integer> reds = new ArrayList<Integer>(6);
+            for (int i = 1; i <= 6; i++) {
+                reds.add(rs.getInt("red" + i));
+            }
+            merged.put(rs.getString("draw_no"), reds);
+        });
+        Map<String, SsqDraw> incoming = new HashMap<String, SsqDraw>();
+        for (SsqDraw d : draws) {
+            if (!merged.containsKey(d.getDrawNo())) {
+                incoming.put(d.getDrawNo(), d);
+                merged.put(d.getDrawNo(), d.getReds());
+            }
+        }
+        if (incoming.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> inserts = new ArrayList<Object[]>(incoming.size());
+        List<Object[]> repeatFixes = new ArrayList<Object[]>();
+        String prevNo = null;
+        List<Integer> prev = null;
+        for (Map.Entry<String, List<Integer>> e : merged.entrySet()) {
+            SsqDraw d = incoming.get(e.getKey());
+            if (d != null) {
+                SsqDrawFeatures f = SsqDrawFeatures.of(d.getReds(), prev);
+                inserts.add(new Object[]{
+                        d.getDrawNo(),
+                        d.getDrawDate() == null ? null : Date.valueOf(d.getDrawDate()),
+                        d.getReds().get(0), d.getReds().get(1), d.getReds().get(2),
+                        d.getReds().get(3), d.getReds().get(4), d.getReds().get(5),
+                        d.getBlue(),
+                        f.getSum(), f.getSpan(), f.getOddCount(), f.getZone1(), f.getZone2(), f.getZone3(),
+                        f.getAcValue(), f.getConsecutivePairs(), f.getRepeatPrev()
+                });
+            } else if (prevNo != null && incoming.containsKey(prevNo)) {
+                repeatFixes.add(new Object[]{SsqDrawFeatures.repeatCount(e.getValue(), prev), e.getKey()});
+            }
+            prevNo = e.getKey();
+            prev = e.getValue();
+        }
+
+        // 插入与后一期的 repeat_prev 修正同一事务：中途失败整体回滚，重试时 INSERT IGNORE 不会跳过半途插入的行
+        Integer inserted = transactionTemplate.execute(status -> {
+            long before = count();
+            int size = Math.max(1, batchSize);
+            for (int from = 0; from < inserts.size(); from += size) {
+                jdbcTemplate.batchUpdate(
+                        "INSERT IGNORE INTO ssq_draw(draw_no, draw_date, red1, red2, red3, red4, red5, red6, blue, " +
+                                "red_sum, red_span, odd_count, zone1, zone2, zone3, ac_value, consecutive_pairs, repeat_prev) " +
+                                "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)",
+                        inserts.subList(from, Math.min(inserts.size(), from + size)));
+            }
+            if (!repeatFixes.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE ssq_draw SET repeat_prev = ? WHERE draw_no = ?", repeatFixes);
+            }
+            // rewriteBatchedStatements 下批量语句的逐行计数不可靠，按行数差计
+            return (int) (count() - before);
+        });
+        return inserted == null ? 0 : inserted;
+    }
+
+    /**
+     * 回填特征列为空的行（V4 之前入库的数据），按期号顺序计算以便得到 repeat_prev。
+     *
+     * @return 更新行数
+     */
+    public int backfillFeatures() {
+        Long missing = jdbcTemplate.queryForObject("SELECT COUNT(1) FROM ssq_draw WHERE ac_value IS NULL", Long.class);
+        if (missing == null || missing == 0) {
+            return 0;
+        }
+        List<Object[]> updates = new ArrayList<Object[]>();
+        List<Integer> prev = null;
+        for (Map<String, Object> row : jdbcTemplate.queryForList(
+                "SELECT draw_no, red1, red2, red3, red4, red5, red6, ac_value FROM ssq_draw ORDER BY draw_no ASC")) {
+            List<Integer> reds = new ArrayList<Integer>(6);
+            for (int i = 1; i <= 6; i++) {
+                reds.add(((Number) row.get("red" + i)).intValue());
+            }
+            if (row.get("ac_value") == null) {
+                SsqDrawFeatures f = SsqDrawFeatures.of(reds, prev);
+                updates.add(new Object[]{f.getSum(), f.getSpan(), f.getOddCount(), f.getZone1(), f.getZone2(), f.getZone3(),
+                        f.getAcValue(), f.getConsecutivePairs(), f.getRepeatPrev(), row.get("draw_no")});
+            }
+            prev = reds;
+        }
+        for (int from = 0; from < updates.size(); from += 500) {
+            jdbcTemplate.batchUpdate(
+                    "UPDATE ssq_draw SET red_sum=?, red_span=?, odd_count=?, zone1=?, zone2=?, zone3=?, " +
+                            "ac_value=?, consecutive_pairs=?, repeat_prev=? WHERE draw_no=?",
+                    updates.subList(from, Math.min(updates.size(), from + 500)));
+        }
+        // rewriteBatchedStatements 下批量语句的逐行计数为 SUCCESS_NO_INFO，按回填前后的空行数差计
+        Long remaining = jdbcTemplate.queryForObject("SELECT COUNT(1) FROM ssq_draw WHERE ac_value IS NULL", Long.class);
+        return (int) (missing - (remaining == null ? 0 : remaining));
     }
 
     public List<SsqDraw> page(int page, int size) {
@@ -114,6 +269,39 @@ public class SsqDrawRepository {
             args.add(filter.getIncludeBlue());
         }
 
+        // 特征列均有索引（V4__ssq_draw_features.sql）；区间比等值加和值范围可由 (zone1, zone2, zone3, red_sum) 联合索引覆盖
+        int[] zr = filter.getZoneRatio();
+        if (zr != null && zr.length == 3) {
+            base += " AND zone1=? AND zone2=? AND zone3=?";
+            args.add(zr[0]);
+            args.add(zr[1]);
+            args.add(zr[2]);
+        }
+        if (filter.getMinSum() != null) {
+            base += " AND red_sum >= ?";
+            args.add(filter.getMinSum());
+        }
+        if (filter.getMaxSum() != null) {
+            base += " AND red_sum <= ?";
+            args.add(filter.getMaxSum());
+        }
+        if (filter.getMinSpan() != null) {
+            base += " AND red_span >= ?";
+            args.add(filter.getMinSpan());
+        }
+        if (filter.getMaxSpan() != null) {
+            base += " AND red_span <= ?";
+            args.add(filter.getMaxSpan());
+        }
+        if (filter.getMinOdd() != null) {
+            base += " AND odd_count >= ?";
+            args.add(filter.getMinOdd());
+        }
+        if (filter.getMaxOdd() != null) {
+            base += " AND odd_count <= ?";
+            args.add(filter.getMaxOdd());
+        }
+
         long total = 0;
         Long tv = jdbcTemplate.queryForObject("SELECT COUNT(1)" + base, Long.class, args.toArray());
         if (tv != null) {
@@ -144,6 +332,8 @@ public class SsqDrawRepository {
                 0,
                 Math.max(1, Math.min(maxRows, 10000))
         );
+        f.setFeatureRange(filter.getMinSum(), filter.getMaxSum(), filter.getMinSpan(), filter.getMaxSpan(),
+                filter.getMinOdd(), filter.getMaxOdd(), filter.getZoneRatio());
         return search(f).getRows();
     }
 
@@ -155,6 +345,21 @@ public class SsqDrawRepository {
         );
     }
 
+    public List<SsqDraw> allAscending() {
+        return jdbcTemplate.query(
+                "SELECT draw_no, draw_date, red1, red2, red3, red4, red5, red6, blue FROM ssq_draw ORDER BY draw_no ASC",
+                MAPPER
+        );
+    }
+
+    /**
+     * 用于判断内存中的历史快照是否过期：行数 + 最大期号。
+     */
+    public String fingerprint() {
+        Map<String, Object> m = jdbcTemplate.queryForMap("SELECT COUNT(1) AS c, MAX(draw_no) AS n FROM ssq_draw");
+        return m.get("c") + ":" + m.get("n");
+    }
+
     public Optional<SsqDraw> findByDrawNo(String drawNo) {
         List<SsqDraw> list = jdbcTemplate.query(
                 "SELECT draw_no, draw_date, red1, red2, red3, red4, red5, red6, blue FROM ssq_draw WHERE draw_no = ?",
@@ -169,6 +374,19 @@ public class SsqDrawRepository {
         return v == null ? 0 : v;
     }
 
+    public String latestDrawNo() {
+        return jdbcTemplate.queryForObject("SELECT MAX(draw_no) FROM ssq_draw", String.class);
+    }
+
+    /**
+     * 期号大于 drawNo 的期数（drawNo 为 null 时为 0）。
+     */
+    public long countNewerThan(String drawNo) {
+        if (drawNo == null) return 0;
+        Long v = jdbcTemplate.queryForObject("SELECT COUNT(1) FROM ssq_draw WHERE draw_no > ?", Long.class, drawNo);
+        return v == null ? 0 : v;
+    }
+
     public static class SearchFilter {
         private String drawNoFrom;
         private String drawNoTo;
@@ -178,6 +396,13 @@ public class SsqDrawRepository {
         private Integer includeBlue;
         private int page;
         private int size;
+        private Integer minSum;
+        private Integer maxSum;
+        private Integer minSpan;
+        private Integer maxSpan;
+        private Integer minOdd;
+        private Integer maxOdd;
+        private int[] zoneRatio;
 
         public SearchFilter(String drawNoFrom, String drawNoTo, LocalDate dateFrom, LocalDate dateTo, Integer includeRed, Integer includeBlue, int page, int size) {
             this.drawNoFrom = drawNoFrom;
@@ -221,6 +446,49 @@ public class SsqDrawRepository {
         public int getSize() {
             return size;
         }
+
+        /**
+         * 按派生特征过滤（均可为 null）；zoneRatio 为一/二/三区红球个数。
+         */
+        public SearchFilter setFeatureRange(Integer minSum, Integer maxSum, Integer minSpan, Integer maxSpan,
+                                            Integer minOdd, Integer maxOdd, int[] zoneRatio) {
+            this.minSum = minSum;
+            this.maxSum = maxSum;
+            this.minSpan = minSpan;
+            this.maxSpan = maxSpan;
+            this.minOdd = minOdd;
+            this.maxOdd = maxOdd;
+            this.zoneRatio = zoneRatio;
+            return this;
+        }
+
+        public Integer getMinSum() {
+            return minSum;
+        }
+
+        public Integer getMaxSum() {
+            return maxSum;
+        }
+
+        public Integer getMinSpan() {
+            return minSpan;
+        }
+
+        public Integer getMaxSpan() {
+            return maxSpan;
+        }
+
+        public Integer getMinOdd() {
+            return minOdd;
+        }
+
+        public Integer getMaxOdd() {
+            return maxOdd;
+        }
+
+        public int[] getZoneRatio() {
+            return zoneRatio;
+        }
     }
 
     public static class SearchResult {
@@ -1,5 +1,6 @@
 package com.example.bicolorsphere.repo;
 
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
@@ -10,51 +11,13 @@ import java.util.ArrayList;
 import java.util.*;
 
 @Repository
+@DependsOn("ssqSchemaMigrator")
 public class SsqPredictionRepository {
 
     private final JdbcTemplate jdbcTemplate;
 
     public SsqPredictionRepository(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
-        ensureTable();
-    }
-
-    private void ensureTable() {
-        jdbcTemplate.execute(
-                "CREATE TABLE IF NOT EXISTS ssq_prediction_record (" +
-                        "id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键'," +
-                        "draw_no VARCHAR(20) NOT NULL COMMENT '期号'," +
-                        "predict_reds VARCHAR(64) NOT NULL COMMENT '预测红球（两位数空格分隔）'," +
-                        "predict_blue INT NOT NULL COMMENT '预测蓝球'," +
-                        "actual_reds VARCHAR(64) NULL COMMENT '真实红球（两位数空格分隔）'," +
-                        "actual_blue INT NULL COMMENT '真实蓝球'," +
-                        "red_hit INT NULL COMMENT '红球命中个数(0-6)'," +
-                        "blue_hit INT NULL COMMENT '蓝球是否命中(0/1)'," +
-                        "hit_rate DECIMAL(10,6) NULL COMMENT '命中率=(红中+蓝中)/7'," +
-                        "error_rate DECIMAL(10,6) NULL COMMENT '误差率=1-命中率'," +
-                        "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间'," +
-                        "updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'," +
-                        "UNIQUE KEY uk_draw_pick (draw_no, predict_reds, predict_blue)" +
-                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='双色球预测记录表'"
-        );
-
-        // Ensure comments exist even if table was created earlier.
-        try {
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record COMMENT='双色球预测记录表'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN id BIGINT NOT NULL AUTO_INCREMENT COMMENT '主键'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN draw_no VARCHAR(20) NOT NULL COMMENT '期号'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN predict_reds VARCHAR(64) NOT NULL COMMENT '预测红球（两位数空格分隔）'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN predict_blue INT NOT NULL COMMENT '预测蓝球'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN actual_reds VARCHAR(64) NULL COMMENT '真实红球（两位数空格分隔）'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN actual_blue INT NULL COMMENT '真实蓝球'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN red_hit INT NULL COMMENT '红球命中个数(0-6)'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN blue_hit INT NULL COMMENT '蓝球是否命中(0/1)'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN hit_rate DECIMAL(10,6) NULL COMMENT '命中率=(红中+蓝中)/7'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN error_rate DECIMAL(10,6) NULL COMMENT '误差率=1-命中率'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间'");
-            jdbcTemplate.execute("ALTER TABLE ssq_prediction_record MODIFY COLUMN updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'");
-        } catch (Exception ignore) {
-        }
     }
 
     public int insertIgnore(String drawNo, String predictReds, int predictBlue) {
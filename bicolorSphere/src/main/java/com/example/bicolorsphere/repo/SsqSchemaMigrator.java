@@ -0,0 +1,182 @@
+package com.example.bicolorsphere.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * 版本化建表/变更：按 V{n}__{desc}.sql 顺序执行 classpath:db/migration 下的脚本，
+ * 每个版本只执行一次，执行记录（含校验和）写入 schema_version。
+ * 已执行脚本被改动时启动失败，避免库结构与代码悄悄不一致。
+ */
+@Component("ssqSchemaMigrator")
+public class SsqSchemaMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(SsqSchemaMigrator.class);
+
+    private static final Pattern FILE_PATTERN = Pattern.compile("^V(\\d+)__(.+)\\.sql$");
+    private static final String LOCK_NAME = "bicolorSphere_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String locations;
+
+    public SsqSchemaMigrator(JdbcTemplate jdbcTemplate,
+                             @Value("${app.ssq.migration.enabled:true}") boolean enabled,
+                             @Value("${app.ssq.migration.locations:classpath*:db/migration/V*__*.sql}") String locations) throws IOException {
+        this.jdbcTemplate = jdbcTemplate;
+        this.locations = locations;
+        if (enabled) {
+            migrate();
+        }
+    }
+
+    public synchronized List<Integer> migrate() throws IOException {
+        List<Migration> migrations = loadMigrations();
+        ensureVersionTable();
+
+        Map<Integer, Long> applied = appliedChecksums();
+        verifyChecksums(migrations, applied);
+        if (pending(migrations, applied).isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // 多实例同时启动时只允许一个实例执行变更，其余实例拿到锁后重新读取已执行版本
+        List<Integer> done = jdbcTemplate.execute((java.sql.Connection con) -> {
+            try (PreparedStatement ps = con.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+                ps.setString(1, LOCK_NAME);
+                ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) != 1) {
+                        throw new IllegalStateException("获取库结构变更锁超时：" + LOCK_NAME);
+                    }
+                }
+            }
+            try {
+                List<Integer> versions = new ArrayList<Integer>();
+                for (Migration m : pending(migrations, appliedChecksums())) {
+                    long start = System.currentTimeMillis();
+                    ScriptUtils.executeSqlScript(con, new EncodedResource(
+                            new ByteArrayResource(m.sql.getBytes(StandardCharsets.UTF_8), m.script), StandardCharsets.UTF_8));
+                    long cost = System.currentTimeMillis() - start;
+                    jdbcTemplate.update(
+                            "INSERT INTO schema_version(version, description, script, checksum, execution_ms) VALUES (?,?,?,?,?)",
+                            m.version, m.description, m.script, m.checksum, cost);
+                    log.info("schema migration V{} ({}) applied in {} ms", m.version, m.description, cost);
+                    versions.add(m.version);
+                }
+                return versions;
+            } finally {
+                try (PreparedStatement ps = con.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    ps.setString(1, LOCK_NAME);
+                    ps.execute();
+                }
+            }
+        });
+        return done == null ? Collections.<Integer>emptyList() : done;
+    }
+
+    private void ensureVersionTable() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS schema_version (" +
+                        "version INT PRIMARY KEY COMMENT '版本号'," +
+                        "description VARCHAR(200) NOT NULL COMMENT '描述'," +
+                        "script VARCHAR(255) NOT NULL COMMENT '脚本文件名'," +
+                        "checksum BIGINT NOT NULL COMMENT '脚本CRC32校验和'," +
+                        "execution_ms BIGINT NOT NULL COMMENT '执行耗时(毫秒)'," +
+                        "installed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '执行时间'" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='库结构版本记录表'"
+        );
+    }
+
+    private Map<Integer, Long> appliedChecksums() {
+        Map<Integer, Long> m = new HashMap<Integer, Long>();
+        jdbcTemplate.query("SELECT version, checksum FROM schema_version",
+                rs -> {
+                    m.put(rs.getInt("version"), rs.getLong("checksum"));
+                });
+        return m;
+    }
+
+    private static void verifyChecksums(List<Migration> migrations, Map<Integer, Long> applied) {
+        for (Migration m : migrations) {
+            Long old = applied.get(m.version);
+            if (old != null && old != m.checksum) {
+                throw new IllegalStateException("已执行的库结构脚本被修改：" + m.script
+                        + "（记录校验和=" + old + "，当前=" + m.checksum + "），请新增版本脚本而不是修改旧脚本");
+            }
+        }
+    }
+
+    private static List<Migration> pending(List<Migration> migrations, Map<Integer, Long> applied) {
+        List<Migration> out = new ArrayList<Migration>();
+        for (Migration m : migrations) {
+            if (!applied.containsKey(m.version)) out.add(m);
+        }
+        return out;
+    }
+
+    private List<Migration> loadMigrations() throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(locations);
+        Map<Integer, Migration> byVersion = new TreeMap<Integer, Migration>();
+        for (Resource r : resources) {
+            String name = r.getFilename();
+            Matcher mt = name == null ? null : FILE_PATTERN.matcher(name);
+            if (mt == null || !mt.matches()) continue;
+
+            int version = Integer.parseInt(mt.group(1));
+            String sql;
+            try (InputStream in = r.getInputStream()) {
+                sql = new String(StreamUtils.copyToByteArray(in), StandardCharsets.UTF_8);
+            }
+            Migration m = new Migration(version, mt.group(2).replace('_', ' '), name, sql);
+            Migration dup = byVersion.put(version, m);
+            if (dup != null) {
+                throw new IllegalStateException("库结构脚本版本重复：" + dup.script + " / " + name);
+            }
+        }
+        return new ArrayList<Migration>(byVersion.values());
+    }
+
+    static long checksum(String sql) {
+        // 统一换行符，避免不同平台检出导致校验和变化
+        String normalized = sql.replace("\r\n", "\n").replace('\r', '\n');
+        CRC32 crc = new CRC32();
+        crc.update(normalized.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final String script;
+        private final String sql;
+        private final long checksum;
+
+        Migration(int version, String description, String script, String sql) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+            this.sql = sql;
+            this.checksum = checksum(sql);
+        }
+    }
+}
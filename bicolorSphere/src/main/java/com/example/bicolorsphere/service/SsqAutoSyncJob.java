@@ -1,5 +1,8 @@
 package com.example.bicolorsphere.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -7,18 +10,23 @@ import org.springframework.stereotype.Component;
 @Component
 public class SsqAutoSyncJob {
 
+    private static final Logger log = LoggerFactory.getLogger(SsqAutoSyncJob.class);
+
     private final boolean enabled;
     private final int syncPages;
     private final SsqSyncService syncService;
+    private final MeterRegistry meterRegistry;
 
     public SsqAutoSyncJob(
             @Value("${app.ssq.autosync.enabled:true}") boolean enabled,
             @Value("${app.ssq.autosync.syncPages:2}") int syncPages,
-            SsqSyncService syncService
+            SsqSyncService syncService,
+            MeterRegistry meterRegistry
     ) {
         this.enabled = enabled;
         this.syncPages = syncPages;
         this.syncService = syncService;
+        this.meterRegistry = meterRegistry;
     }
 
     @Scheduled(cron = "${app.ssq.autosync.cron:0 15 1 * * ?}")
@@ -27,8 +35,24 @@ public class SsqAutoSyncJob {
             return;
         }
         try {
-            syncService.syncPages(1, Math.max(1, syncPages));
-        } catch (Exception ignored) {
+            SsqSyncService.SyncResult r = syncService.syncPages(1, Math.max(1, syncPages));
+            long pending = r.getRetryQueue().getPending();
+            if (r.getErrors().isEmpty() && pending == 0) {
+                meterRegistry.counter("ssq.autosync.runs", "outcome", "success").increment();
+                log.info("auto sync pages 1-{}: fetched={}, inserted={}, recovered={}", r.getToPage(), r.getFetched(), r.getInserted(),
+                        r.getRetryQueue().getRecovered());
+            } else {
+                // 失败页已进重试队列，下次运行先补抓
+                meterRegistry.counter("ssq.autosync.runs", "outcome", "partial").increment();
+                log.warn("auto sync pages 1-{}: fetched={}, inserted={}, errors={}, queued={}", r.getToPage(), r.getFetched(), r.getInserted(),
+                        r.getErrors(), pending);
+            }
+        } catch (SsqSyncService.SyncInProgressException e) {
+            meterRegistry.counter("ssq.autosync.runs", "outcome", "skipped").increment();
+            log.info("auto sync skipped: another sync is running");
+        } catch (Exception e) {
+            meterRegistry.counter("ssq.autosync.runs", "outcome", "failure").increment();
+            log.error("auto sync failed", e);
         }
     }
 }
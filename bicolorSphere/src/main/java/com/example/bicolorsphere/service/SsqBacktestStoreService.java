@@ -0,0 +1,390 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import com.example.bicolorsphere.repo.SsqBacktestRepository;
+import com.example.bicolorsphere.repo.SsqBacktestRepository.ConfigRow;
+import com.example.bicolorsphere.repo.SsqBacktestRepository.StepRow;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 持久化的滚动回测：每个配置（策略、约束、训练窗口、seed）逐期存一行预测与命中，连同截至该期的累计值。
+ * <p>
+ * 新数据同步入库后 {@link #refresh()} 只为各配置补算新增的几期；查询最近 T 期时只读两行累计值相减，
+ * 所以 recommend 的排名是 O(候选数) 次查表。第 k 期的随机子流由被预测期号派生（而不是像 /api/backtest 那样按窗口内序号），
+ * 窗口后移时已存的期不用重算；确定性策略与 /api/backtest 结果完全一致，随机类策略只是子流不同。
+ * 历史中间补录导致已存期的训练窗口对不上时，整条配置重建。
+ * 策略名先规范化、未知策略直接拒绝；配置数超过 app.ssq.backtest.store.maxConfigs 时淘汰最久没被查询的配置。
+ */
+@Service
+public class SsqBacktestStoreService {
+
+    private static final Logger log = LoggerFactory.getLogger(SsqBacktestStoreService.class);
+
+    private final SsqBacktestRepository repository;
+    private final SsqStatsService statsService;
+    private final SsqDrawHistory history;
+    private final MeterRegistry meterRegistry;
+    private final int initialSteps;
+    private final int maxConfigs;
+
+    public SsqBacktestStoreService(SsqBacktestRepository repository,
+                                   SsqStatsService statsService,
+                                   SsqDrawHistory history,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${app.ssq.backtest.store.initialSteps:500}") int initialSteps,
+                                   @Value("${app.ssq.backtest.store.maxConfigs:64}") int maxConfigs) {
+        this.repository = repository;
+        this.statsService = statsService;
+        this.history = history;
+        this.meterRegistry = meterRegistry;
+        this.initialSteps = Math.max(10, initialSteps);
+        // 至少容纳一组推荐候选，否则 recommend 自己就会互相淘汰
+        this.maxConfigs = Math.max(SsqStatsService.RECOMMEND_CANDIDATES.length, maxConfigs);
+    }
+
+    /**
+     * 与 {@link SsqStatsService#backtest} 同样的返回结构，另带 stored（配置 id、已存期数、本次新算期数）。
+     */
+    public Map<String, Object> backtest(String strategy, int trainWindow, int testCount,
+                                        SsqStatsService.PredictOptions options, Long seed) {
+        int train = Math.max(50, trainWindow);
+        int test = Math.max(10, testCount);
+        long sd = SsqRandom.seedOrDefault(seed);
+        String s = SsqStatsService.canonicalStrategy(strategy == null ? "frequency_top" : strategy);
+        if (s == null) {
+            return map("strategy", strategy, "trainWindow", train, "testCount", test, "seed", sd,
+                    "error", "未知策略: " + strategy);
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return result(s, train, test, options, sd);
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.backtest.store", "op", "backtest"));
+        }
+    }
+
+    public Map<String, Object> recommend(int trainWindow, int testCount, Long seed) {
+        return recommend(trainWindow, testCount, seed, SsqStatsService.BacktestListener.NONE);
+    }
+
+    /**
+     * 与 {@link SsqStatsService#recommend} 同一组候选与返回结构，各候选从已存结果汇总最近 testCount 期。
+     * /api/recommend、流式推荐、后台任务与启动预热都走这里，同一 seed 的排名在各入口一致。
+     * listener 每汇总完一个候选回调一次（含候选序号与当前最佳）。
+     */
+    public Map<String, Object> recommend(int trainWindow, int testCount, Long seed,
+                                         SsqStatsService.BacktestListener listener) {
+        int train = Math.max(50, trainWindow);
+        int test = Math.max(10, testCount);
+        long sd = SsqRandom.seedOrDefault(seed);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            List<Map<String, Object>> candidates = new ArrayList<Map<String, Object>>();
+            Map<String, Object> best = null;
+            double bestScore = -1e9;
+            int total = SsqStatsService.RECOMMEND_CANDIDATES.length;
+            for (String[] c : SsqStatsService.RECOMMEND_CANDIDATES) {
+                Map<String, Object> r = result(c[0], train, test, SsqStatsService.optionsPreset(c[1]), sd);
+                if (r.get("error") == null) {
+                    r.put("candidateStrategy", c[0]);
+                    double sc = (Double) r.get("score");
+                    if (sc > bestScore) {
+                        bestScore = sc;
+                        best = r;
+                    }
+                }
+                candidates.add(r);
+                listener.onCandidate(map("index", candidates.size(), "total", total, "candidate", r, "best", best));
+            }
+            return map(
+                    "trainWindow", train,
+                    "testCount", test,
+                    "seed", sd,
+                    "best", best,
+                    "candidates", candidates,
+                    "disclaimer", "推荐基于历史回测，仅供娱乐，不构成任何保证或建议。"
+            );
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.backtest.store", "op", "recommend"));
+        }
+    }
+
+    /**
+     * 同步入库后调用：所有已存配置补算到最新一期；单个配置失败只记日志，不影响其他配置和同步本身。
+     */
+    public Map<String, Object> refresh() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        int configs = 0;
+        int computed = 0;
+        int failed = 0;
+        try {
+            for (ConfigRow cfg : repository.listConfigs()) {
+                if (cfg.getSteps() == 0) continue;
+                configs++;
+                try {
+                    Ensured e = ensure(cfg.getStrategy(), SsqStatsService.PredictOptions.fromQuery(cfg.getOptionsKey()),
+                            cfg.getTrainWindow(), cfg.getSeed(), 1);
+                    computed += e.computed;
+                } catch (Exception ex) {
+                    failed++;
+                    log.warn("backtest store refresh failed: config={}", cfg.getId(), ex);
+                }
+            }
+            return map("configs", configs, "computedSteps", computed, "failed", failed);
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.backtest.store", "op", "refresh"));
+        }
+    }
+
+    /**
+     * 数据库异常也按单个配置的错误返回，不让整个 recommend 失败。
+     */
+    private Map<String, Object> result(String strategy, int train, int test, SsqStatsService.PredictOptions options,
+                                       long seed) {
+        try {
+            return storedResult(strategy, train, test, options, seed);
+        } catch (DataAccessException ex) {
+            log.warn("backtest store failed: strategy={} train={} seed={}", strategy, train, seed, ex);
+            return map("strategy", strategy, "trainWindow", train, "testCount", test, "seed", seed,
+                    "error", "回测结果读写失败，请稍后重试");
+        }
+    }
+
+    private Map<String, Object> storedResult(String strategy, int train, int test, SsqStatsService.PredictOptions options,
+                                             long seed) {
+        Ensured e;
+        try {
+            e = ensure(strategy, options, train, seed, test);
+        } catch (IllegalStateException ex) {
+            return map("strategy", strategy, "trainWindow", train, "testCount", test, "seed", seed, "error", ex.getMessage());
+        }
+        if (e == null) {
+            return map("strategy", strategy, "trainWindow", train, "testCount", test, "seed", seed,
+                    "error", "数据量不足，先同步更多历史数据");
+        }
+        repository.touchConfig(e.config.getId());
+
+        int last = e.config.getSteps();
+        StepRow lastRow = repository.step(e.config.getId(), last);
+        StepRow baseRow = last - test > 0 ? repository.step(e.config.getId(), last - test) : null;
+        int redHitTotal = lastRow.getCumRedHit() - (baseRow == null ? 0 : baseRow.getCumRedHit());
+        int blueHitTotal = lastRow.getCumBlueHit() - (baseRow == null ? 0 : baseRow.getCumBlueHit());
+        int bothHitTotal = lastRow.getCumBothHit() - (baseRow == null ? 0 : baseRow.getCumBothHit());
+        int[] redHitDist = new int[7];
+        for (int i = 0; i < redHitDist.length; i++) {
+            redHitDist[i] = lastRow.getCumDist()[i] - (baseRow == null ? 0 : baseRow.getCumDist()[i]);
+        }
+
+        double avgRedHits = redHitTotal * 1.0 / test;
+        double blueHitRate = blueHitTotal * 1.0 / test;
+        double red2plusRate = (test - redHitDist[0] - redHitDist[1]) * 1.0 / test;
+
+        // 与 /api/backtest 一样只带窗口内最早的 10 期明细
+        List<Map<String, Object>> samples = new ArrayList<Map<String, Object>>();
+        for (StepRow r : repository.steps(e.config.getId(), last - test + 1, Math.min(last, last - test + 10))) {
+            SsqDraw actual = e.ordered.get(e.lastIndex - (last - r.getStepNo()));
+            samples.add(map(
+                    "predictRed", parseReds(r.getPredictReds()),
+                    "predictBlue", r.getPredictBlue(),
+                    "actualDrawNo", actual.getDrawNo(),
+                    "actualRed", actual.getReds(),
+                    "actualBlue", actual.getBlue(),
+                    "redHits", r.getRedHit(),
+                    "blueHit", r.isBlueHit()
+            ));
+        }
+
+        return map(
+                "strategy", strategy,
+                "trainWindow", train,
+                "testCount", test,
+                "seed", seed,
+                "avgRedHits", avgRedHits,
+                "blueHitRate", blueHitRate,
+                "redHitDist", map(
+                        "0", redHitDist[0],
+                        "1", redHitDist[1],
+                        "2", redHitDist[2],
+                        "3", redHitDist[3],
+                        "4", redHitDist[4],
+                        "5", redHitDist[5],
+                        "6", redHitDist[6]
+                ),
+                "red2plusRate", red2plusRate,
+                "bothHitCount", bothHitTotal,
+                "score", SsqStatsService.backtestScore(avgRedHits, blueHitRate, red2plusRate),
+                "options", options == null ? null : options.asMap(),
+                "samples", samples,
+                "stored", map(
+                        "configId", e.config.getId(),
+                        "steps", last,
+                        "lastDrawNo", e.config.getLastDrawNo(),
+                        "computedSteps", e.computed,
+                        "rebuilt", e.rebuilt
+                )
+        );
+    }
+
+    /**
+     * 让配置覆盖到当前最新一期且至少有 need 期：已存部分有效时只往后追加，否则（补录、或需要更早的期）清空重建。
+     * 历史不够 train + need 期时返回 null。
+     */
+    synchronized Ensured ensure(String strategy, SsqStatsService.PredictOptions options, int train, long seed, int need) {
+        List<SsqDraw> ordered = history.snapshot().getOrdered();
+        int n = ordered.size();
+        if (n - train < need) return null;
+
+        String key = options == null ? "" : options.toQuery();
+        ConfigRow cfg = repository.findConfig(strategy, key, train, seed);
+        if (cfg == null) {
+            int evicted = repository.evictConfigs(maxConfigs - 1);
+            if (evicted > 0) {
+                meterRegistry.counter("ssq.backtest.store.evictions").increment(evicted);
+            }
+            cfg = repository.insertConfig(strategy, key, train, seed);
+        }
+
+        int stored = cfg.getSteps();
+        int lastIndex = stored == 0 ? -1 : indexOf(ordered, cfg.getLastDrawNo());
+        boolean rebuilt = false;
+        if (stored > 0 && (!consistent(cfg, ordered, lastIndex, train) || stored + (n - 1 - lastIndex) < need)) {
+            repository.clearSteps(cfg.getId());
+            meterRegistry.counter("ssq.backtest.store.rebuilds").increment();
+            stored = 0;
+            rebuilt = true;
+        }
+
+        int from;
+        StepRow prev = null;
+        if (stored == 0) {
+            from = n - Math.min(n - train, Math.max(need, initialSteps));
+        } else {
+            from = lastIndex + 1;
+            prev = repository.step(cfg.getId(), stored);
+        }
+        if (from < n) {
+            repository.appendSteps(cfg.getId(), compute(ordered, strategy, options, train, seed, from, n, prev));
+            meterRegistry.summary("ssq.backtest.store.steps").record(n - from);
+            cfg = repository.findConfig(strategy, key, train, seed);
+        }
+        return new Ensured(cfg, ordered, n - 1, n - from, rebuilt);
+    }
+
+    /**
+     * 已存首末两期的期号和训练窗口首期都与当前快照对得上，才认为中间各期仍有效。
+     */
+    private boolean consistent(ConfigRow cfg, List<SsqDraw> ordered, int lastIndex, int train) {
+        int stored = cfg.getSteps();
+        int firstIndex = lastIndex - stored + 1;
+        if (lastIndex < 0 || firstIndex - train < 0) return false;
+        StepRow first = repository.step(cfg.getId(), 1);
+        StepRow last = repository.step(cfg.getId(), stored);
+        return first != null && last != null
+                && first.getDrawNo().equals(ordered.get(firstIndex).getDrawNo())
+                && first.getWindowStart().equals(ordered.get(firstIndex - train).getDrawNo())
+                && last.getDrawNo().equals(ordered.get(lastIndex).getDrawNo())
+                && last.getWindowStart().equals(ordered.get(lastIndex - train).getDrawNo());
+    }
+
+    /**
+     * 被预测期下标 [from, to) 逐期建模采样（并行），再按顺序接上 prev 的累计值。
+     */
+    private List<StepRow> compute(List<SsqDraw> ordered, String strategy, SsqStatsService.PredictOptions options,
+                                  int train, long seed, int from, int to, StepRow prev) {
+        SsqRandom root = SsqRandom.of(seed);
+        List<SsqStatsService.Pick> picks = IntStream.range(from, to).parallel().mapToObj(g -> {
+            SsqStatsService.PickModel model = statsService.buildPickModel(ordered.subList(g - train, g), strategy, options);
+            return model.sample(root.derive(drawStream(ordered.get(g).getDrawNo())));
+        }).collect(Collectors.toList());
+
+        int stepNo = prev == null ? 0 : prev.getStepNo();
+        int cumRed = prev == null ? 0 : prev.getCumRedHit();
+        int cumBlue = prev == null ? 0 : prev.getCumBlueHit();
+        int cumBoth = prev == null ? 0 : prev.getCumBothHit();
+        int[] cumDist = prev == null ? new int[7] : prev.getCumDist().clone();
+        List<StepRow> rows = new ArrayList<StepRow>(to - from);
+        for (int g = from; g < to; g++) {
+            SsqStatsService.Pick pick = picks.get(g - from);
+            SsqDraw actual = ordered.get(g);
+            if (pick == null) {
+                throw new IllegalStateException("期号 " + actual.getDrawNo() + " 无法在 maxTry 次尝试内生成满足约束条件的号码");
+            }
+            int redHits = SsqBitmask.redHits(SsqBitmask.redMask(pick.getReds()), SsqBitmask.redMask(actual.getReds()));
+            boolean blueHit = pick.getBlue() == actual.getBlue();
+            cumRed += redHits;
+            cumBlue += blueHit ? 1 : 0;
+            cumBoth += (blueHit && redHits > 0) ? 1 : 0;
+            cumDist[redHits]++;
+            rows.add(new StepRow(++stepNo, actual.getDrawNo(), ordered.get(g - train).getDrawNo(), formatReds(pick.getReds()),
+                    pick.getBlue(), redHits, blueHit, cumRed, cumBlue, cumBoth, cumDist.clone()));
+        }
+        return rows;
+    }
+
+    /**
+     * 期号本身就是数字，直接作子流号；非数字时退回 hashCode。
+     */
+    static long drawStream(String drawNo) {
+        try {
+            return Long.parseLong(drawNo.trim());
+        } catch (NumberFormatException e) {
+            return drawNo.hashCode();
+        }
+    }
+
+    private static int indexOf(List<SsqDraw> ordered, String drawNo) {
+        if (drawNo == null) return -1;
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            if (drawNo.equals(ordered.get(i).getDrawNo())) return i;
+        }
+        return -1;
+    }
+
+    private static String formatReds(List<Integer> reds) {
+        List<Integer> sorted = new ArrayList<Integer>(reds);
+        Collections.sort(sorted);
+        StringBuilder sb = new StringBuilder();
+        for (Integer r : sorted) {
+            if (sb.length() > 0) sb.append(' ');
+            if (r < 10) sb.append('0');
+            sb.append(r);
+        }
+        return sb.toString();
+    }
+
+    private static List<Integer> parseReds(String reds) {
+        List<Integer> out = new ArrayList<Integer>();
+        for (String t : reds.trim().split("\\s+")) {
+            if (!t.isEmpty()) out.add(Integer.parseInt(t));
+        }
+        return out;
+    }
+
+    static final class Ensured {
+        final ConfigRow config;
+        final List<SsqDraw> ordered;
+        final int lastIndex;
+        final int computed;
+        final boolean rebuilt;
+
+        Ensured(ConfigRow config, List<SsqDraw> ordered, int lastIndex, int computed, boolean rebuilt) {
+            this.config = config;
+            this.ordered = ordered;
+            this.lastIndex = lastIndex;
+            this.computed = computed;
+            this.rebuilt = rebuilt;
+        }
+    }
+}
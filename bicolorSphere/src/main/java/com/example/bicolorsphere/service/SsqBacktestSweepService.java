@@ -0,0 +1,275 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 参数扫描回测：策略 × 训练窗口 × 测试期数 × 约束预设 的笛卡尔积，在同一份历史快照上一次算完并按 score 排名。
+ * <p>
+ * 回测第 i 期的模型只取决于（策略、训练窗口、被预测的那一期、影响建模的约束），与测试期数和过滤类约束无关，
+ * 所以先按这个键把用到的模型各建一次（并行），各配置再用 {@link SsqStatsService.PickModel#withOptions} 换上自己的约束采样。
+ * 每个配置逐期用 seed 派生的第 i 个子流，结果与单独调用 /api/backtest 完全一致。
+ */
+@Service
+public class SsqBacktestSweepService {
+
+    private final SsqStatsService statsService;
+    private final SsqDrawHistory history;
+    private final MeterRegistry meterRegistry;
+    private final int maxConfigs;
+
+    public SsqBacktestSweepService(SsqStatsService statsService,
+                                   SsqDrawHistory history,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${app.ssq.sweep.maxConfigs:1000}") int maxConfigs) {
+        this.statsService = statsService;
+        this.history = history;
+        this.meterRegistry = meterRegistry;
+        this.maxConfigs = Math.max(1, maxConfigs);
+    }
+
+    /**
+     * @param presetNames 内置约束预设名（none / z222 / z222_sum_span）
+     * @param custom      非空时作为名为 custom 的预设追加
+     * @param top         排名结果最多返回的行数
+     */
+    public Map<String, Object> sweep(List<String> strategies, List<Integer> trainWindows, List<Integer> testCounts,
+                                     List<String> presetNames, SsqStatsService.PredictOptions custom, Long seed, int top) {
+        Map<String, SsqStatsService.PredictOptions> presets = new LinkedHashMap<String, SsqStatsService.PredictOptions>();
+        for (String name : presetNames) {
+            if (!SsqStatsService.OPTION_PRESETS.contains(name)) {
+                return map("preset", name, "presets", SsqStatsService.OPTION_PRESETS, "error", "未知的约束预设: " + name);
+            }
+            presets.put(name, SsqStatsService.optionsPreset(name));
+        }
+        if (custom != null) {
+            presets.put("custom", custom);
+        }
+        return sweep(strategies, trainWindows, testCounts, presets, seed, top);
+    }
+
+    /**
+     * @param presets 预设名 → 约束（null 表示不带约束），按插入顺序输出
+     */
+    Map<String, Object> sweep(List<String> strategies, List<Integer> trainWindows, List<Integer> testCounts,
+                              Map<String, SsqStatsService.PredictOptions> presets, Long seed, int top) {
+        // 先规范化再去重：ml / ensemble 等别名只算一个配置，未知策略直接拒绝而不是按默认策略跑
+        Set<String> distinct = new LinkedHashSet<String>();
+        for (String s : strategies) {
+            if (s == null || s.trim().isEmpty()) continue;
+            String canonical = SsqStatsService.canonicalStrategy(s);
+            if (canonical == null) {
+                return map("strategy", s, "error", "未知策略: " + s);
+            }
+            distinct.add(canonical);
+        }
+        List<String> ss = new ArrayList<String>(distinct);
+        List<Integer> trains = distinctClamped(trainWindows, 50, 2000);
+        List<Integer> tests = distinctClamped(testCounts, 10, 500);
+        List<String> names = new ArrayList<String>(presets.keySet());
+        long sd = SsqRandom.seedOrDefault(seed);
+        int total = ss.size() * trains.size() * tests.size() * names.size();
+        if (total == 0) {
+            return map("error", "strategies / trainWindows / testCounts / presets 均不能为空");
+        }
+        if (total > maxConfigs) {
+            return map("configs", total, "maxConfigs", maxConfigs,
+                    "error", "配置数超过上限 app.ssq.sweep.maxConfigs，请减少取值");
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long t0 = System.currentTimeMillis();
+        try {
+            int maxTrain = Collections.max(trains);
+            int maxTest = Collections.max(tests);
+            List<SsqDraw> all = history.latest(maxTrain + maxTest);
+            Collections.reverse(all);
+            int n = all.size();
+
+            // 模型键：策略 + 影响建模的约束 + 训练窗口；每个键覆盖被预测期 [n - maxTest, n) 中数据足够的部分
+            List<Config> configs = new ArrayList<Config>(total);
+            Map<String, ModelSet> modelSets = new LinkedHashMap<String, ModelSet>();
+            for (String s : ss) {
+                for (Integer train : trains) {
+                    for (Integer test : tests) {
+                        for (String name : names) {
+                            SsqStatsService.PredictOptions opt = presets.get(name);
+                            String key = s + "|" + SsqStatsService.modelVariant(s, opt) + "|" + train;
+                            ModelSet set = modelSets.get(key);
+                            if (set == null) {
+                                set = new ModelSet(s, opt, train, Math.max(train, n - maxTest), n);
+                                modelSets.put(key, set);
+                            }
+                            configs.add(new Config(s, train, test, name, opt, set));
+                        }
+                    }
+                }
+            }
+
+            // 展平成 (模型集, 下标) 任务并行建模；ml 调参结果有进程内缓存，同一窗口不会重复调
+            List<ModelSet> sets = new ArrayList<ModelSet>(modelSets.values());
+            int models = 0;
+            for (ModelSet set : sets) {
+                models += set.size();
+            }
+            int[] taskSet = new int[models];
+            int[] taskIndex = new int[models];
+            for (int k = 0, j = 0; k < sets.size(); k++) {
+                for (int i = 0; i < sets.get(k).size(); i++, j++) {
+                    taskSet[j] = k;
+                    taskIndex[j] = i;
+                }
+            }
+            IntStream.range(0, models).parallel().forEach(j -> sets.get(taskSet[j]).build(taskIndex[j], all));
+
+            List<Map<String, Object>> rows = configs.parallelStream().map(c -> evaluate(c, all, sd)).collect(Collectors.toList());
+
+            List<Map<String, Object>> ranked = new ArrayList<Map<String, Object>>();
+            List<Map<String, Object>> errors = new ArrayList<Map<String, Object>>();
+            for (Map<String, Object> r : rows) {
+                (r.get("error") == null ? ranked : errors).add(r);
+            }
+            ranked.sort((a, b) -> Double.compare((double) b.get("score"), (double) a.get("score")));
+            for (int i = 0; i < ranked.size(); i++) {
+                ranked.get(i).put("rank", i + 1);
+            }
+            long stepsTotal = 0;
+            for (Config c : configs) {
+                stepsTotal += c.test;
+            }
+            meterRegistry.summary("ssq.backtest.sweep.configs").record(total);
+
+            return map(
+                    "strategies", ss,
+                    "trainWindows", trains,
+                    "testCounts", tests,
+                    "presets", presetsAsMap(presets),
+                    "seed", sd,
+                    "configs", total,
+                    "models", models,
+                    "steps", stepsTotal,
+                    "best", ranked.isEmpty() ? null : ranked.get(0),
+                    "ranked", ranked.size() > top ? new ArrayList<Map<String, Object>>(ranked.subList(0, Math.max(0, top))) : ranked,
+                    "errors", errors,
+                    "elapsedMs", System.currentTimeMillis() - t0,
+                    "disclaimer", "回测基于历史数据，仅供娱乐，不构成任何保证或建议。"
+            );
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.backtest.sweep"));
+        }
+    }
+
+    /**
+     * 与 {@link SsqStatsService#backtest} 同一口径：第 i 期用前 train 期建模、预测第 train+i 期。
+     */
+    private static Map<String, Object> evaluate(Config c, List<SsqDraw> all, long seed) {
+        Map<String, Object> row = map("strategy", c.strategy, "trainWindow", c.train, "testCount", c.test, "preset", c.preset);
+        int base = all.size() - c.train - c.test;
+        if (base < 0) {
+            row.put("error", "数据量不足，先同步更多历史数据");
+            return row;
+        }
+
+        int redHitTotal = 0;
+        int blueHitTotal = 0;
+        int[] redHitDist = new int[7];
+        SsqRandom root = SsqRandom.of(seed);
+        for (int i = 0; i < c.test; i++) {
+            int target = base + c.train + i;
+            SsqStatsService.Pick pick = c.models.model(target).withOptions(c.options).sample(root.derive(i));
+            if (pick == null) {
+                row.put("error", "第 " + (i + 1) + " 期无法在 maxTry 次尝试内生成满足约束条件的号码");
+                return row;
+            }
+            SsqDraw actual = all.get(target);
+            int redHits = SsqBitmask.redHits(SsqBitmask.redMask(pick.getReds()), SsqBitmask.redMask(actual.getReds()));
+            redHitTotal += redHits;
+            blueHitTotal += pick.getBlue() == actual.getBlue() ? 1 : 0;
+            redHitDist[redHits]++;
+        }
+
+        double avgRedHits = redHitTotal * 1.0 / c.test;
+        double blueHitRate = blueHitTotal * 1.0 / c.test;
+        double red2plusRate = (c.test - redHitDist[0] - redHitDist[1]) * 1.0 / c.test;
+        row.put("score", SsqStatsService.backtestScore(avgRedHits, blueHitRate, red2plusRate));
+        row.put("avgRedHits", avgRedHits);
+        row.put("blueHitRate", blueHitRate);
+        row.put("red2plusRate", red2plusRate);
+        return row;
+    }
+
+    /**
+     * 一个模型键下、被预测期下标 [from, to) 的模型，按需并行填充。
+     */
+    private final class ModelSet {
+        final String strategy;
+        final SsqStatsService.PredictOptions options;
+        final int train;
+        final int from;
+        final SsqStatsService.PickModel[] models;
+
+        ModelSet(String strategy, SsqStatsService.PredictOptions options, int train, int from, int to) {
+            this.strategy = strategy;
+            this.options = options;
+            this.train = train;
+            this.from = from;
+            this.models = new SsqStatsService.PickModel[Math.max(0, to - from)];
+        }
+
+        int size() {
+            return models.length;
+        }
+
+        void build(int k, List<SsqDraw> all) {
+            int target = from + k;
+            models[k] = statsService.buildPickModel(all.subList(target - train, target), strategy, options);
+        }
+
+        SsqStatsService.PickModel model(int target) {
+            return models[target - from];
+        }
+    }
+
+    private static final class Config {
+        final String strategy;
+        final int train;
+        final int test;
+        final String preset;
+        final SsqStatsService.PredictOptions options;
+        final ModelSet models;
+
+        Config(String strategy, int train, int test, String preset, SsqStatsService.PredictOptions options, ModelSet models) {
+            this.strategy = strategy;
+            this.train = train;
+            this.test = test;
+            this.preset = preset;
+            this.options = options;
+            this.models = models;
+        }
+    }
+
+    private static List<Integer> distinctClamped(List<Integer> values, int min, int max) {
+        Set<Integer> out = new LinkedHashSet<Integer>();
+        for (Integer v : values) {
+            if (v != null) out.add(Math.max(min, Math.min(max, v)));
+        }
+        return new ArrayList<Integer>(out);
+    }
+
+    private static Map<String, Object> presetsAsMap(Map<String, SsqStatsService.PredictOptions> presets) {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, SsqStatsService.PredictOptions> e : presets.entrySet()) {
+            m.put(e.getKey(), e.getValue() == null ? null : e.getValue().asMap());
+        }
+        return m;
+    }
+}
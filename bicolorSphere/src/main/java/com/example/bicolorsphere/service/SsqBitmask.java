@@ -0,0 +1,135 @@
+package com.example.bicolorsphere.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 号码的位图表示：红球 1~33 对应 long 的第 1~33 位，蓝球 1~16 对应 int 的第 1~16 位。
+ * 命中数 = Long.bitCount(票 & 开奖)，比逐个 contains 快得多且不装箱。
+ */
+public final class SsqBitmask {
+
+    public static final long ALL_REDS = ((1L << 34) - 1) & ~1L;
+    public static final int ALL_BLUES = ((1 << 17) - 1) & ~1;
+
+    public static final long ODD_REDS = 0x2AAAAAAAAL & ALL_REDS;
+    public static final long ZONE1 = ((1L << 12) - 1) & ~1L;
+    public static final long ZONE2 = ((1L << 23) - 1) & ~((1L << 12) - 1);
+    public static final long ZONE3 = ALL_REDS & ~((1L << 23) - 1);
+
+    private SsqBitmask() {
+    }
+
+    public static long redMask(Collection<Integer> reds) {
+        long m = 0L;
+        if (reds != null) {
+            for (Integer r : reds) {
+                if (r != null && r >= 1 && r <= 33) {
+                    m |= 1L << r;
+                }
+            }
+        }
+        return m;
+    }
+
+    public static int blueMask(Collection<Integer> blues) {
+        int m = 0;
+        if (blues != null) {
+            for (Integer b : blues) {
+                if (b != null && b >= 1 && b <= 16) {
+                    m |= 1 << b;
+                }
+            }
+        }
+        return m;
+    }
+
+    public static int blueBit(int blue) {
+        return blue >= 1 && blue <= 16 ? 1 << blue : 0;
+    }
+
+    public static int redHits(long ticket, long draw) {
+        return Long.bitCount(ticket & draw);
+    }
+
+    public static List<Integer> toList(long mask) {
+        List<Integer> out = new ArrayList<Integer>(Long.bitCount(mask));
+        for (long m = mask; m != 0; m &= m - 1) {
+            out.add(Long.numberOfTrailingZeros(m));
+        }
+        return out;
+    }
+
+    /**
+     * 均匀随机 6 个红球（1~33），直接在位图上拒绝重复。
+     */
+    public static long randomReds(Random rnd) {
+        long m = 0L;
+        int n = 0;
+        while (n < 6) {
+            long bit = 1L << (1 + rnd.nextInt(33));
+            if ((m & bit) == 0) {
+                m |= bit;
+                n++;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * 红球形态特征打包为一个 int：和值(8 位) | 跨度(6 位) | 奇数个数(3 位) | 一/二/三区个数(各 3 位)。
+     */
+    public static int features(long redMask) {
+        long m = redMask & ALL_REDS;
+        int sum = 0;
+        for (long x = m; x != 0; x &= x - 1) {
+            sum += Long.numberOfTrailingZeros(x);
+        }
+        int span = m == 0 ? 0 : (63 - Long.numberOfLeadingZeros(m)) - Long.numberOfTrailingZeros(m);
+        return sum
+                | span << 8
+                | Long.bitCount(m & ODD_REDS) << 14
+                | Long.bitCount(m & ZONE1) << 17
+                | Long.bitCount(m & ZONE2) << 20
+                | Long.bitCount(m & ZONE3) << 23;
+    }
+
+    public static int featureSum(int f) {
+        return f & 0xFF;
+    }
+
+    public static int featureSpan(int f) {
+        return (f >>> 8) & 0x3F;
+    }
+
+    public static int featureOdd(int f) {
+        return (f >>> 14) & 0x7;
+    }
+
+    public static int featureZone(int f, int zone) {
+        return (f >>> (14 + 3 * zone)) & 0x7;
+    }
+
+    /**
+     * 双色球奖级：1~6 等奖，未中奖为 0。
+     */
+    public static int prizeLevel(int redHits, boolean blueHit) {
+        if (blueHit) {
+            switch (redHits) {
+                case 6: return 1;
+                case 5: return 3;
+                case 4: return 4;
+                case 3: return 5;
+                default: return 6;
+            }
+        }
+        switch (redHits) {
+            case 6: return 2;
+            case 5: return 4;
+            case 4: return 5;
+            default: return 0;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.bicolorsphere.service;
+
+/**
+ * 组合数工具：n、k 都不超过 33，预先算好帕斯卡三角，查表 O(1)。
+ */
+public final class SsqCombinatorics {
+
+    private static final long[][] C = new long[34][34];
+
+    static {
+        for (int n = 0; n <= 33; n++) {
+            C[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                C[n][k] = C[n - 1][k - 1] + (k <= n - 1 ? C[n - 1][k] : 0);
+            }
+        }
+    }
+
+    private SsqCombinatorics() {
+    }
+
+    /**
+     * 6 红组合的组合数序号（combinadic）：升序 v1<...<v6 时 rank = Σ C(vi-1, i)，与全部 C(33,6) 种组合一一对应，
+     * 取值 [0, 1107568)。mask 不是恰好 6 个红球时返回 -1。
+     */
+    public static int rank(long redMask) {
+        if (Long.bitCount(redMask & SsqBitmask.ALL_REDS) != 6 || (redMask & ~SsqBitmask.ALL_REDS) != 0) {
+            return -1;
+        }
+        long r = 0;
+        int i = 1;
+        for (long m = redMask; m != 0; m &= m - 1, i++) {
+            r += C[Long.numberOfTrailingZeros(m) - 1][i];
+        }
+        return (int) r;
+    }
+
+    /**
+     * C(n, k)；k 超出 [0, n] 时为 0。
+     */
+    public static long binomial(int n, int k) {
+        if (n < 0 || n > 33 || k < 0 || k > n) {
+            return 0;
+        }
+        return C[n][k];
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+
+import java.util.*;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 历史开奖组合索引：以红球组合序号（见 {@link SsqCombinatorics#rank(long)}）为键的开放寻址哈希表，
+ * “这 6 个红球是否开过”O(1)；另存每期红球位图、蓝球与打包形态特征（见 {@link SsqBitmask#features(long)}），
+ * “与某注至少共享 k 个红球的期”、相似期检索都是对这几个平行数组的顺序扫描。
+ * 随 {@link SsqDrawHistory.Snapshot} 按需构建，快照不变则索引不变。
+ */
+public final class SsqComboIndex {
+
+    private final List<SsqDraw> ordered;
+    private final long[] reds;
+    private final int[] blues;
+    private final int[] features;
+    /**
+     * 槽位存 rank+1（0 为空），同组合重复开出时占多个槽位。
+     */
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+
+    SsqComboIndex(List<SsqDraw> ordered) {
+        this.ordered = ordered;
+        int n = ordered.size();
+        reds = new long[n];
+        blues = new int[n];
+        features = new int[n];
+        int cap = Integer.highestOneBit(Math.max(16, n * 2)) << 1;
+        keys = new int[cap];
+        values = new int[cap];
+        mask = cap - 1;
+        for (int i = 0; i < n; i++) {
+            SsqDraw d = ordered.get(i);
+            reds[i] = SsqBitmask.redMask(d.getReds());
+            blues[i] = d.getBlue();
+            features[i] = SsqBitmask.features(reds[i]);
+            int rank = SsqCombinatorics.rank(reds[i]);
+            if (rank < 0) continue;
+            int slot = mix(rank) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = rank + 1;
+            values[slot] = i;
+        }
+    }
+
+    public int size() {
+        return reds.length;
+    }
+
+    /**
+     * 红球组合完全相同的历史期（升序下标）。
+     */
+    public int[] exact(long redMask) {
+        int rank = SsqCombinatorics.rank(redMask);
+        if (rank < 0) return new int[0];
+        int[] out = new int[2];
+        int n = 0;
+        for (int slot = mix(rank) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == rank + 1) {
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                out[n++] = values[slot];
+            }
+        }
+        Arrays.sort(out, 0, n);
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * 与 redMask 至少共享 minShared 个红球的历史期，按共享数降序、期号新到旧，最多 limit 条；
+     * sharedDist[k] 为共享 k 个红球的期数（全量统计，不受 limit 影响）。
+     */
+    public int[] sharing(long redMask, int minShared, int limit, long[] sharedDist) {
+        int n = reds.length;
+        int[] byShared = new int[7];
+        for (int i = 0; i < n; i++) {
+            byShared[Long.bitCount(reds[i] & redMask)]++;
+        }
+        if (sharedDist != null) {
+            for (int k = 0; k <= 6; k++) sharedDist[k] = byShared[k];
+        }
+        int lim = Math.max(0, limit);
+        int[] out = new int[Math.min(lim, n)];
+        int c = 0;
+        for (int k = 6; k >= Math.max(0, minShared) && c < out.length; k--) {
+            if (byShared[k] == 0) continue;
+            for (int i = n - 1; i >= 0 && c < out.length; i--) {
+                if (Long.bitCount(reds[i] & redMask) == k) {
+                    out[c++] = i;
+                }
+            }
+        }
+        return Arrays.copyOf(out, c);
+    }
+
+    public SsqDraw draw(int index) {
+        return ordered.get(index);
+    }
+
+    public long redMask(int index) {
+        return reds[index];
+    }
+
+    public int blue(int index) {
+        return blues[index];
+    }
+
+    public int features(int index) {
+        return features[index];
+    }
+
+    /**
+     * 期号对应的下标，不存在时 -1。
+     */
+    public int indexOf(String drawNo) {
+        if (drawNo == null) return -1;
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            if (drawNo.equals(ordered.get(i).getDrawNo())) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 组合查询：是否开过（6 红 / 6+1）以及最接近的历史期。
+     */
+    public Map<String, Object> lookup(Collection<Integer> ticketReds, int blue, int minShared, int limit) {
+        long m = SsqBitmask.redMask(ticketReds);
+        int rank = SsqCombinatorics.rank(m);
+        if (rank < 0 || (ticketReds != null && ticketReds.size() != 6)) {
+            return map("reds", ticketReds, "blue", blue, "error", "需要 6 个不重复的红球（1~33）");
+        }
+
+        List<Map<String, Object>> exactRows = new ArrayList<Map<String, Object>>();
+        boolean exactWithBlue = false;
+        int[] hits = exact(m);
+        for (int j = hits.length - 1; j >= 0; j--) {
+            int i = hits[j];
+            boolean blueHit = blues[i] == blue;
+            exactWithBlue |= blueHit;
+            exactRows.add(row(i, 6, blueHit));
+        }
+
+        long[] dist = new long[7];
+        int[] near = sharing(m, minShared, limit, dist);
+        List<Map<String, Object>> nearRows = new ArrayList<Map<String, Object>>(near.length);
+        for (int i : near) {
+            nearRows.add(row(i, Long.bitCount(reds[i] & m), blues[i] == blue));
+        }
+        int maxShared = 0;
+        for (int k = 6; k >= 0; k--) {
+            if (dist[k] > 0) {
+                maxShared = k;
+                break;
+            }
+        }
+        Map<String, Object> sharedDist = new LinkedHashMap<String, Object>();
+        long nearCount = 0;
+        for (int k = 0; k <= 6; k++) {
+            sharedDist.put(String.valueOf(k), dist[k]);
+            if (k >= minShared) nearCount += dist[k];
+        }
+
+        return map(
+                "reds", SsqBitmask.toList(m),
+                "blue", blue,
+                "rank", rank,
+                "historySize", reds.length,
+                "drawnRed6", !exactRows.isEmpty(),
+                "drawnExact", exactWithBlue,
+                "exact", exactRows,
+                "maxSharedReds", maxShared,
+                "minShared", minShared,
+                "nearCount", nearCount,
+                "near", nearRows,
+                "sharedDist", sharedDist
+        );
+    }
+
+    private Map<String, Object> row(int i, int shared, boolean blueHit) {
+        SsqDraw d = ordered.get(i);
+        return map(
+                "drawNo", d.getDrawNo(),
+                "drawDate", d.getDrawDate() == null ? null : d.getDrawDate().toString(),
+                "red", d.getReds(),
+                "blue", d.getBlue(),
+                "sharedReds", shared,
+                "blueHit", blueHit
+        );
+    }
+
+    private static int mix(int x) {
+        x *= 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+
+import java.util.*;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 红球两两、三三共现计数：对数 C(33,2)=528、三元组 C(33,3)=5456，均以组合数序号为下标存成平铺 int 数组。
+ * <p>
+ * 每 {@link #CHECKPOINT} 期存一份前缀计数，任意“最近 N 期”窗口 = 全量 − 前缀(起点)，
+ * 前缀(起点) = 最近的检查点 + 不足一个检查点的零头，代价与历史长度无关。
+ * 新数据入库后若旧快照是新快照的前缀，则在旧结构上追加（见 {@link #extend(List)}），不必重扫全部历史。
+ */
+public final class SsqCooccurrence {
+
+    public static final int PAIRS = 528;
+    public static final int TRIPLES = 5456;
+    static final int CHECKPOINT = 64;
+
+    private final long[] masks;
+    private final String[] drawNos;
+    /**
+     * 第 c 个元素为前 c*CHECKPOINT 期的计数，只追加、数组本身不再修改，可在新旧结构间共享。
+     */
+    private final List<Counts> checkpoints;
+    private final Counts total;
+
+    private SsqCooccurrence(long[] masks, String[] drawNos, List<Counts> checkpoints, Counts total) {
+        this.masks = masks;
+        this.drawNos = drawNos;
+        this.checkpoints = checkpoints;
+        this.total = total;
+    }
+
+    static SsqCooccurrence build(List<SsqDraw> ordered) {
+        return append(new long[0], new String[0], new ArrayList<Counts>(), new Counts(), ordered, 0);
+    }
+
+    /**
+     * 旧结构的所有期与 ordered 的前缀逐期一致（期号与红球）时只追加新期，否则全量重建。
+     */
+    SsqCooccurrence extend(List<SsqDraw> ordered) {
+        int m = masks.length;
+        if (ordered.size() < m) {
+            return build(ordered);
+        }
+        for (int i = 0; i < m; i++) {
+            SsqDraw d = ordered.get(i);
+            if (!drawNos[i].equals(d.getDrawNo()) || masks[i] != SsqBitmask.redMask(d.getReds())) {
+                return build(ordered);
+            }
+        }
+        if (ordered.size() == m) {
+            return this;
+        }
+        return append(masks, drawNos, new ArrayList<Counts>(checkpoints), total.copy(), ordered, m);
+    }
+
+    private static SsqCooccurrence append(long[] oldMasks, String[] oldDrawNos, List<Counts> checkpoints, Counts total,
+                                          List<SsqDraw> ordered, int from) {
+        int n = ordered.size();
+        long[] masks = Arrays.copyOf(oldMasks, n);
+        String[] drawNos = Arrays.copyOf(oldDrawNos, n);
+        for (int i = from; i < n; i++) {
+            if (i % CHECKPOINT == 0) {
+                checkpoints.add(total.copy());
+            }
+            SsqDraw d = ordered.get(i);
+            masks[i] = SsqBitmask.redMask(d.getReds());
+            drawNos[i] = d.getDrawNo();
+            total.add(masks[i], 1);
+        }
+        return new SsqCooccurrence(masks, drawNos, checkpoints, total);
+    }
+
+    public int size() {
+        return masks.length;
+    }
+
+    /**
+     * 最近 latestN 期的计数；latestN 不小于总期数时返回全量（只读，勿修改）。
+     */
+    public Counts window(int latestN) {
+        int n = masks.length;
+        int start = n - Math.max(0, Math.min(latestN, n));
+        if (start == 0) {
+            return total;
+        }
+        int c = start / CHECKPOINT;
+        Counts out = total.copy();
+        out.subtract(checkpoints.get(c));
+        for (int i = c * CHECKPOINT; i < start; i++) {
+            out.add(masks[i], -1);
+        }
+        return out;
+    }
+
+    /**
+     * window 是本结构所含历史中的一段连续区间（首末期号与红球都对得上）时返回其起始下标，否则 -1，
+     * 约定同 {@link SsqTransitions#locate}。期号按升序存放，二分查找首期。
+     */
+    int locate(List<SsqDraw> window) {
+        if (window == null || window.isEmpty()) return -1;
+        SsqDraw first = window.get(0);
+        SsqDraw last = window.get(window.size() - 1);
+        if (first == null || last == null) return -1;
+        int s = Arrays.binarySearch(drawNos, first.getDrawNo());
+        if (s < 0) return -1;
+        int e = s + window.size() - 1;
+        return e < drawNos.length && drawNos[e].equals(last.getDrawNo())
+                && masks[s] == SsqBitmask.redMask(first.getReds())
+                && masks[e] == SsqBitmask.redMask(last.getReds()) ? s : -1;
+    }
+
+    /**
+     * 第 [s, e) 期的计数 = 前缀(e) − 前缀(s)，前缀为最近的检查点加上不足 CHECKPOINT 期的零头；
+     * 覆盖全部历史时返回全量（只读，勿修改）。
+     */
+    Counts range(int s, int e) {
+        int n = masks.length;
+        if (s <= 0 && e >= n) {
+            return total;
+        }
+        Counts out;
+        if (e >= n) {
+            out = total.copy();
+        } else {
+            int ce = e / CHECKPOINT;
+            out = checkpoints.get(ce).copy();
+            for (int i = ce * CHECKPOINT; i < e; i++) {
+                out.add(masks[i], 1);
+            }
+        }
+        if (s > 0) {
+            int cs = s / CHECKPOINT;
+            out.subtract(checkpoints.get(cs));
+            for (int i = cs * CHECKPOINT; i < s; i++) {
+                out.add(masks[i], -1);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 两两下标：a<b 时 C(b-1,2) + (a-1)。
+     */
+    public static int pairIndex(int a, int b) {
+        if (a > b) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        return (b - 1) * (b - 2) / 2 + (a - 1);
+    }
+
+    /**
+     * 三元组下标：a<b<c 时 C(c-1,3) + C(b-1,2) + (a-1)。
+     */
+    public static int tripleIndex(int a, int b, int c) {
+        int x = Math.min(a, Math.min(b, c));
+        int z = Math.max(a, Math.max(b, c));
+        int y = a + b + c - x - z;
+        return (z - 1) * (z - 2) * (z - 3) / 6 + (y - 1) * (y - 2) / 2 + (x - 1);
+    }
+
+    /**
+     * 某一窗口内的共现计数。
+     */
+    public static final class Counts {
+        private final int[] pair;
+        private final int[] triple;
+        private int draws;
+
+        public Counts() {
+            this(new int[PAIRS], new int[TRIPLES], 0);
+        }
+
+        private Counts(int[] pair, int[] triple, int draws) {
+            this.pair = pair;
+            this.triple = triple;
+            this.draws = draws;
+        }
+
+        public static Counts of(List<SsqDraw> draws) {
+            Counts c = new Counts();
+            if (draws != null) {
+                for (SsqDraw d : draws) {
+                    if (d != null) c.add(SsqBitmask.redMask(d.getReds()), 1);
+                }
+            }
+            return c;
+        }
+
+        Counts copy() {
+            return new Counts(pair.clone(), triple.clone(), draws);
+        }
+
+        void add(long redMask, int sign) {
+            int[] v = new int[6];
+            int k = 0;
+            for (long m = redMask & SsqBitmask.ALL_REDS; m != 0 && k < 6; m &= m - 1) {
+                v[k++] = Long.numberOfTrailingZeros(m);
+            }
+            for (int i = 0; i < k; i++) {
+                for (int j = i + 1; j < k; j++) {
+                    int pj = (v[j] - 1) * (v[j] - 2) / 2 + (v[i] - 1);
+                    pair[pj] += sign;
+                    for (int l = j + 1; l < k; l++) {
+                        triple[(v[l] - 1) * (v[l] - 2) * (v[l] - 3) / 6 + pj] += sign;
+                    }
+                }
+            }
+            draws += sign;
+        }
+
+        void subtract(Counts o) {
+            for (int i = 0; i < PAIRS; i++) pair[i] -= o.pair[i];
+            for (int i = 0; i < TRIPLES; i++) triple[i] -= o.triple[i];
+            draws -= o.draws;
+        }
+
+        public int draws() {
+            return draws;
+        }
+
+        public int pair(int a, int b) {
+            return a == b ? 0 : pair[pairIndex(a, b)];
+        }
+
+        public int triple(int a, int b, int c) {
+            return a == b || b == c || a == c ? 0 : triple[tripleIndex(a, b, c)];
+        }
+
+        /**
+         * 每个红球与 anchors 中各号码的两两共现次数之和（anchors 自身为 0）。
+         */
+        public int[] pairAffinity(long anchors) {
+            int[] out = new int[34];
+            for (int v = 1; v <= 33; v++) {
+                if ((anchors & (1L << v)) != 0) continue;
+                int s = 0;
+                for (long m = anchors & SsqBitmask.ALL_REDS; m != 0; m &= m - 1) {
+                    s += pair(v, Long.numberOfTrailingZeros(m));
+                }
+                out[v] = s;
+            }
+            return out;
+        }
+
+        /**
+         * 每个红球与 anchors 中任意两个号码组成三元组的共现次数之和。
+         */
+        public int[] tripleAffinity(long anchors) {
+            int[] a = new int[6];
+            int k = 0;
+            for (long m = anchors & SsqBitmask.ALL_REDS; m != 0 && k < a.length; m &= m - 1) {
+                a[k++] = Long.numberOfTrailingZeros(m);
+            }
+            int[] out = new int[34];
+            for (int v = 1; v <= 33; v++) {
+                if ((anchors & (1L << v)) != 0) continue;
+                int s = 0;
+                for (int i = 0; i < k; i++) {
+                    for (int j = i + 1; j < k; j++) {
+                        s += triple(v, a[i], a[j]);
+                    }
+                }
+                out[v] = s;
+            }
+            return out;
+        }
+
+        /**
+         * 共现次数最多的 top 个对（order=2）或三元组（order=3），lift = 次数 / 均匀随机下的期望次数。
+         */
+        public List<Map<String, Object>> top(int order, int top) {
+            int[] cells = order == 3 ? triple : pair;
+            // 均匀随机下某一对（三元组）同时出现的概率：C(31,4)/C(33,6)（C(30,3)/C(33,6)）
+            double p = order == 3 ? 120.0 / 32736 : 30.0 / 1056;
+            double expected = draws * p;
+            Integer[] idx = new Integer[cells.length];
+            for (int i = 0; i < idx.length; i++) idx[i] = i;
+            Arrays.sort(idx, (x, y) -> cells[x] != cells[y] ? Integer.compare(cells[y], cells[x]) : Integer.compare(x, y));
+            int lim = Math.max(0, Math.min(top, idx.length));
+            List<Map<String, Object>> out = new ArrayList<Map<String, Object>>(lim);
+            for (int i = 0; i < lim; i++) {
+                int cell = idx[i];
+                out.add(map("reds", order == 3 ? unrankTriple(cell) : unrankPair(cell),
+                        "count", cells[cell],
+                        "lift", expected <= 0 ? null : cells[cell] / expected));
+            }
+            return out;
+        }
+    }
+
+    static List<Integer> unrankPair(int idx) {
+        int b = 2;
+        while ((b) * (b - 1) / 2 <= idx) b++;
+        return Arrays.asList(idx - (b - 1) * (b - 2) / 2 + 1, b);
+    }
+
+    static List<Integer> unrankTriple(int idx) {
+        int c = 3;
+        while (c * (c - 1) * (c - 2) / 6 <= idx) c++;
+        List<Integer> ab = unrankPair(idx - (c - 1) * (c - 2) * (c - 3) / 6);
+        return Arrays.asList(ab.get(0), ab.get(1), c);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.bicolorsphere.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 录制 / 回放抓取结果，用于离线压测同步链路：
+ * <ul>
+ *     <li>live：直接走 {@link SsqHttpPageFetcher}（默认）</li>
+ *     <li>record：照常抓取，同时把每页响应体原样存到 corpusDir（page-0001.html，响应声明的字符集另存 .charset）</li>
+ *     <li>replay：不发请求，从 corpusDir 读页面，按 latencyMs ± latencyJitterMs 模拟网络耗时；
+ *     语料里没有的页按 HTTP 404 处理（不重试）</li>
+ * </ul>
+ */
+@Primary
+@Component
+public class SsqCorpusPageFetcher implements SsqPageFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SsqCorpusPageFetcher.class);
+    private static final Pattern PAGE_NUM_PATTERN = Pattern.compile("[?&]pageNum=(\\d+)");
+
+    public enum Mode {LIVE, RECORD, REPLAY}
+
+    private final SsqPageFetcher live;
+    private final MeterRegistry meterRegistry;
+    private final Mode mode;
+    private final Path corpusDir;
+    private final long latencyMs;
+    private final long latencyJitterMs;
+
+    public SsqCorpusPageFetcher(SsqHttpPageFetcher live,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.ssq.crawler.mode:live}") String mode,
+                                @Value("${app.ssq.crawler.corpusDir:./ssq-corpus}") String corpusDir,
+                                @Value("${app.ssq.crawler.replay.latencyMs:0}") long latencyMs,
+                                @Value("${app.ssq.crawler.replay.latencyJitterMs:0}") long latencyJitterMs) throws IOException {
+        this(live, meterRegistry, Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT)), Paths.get(corpusDir), latencyMs, latencyJitterMs);
+    }
+
+    public SsqCorpusPageFetcher(SsqPageFetcher live, MeterRegistry meterRegistry, Mode mode, Path corpusDir,
+                                long latencyMs, long latencyJitterMs) throws IOException {
+        this.live = live;
+        this.meterRegistry = meterRegistry;
+        this.mode = mode;
+        this.corpusDir = corpusDir.toAbsolutePath().normalize();
+        this.latencyMs = Math.max(0, latencyMs);
+        this.latencyJitterMs = Math.max(0, Math.min(this.latencyMs, latencyJitterMs));
+        if (mode == Mode.RECORD) {
+            Files.createDirectories(this.corpusDir);
+        }
+        if (mode != Mode.LIVE) {
+            log.info("crawler in {} mode, corpus dir {}", mode, this.corpusDir);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public <T> T fetch(String url, BodyParser<T> parser) throws IOException {
+        switch (mode) {
+            case RECORD:
+                return live.fetch(url, (body, charset, baseUri) -> {
+                    byte[] bytes = StreamUtils.copyToByteArray(body);
+                    save(url, bytes, charset);
+                    return parser.parse(new ByteArrayInputStream(bytes), charset, baseUri);
+                });
+            case REPLAY:
+                return replay(url, parser);
+            default:
+                return live.fetch(url, parser);
+        }
+    }
+
+    private void save(String url, byte[] bytes, String charset) throws IOException {
+        String name = fileName(url);
+        write(corpusDir.resolve(name), bytes);
+        if (charset != null) {
+            write(corpusDir.resolve(name + ".charset"), charset.getBytes(StandardCharsets.US_ASCII));
+        }
+        meterRegistry.counter("ssq.crawl.corpus.pages", "mode", "record").increment();
+    }
+
+    /**
+     * 先写临时文件再改名，录制中途中断不会留下半页。
+     */
+    private static void write(Path target, byte[] bytes) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, bytes);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private <T> T replay(String url, BodyParser<T> parser) throws IOException {
+        sleep(latencyJitterMs == 0 ? latencyMs
+                : latencyMs - latencyJitterMs + ThreadLocalRandom.current().nextLong(2 * latencyJitterMs + 1));
+        Path file = corpusDir.resolve(fileName(url));
+        if (!Files.isRegularFile(file)) {
+            throw new SsqHttpStatusException(404, 0, url);
+        }
+        Path charsetFile = file.resolveSibling(file.getFileName() + ".charset");
+        String charset = Files.isRegularFile(charsetFile)
+                ? new String(Files.readAllBytes(charsetFile), StandardCharsets.US_ASCII).trim() : null;
+        meterRegistry.counter("ssq.crawl.corpus.pages", "mode", "replay").increment();
+        try (InputStream body = Files.newInputStream(file)) {
+            return parser.parse(body, charset, url);
+        }
+    }
+
+    /**
+     * 列表页按页码命名；其他地址把非文件名字符替换成下划线。
+     */
+    static String fileName(String url) {
+        Matcher m = PAGE_NUM_PATTERN.matcher(url);
+        if (m.find()) {
+            return String.format("page-%04d.html", Integer.parseInt(m.group(1)));
+        }
+        return url.replaceAll("[^A-Za-z0-9._-]", "_") + ".html";
+    }
+
+    private static void sleep(long ms) throws IOException {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while replaying", ie);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import com.example.bicolorsphere.repo.SsqCrawlFailureRepository;
+import com.example.bicolorsphere.repo.SsqCrawlFailureRepository.FailedPage;
+import com.example.bicolorsphere.repo.SsqDrawRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 抓取调度：单页失败先原地重试（指数退避 + 抖动，服务端给了 Retry-After 时按它来）；
+ * 连续若干页重试用尽仍失败时熔断一段时间，期间直接快速失败，不再打数据源；
+ * 最终失败的页记入持久化队列 ssq_crawl_failed_page，之后每次同步结束前补抓，不必靠整段 syncMissing 重扫。
+ */
+@Component
+public class SsqCrawlScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(SsqCrawlScheduler.class);
+
+    private final SsqCrawlerService crawlerService;
+    private final SsqCrawlFailureRepository failures;
+    private final SsqDrawRepository drawRepository;
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final int failureThreshold;
+    private final long openMs;
+    private final int maxQueuedPagesPerRun;
+
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probing;
+
+    public SsqCrawlScheduler(SsqCrawlerService crawlerService,
+                             SsqCrawlFailureRepository failures,
+                             SsqDrawRepository drawRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.ssq.crawler.retry.maxAttempts:3}") int maxAttempts,
+                             @Value("${app.ssq.crawler.retry.baseBackoffMs:500}") long baseBackoffMs,
+                             @Value("${app.ssq.crawler.retry.maxBackoffMs:8000}") long maxBackoffMs,
+                             @Value("${app.ssq.crawler.circuit.failureThreshold:3}") int failureThreshold,
+                             @Value("${app.ssq.crawler.circuit.openSeconds:120}") int openSeconds,
+                             @Value("${app.ssq.crawler.retryQueue.maxPagesPerRun:20}") int maxQueuedPagesPerRun) {
+        this.crawlerService = crawlerService;
+        this.failures = failures;
+        this.drawRepository = drawRepository;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMs = Math.max(1, baseBackoffMs);
+        this.maxBackoffMs = Math.max(this.baseBackoffMs, maxBackoffMs);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = Math.max(1, openSeconds) * 1000L;
+        this.maxQueuedPagesPerRun = Math.max(1, maxQueuedPagesPerRun);
+        meterRegistry.gauge("ssq.crawl.circuit.open", this, s -> s.isOpen() ? 1 : 0);
+    }
+
+    /**
+     * 抓一页，可重试的错误（网络异常、5xx / 408 / 429）原地重试；熔断中抛 {@link CircuitOpenException}。
+     * 熔断期过后的半开试探只发一次请求，不重试，失败立即重新熔断。
+     * 不负责入队，调用方决定是否 {@link #enqueue}。
+     */
+    public List<SsqDraw> fetch(int page) throws IOException {
+        IOException last = null;
+        boolean probe = false;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            probe = acquire();
+            try {
+                List<SsqDraw> rows = crawlerService.fetchPage(page);
+                onSuccess();
+                return rows;
+            } catch (IOException e) {
+                last = e;
+                if (probe || !retryable(e) || attempt == maxAttempts) {
+                    break;
+                }
+                meterRegistry.counter("ssq.crawl.retries").increment();
+                sleep(backoffMs(attempt, e));
+            } catch (RuntimeException e) {
+                if (probe) {
+                    onFailure(true);
+                }
+                throw e;
+            }
+        }
+        onFailure(probe);
+        throw last;
+    }
+
+    /**
+     * 最终失败的页入队；熔断导致的失败也入队（那一页根本没抓）。
+     */
+    public void enqueue(int page, Exception e) {
+        try {
+            failures.markFailed(page, drawRepository.latestDrawNo(), e.getMessage());
+            meterRegistry.counter("ssq.crawl.queue.enqueued").increment();
+        } catch (RuntimeException ex) {
+            log.warn("enqueue failed page {} failed", page, ex);
+        }
+    }
+
+    /**
+     * 补抓队列里的页。入队后如果又开了 k 期新奖，原来那一页的内容会往后挪 k 行，
+     * 所以除了原页，还按 k / 每页行数 多抓后面几页；全部成功才出队，否则累加失败次数留到下次。
+     *
+     * @param skip 本次同步刚失败入队的页，已经重试过，留到下次
+     */
+    public QueueResult retryQueued(Set<Integer> skip, PageHandler handler) {
+        int retried = 0;
+        int recovered = 0;
+        int inserted = 0;
+        List<String> errors = new ArrayList<String>();
+        for (FailedPage q : failures.list(maxQueuedPagesPerRun)) {
+            if (isOpen()) break;
+            if (skip.contains(q.getPageNum())) continue;
+            retried++;
+            try {
+                long shift = drawRepository.countNewerThan(q.getNewestDrawNo());
+                List<SsqDraw> rows = fetch(q.getPageNum());
+                inserted += handler.handle(rows);
+                int extra = rows.isEmpty() ? 0 : (int) ((shift + rows.size() - 1) / rows.size());
+                for (int p = q.getPageNum() + 1; p <= q.getPageNum() + extra; p++) {
+                    inserted += handler.handle(fetch(p));
+                }
+                failures.remove(q.getPageNum());
+                recovered++;
+                meterRegistry.counter("ssq.crawl.queue.recovered").increment();
+            } catch (Exception e) {
+                failures.markFailed(q.getPageNum(), q.getNewestDrawNo(), e.getMessage());
+                errors.add("queued page=" + q.getPageNum() + ": " + e.getMessage());
+            }
+        }
+        return new QueueResult(retried, recovered, inserted, failures.count(), errors);
+    }
+
+    public List<FailedPage> queued(int limit) {
+        return failures.list(limit);
+    }
+
+    public synchronized boolean isOpen() {
+        return consecutiveFailures >= failureThreshold && (probing || System.currentTimeMillis() < openUntil);
+    }
+
+    /**
+     * 熔断期内一律快速失败；熔断期过后只放行一个请求作半开试探（返回 true），试探结束前其他调用仍快速失败。
+     */
+    private synchronized boolean acquire() throws CircuitOpenException {
+        if (consecutiveFailures < failureThreshold) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now < openUntil) {
+            throw new CircuitOpenException(openUntil - now);
+        }
+        if (probing) {
+            throw new CircuitOpenException("circuit half-open, probe in flight");
+        }
+        probing = true;
+        return true;
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probing = false;
+    }
+
+    /**
+     * 试探失败时 consecutiveFailures 已不低于阈值，这里直接重新计时熔断；只有试探自己能清掉 probing 标记。
+     */
+    private synchronized void onFailure(boolean probe) {
+        if (probe) {
+            probing = false;
+        }
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMs;
+            meterRegistry.counter("ssq.crawl.circuit.opened").increment();
+            log.warn("crawl circuit opened for {} ms after {} consecutive failed pages", openMs, consecutiveFailures);
+        }
+    }
+
+    private static boolean retryable(IOException e) {
+        if (e instanceof SsqHttpStatusException) {
+            return ((SsqHttpStatusException) e).isRetryable();
+        }
+        return !(e instanceof CircuitOpenException);
+    }
+
+    /**
+     * 第 attempt 次失败后的等待：base * 2^(attempt-1) 封顶 maxBackoffMs，取其一半加上一半以内的随机抖动，
+     * 避免多个实例同时重试；服务端要求的 Retry-After 更长时以它为准（同样封顶）。
+     */
+    long backoffMs(int attempt, IOException e) {
+        long exp = Math.min(maxBackoffMs, baseBackoffMs << Math.min(30, attempt - 1));
+        long delay = exp / 2 + ThreadLocalRandom.current().nextLong(exp / 2 + 1);
+        if (e instanceof SsqHttpStatusException) {
+            delay = Math.max(delay, Math.min(maxBackoffMs, ((SsqHttpStatusException) e).getRetryAfterMs()));
+        }
+        return delay;
+    }
+
+    private static void sleep(long ms) throws IOException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while backing off", ie);
+        }
+    }
+
+    /**
+     * 把抓到的一页入库，返回新增行数。
+     */
+    public interface PageHandler {
+        int handle(List<SsqDraw> rows);
+    }
+
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(long remainingMs) {
+            this("circuit open, retry in " + remainingMs + " ms");
+        }
+
+        CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    public static class QueueResult {
+        private final int retried;
+        private final int recovered;
+        private final int inserted;
+        private final long pending;
+        private final List<String> errors;
+
+        public QueueResult(int retried, int recovered, int inserted, long pending, List<String> errors) {
+            this.retried = retried;
+            this.recovered = recovered;
+            this.inserted = inserted;
+            this.pending = pending;
+            this.errors = errors;
+        }
+
+        public int getRetried() {
+            return retried;
+        }
+
+        public int getRecovered() {
+            return recovered;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        public long getPending() {
+            return pending;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public Map<String, Object> asMap() {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("retried", retried);
+            m.put("recovered", recovered);
+            m.put("inserted", inserted);
+            m.put("pending", pending);
+            m.put("errors", errors);
+            return m;
+        }
+    }
+}
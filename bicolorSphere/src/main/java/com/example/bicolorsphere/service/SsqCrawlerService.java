@@ -1,6 +1,8 @@
 package com.example.bicolorsphere.service;
 
 import com.example.bicolorsphere.domain.SsqDraw;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -24,13 +26,34 @@ public class SsqCrawlerService {
     private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})");
     private static final Pattern NUM_PATTERN = Pattern.compile("\\b(\\d{1,2})\\b");
 
+    private final SsqPageFetcher fetcher;
+    private final MeterRegistry meterRegistry;
+
+    public SsqCrawlerService(SsqPageFetcher fetcher, MeterRegistry meterRegistry) {
+        this.fetcher = fetcher;
+        this.meterRegistry = meterRegistry;
+    }
+
     public List<SsqDraw> fetchPage(int pageNum) throws IOException {
         String url = String.format(BASE_URL, pageNum);
-        Document doc = Jsoup.connect(url)
-                .userAgent("Mozilla/5.0")
-                .timeout(15_000)
-                .get();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            List<SsqDraw> rows = fetcher.fetch(url, (body, charset, baseUri) -> parse(Jsoup.parse(body, charset, baseUri)));
+            sample.stop(meterRegistry.timer("ssq.crawl.page", "outcome", "success"));
+            meterRegistry.summary("ssq.crawl.page.rows").record(rows.size());
+            return rows;
+        } catch (IOException | RuntimeException e) {
+            sample.stop(meterRegistry.timer("ssq.crawl.page", "outcome", "error"));
+            meterRegistry.counter("ssq.crawl.errors", "exception", e.getClass().getSimpleName()).increment();
+            throw e;
+        }
+    }
+
+    public List<SsqDraw> parsePage(String html) {
+        return parse(Jsoup.parse(html));
+    }
 
+    private List<SsqDraw> parse(Document doc) {
         Elements rows = doc.select("tr");
         List<SsqDraw> result = new ArrayList<>();
 
@@ -145,7 +168,7 @@ public class SsqCrawlerService {
         return nums.subList(0, 7);
     }
 
-    private static boolean isValid(List<Integer> reds, int blue) {
+    static boolean isValid(List<Integer> reds, int blue) {
         if (reds.size() != 6) {
             return false;
         }
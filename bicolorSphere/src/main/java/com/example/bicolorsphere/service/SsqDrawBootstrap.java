@@ -0,0 +1,62 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.repo.SsqDrawRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+
+/**
+ * 空库启动时从本地文件导入开奖历史，新部署不必先从数据源把几十页历史抓一遍；
+ * 路径支持 classpath: / file:，文件不存在或库里已有数据时跳过。先于预热执行。
+ */
+@Component
+public class SsqDrawBootstrap {
+
+    private static final Logger log = LoggerFactory.getLogger(SsqDrawBootstrap.class);
+
+    private final SsqDrawImportService importService;
+    private final SsqDrawRepository repository;
+    private final String location;
+
+    public SsqDrawBootstrap(SsqDrawImportService importService,
+                            SsqDrawRepository repository,
+                            @Value("${app.ssq.import.bootstrapLocation:}") String location) {
+        this.importService = importService;
+        this.repository = repository;
+        this.location = location == null ? "" : location.trim();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onReady() {
+        if (location.isEmpty()) {
+            return;
+        }
+        try {
+            if (repository.count() > 0) {
+                return;
+            }
+            Resource resource = new PathMatchingResourcePatternResolver().getResource(location);
+            if (!resource.exists()) {
+                log.info("ssq bootstrap file not found: {}", location);
+                return;
+            }
+            try (InputStream in = resource.getInputStream()) {
+                SsqDrawImportService.ImportResult r = importService.importStream(in);
+                log.info("ssq bootstrap imported {} draws from {} ({} invalid, {} duplicates) in {} ms",
+                        r.getInserted(), location, r.getInvalid(), r.getDuplicates(), r.getElapsedMs());
+            }
+        } catch (Exception e) {
+            log.warn("ssq bootstrap import from {} failed", location, e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import com.example.bicolorsphere.repo.SsqDrawRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 全量开奖历史的内存快照（按期号升序）。
+ * 统计/预测/回测统一从这里取数，避免每次请求都查库；同步入库后调用 {@link #invalidate()}，
+ * 其他实例写入的新数据通过定期比对库内指纹（行数+最大期号）发现。
+ */
+@Component
+public class SsqDrawHistory {
+
+    private final SsqDrawRepository repository;
+    private final long recheckMillis;
+
+    private volatile Snapshot snapshot;
+    private volatile long checkedAt;
+    /**
+     * invalidate 时留下的旧快照，下一次构建快照时在其增量结构（共现、转移计数）上追加，而不是重扫全部历史。
+     */
+    private Snapshot retired;
+
+    public SsqDrawHistory(SsqDrawRepository repository,
+                          @Value("${app.ssq.history.recheckSeconds:60}") int recheckSeconds) {
+        this.repository = repository;
+        this.recheckMillis = Math.max(0, recheckSeconds) * 1000L;
+    }
+
+    public Snapshot snapshot() {
+        Snapshot s = snapshot;
+        long now = System.currentTimeMillis();
+        if (s != null && now - checkedAt < recheckMillis) {
+            return s;
+        }
+        synchronized (this) {
+            s = snapshot;
+            if (s != null && System.currentTimeMillis() - checkedAt < recheckMillis) {
+                return s;
+            }
+            String fp = repository.fingerprint();
+            if (s == null || !fp.equals(s.getFingerprint())) {
+                s = new Snapshot(fp, repository.allAscending(), s != null ? s : retired);
+                snapshot = s;
+                retired = null;
+            }
+            checkedAt = System.currentTimeMillis();
+            return s;
+        }
+    }
+
+    public Snapshot reload() {
+        invalidate();
+        return snapshot();
+    }
+
+    public synchronized void invalidate() {
+        if (snapshot != null) {
+            retired = snapshot;
+        }
+        snapshot = null;
+        checkedAt = 0L;
+    }
+
+    /**
+     * 最近 limit 期，期号倒序（与 {@link SsqDrawRepository#latest(int)} 一致），返回可修改的副本。
+     */
+    public List<SsqDraw> latest(int limit) {
+        List<SsqDraw> ordered = snapshot().getOrdered();
+        int n = Math.max(0, Math.min(limit, ordered.size()));
+        List<SsqDraw> out = new ArrayList<SsqDraw>(n);
+        for (int i = ordered.size() - 1; i >= ordered.size() - n; i--) {
+            out.add(ordered.get(i));
+        }
+        return out;
+    }
+
+    /**
+     * 当前快照的历史组合索引（按需构建并随快照缓存）。
+     */
+    public SsqComboIndex comboIndex() {
+        return snapshot().comboIndex();
+    }
+
+    /**
+     * 当前快照的红球共现计数（按需构建，新数据入库后增量追加）。
+     */
+    public SsqCooccurrence cooccurrence() {
+        return snapshot().cooccurrence();
+    }
+
+    /**
+     * 当前快照的相邻期转移计数（按需构建，新数据入库后增量追加）。
+     */
+    public SsqTransitions transitions() {
+        return snapshot().transitions();
+    }
+
+    public static class Snapshot {
+        private final String fingerprint;
+        private final List<SsqDraw> ordered;
+        private volatile SsqComboIndex comboIndex;
+        private volatile SsqCooccurrence cooccurrence;
+        private volatile SsqTransitions transitions;
+        private SsqCooccurrence previousCooccurrence;
+        private SsqTransitions previousTransitions;
+
+        public Snapshot(String fingerprint, List<SsqDraw> ordered) {
+            this(fingerprint, ordered, null);
+        }
+
+        /**
+         * @param previous 上一个快照，可为 null；只取其已构建的增量结构，若仍是本快照的前缀则在其上追加
+         */
+        public Snapshot(String fingerprint, List<SsqDraw> ordered, Snapshot previous) {
+            this.fingerprint = fingerprint;
+            this.ordered = Collections.unmodifiableList(new ArrayList<SsqDraw>(ordered));
+            this.previousCooccurrence = previous == null ? null : previous.cooccurrence;
+            this.previousTransitions = previous == null ? null : previous.transitions;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public List<SsqDraw> getOrdered() {
+            return ordered;
+        }
+
+        public int size() {
+            return ordered.size();
+        }
+
+        public SsqComboIndex comboIndex() {
+            SsqComboIndex idx = comboIndex;
+            if (idx == null) {
+                synchronized (this) {
+                    idx = comboIndex;
+                    if (idx == null) {
+                        idx = new SsqComboIndex(ordered);
+                        comboIndex = idx;
+                    }
+                }
+            }
+            return idx;
+        }
+
+        public SsqCooccurrence cooccurrence() {
+            SsqCooccurrence c = cooccurrence;
+            if (c == null) {
+                synchronized (this) {
+                    c = cooccurrence;
+                    if (c == null) {
+                        c = previousCooccurrence != null ? previousCooccurrence.extend(ordered) : SsqCooccurrence.build(ordered);
+                        previousCooccurrence = null;
+                        cooccurrence = c;
+                    }
+                }
+            }
+            return c;
+        }
+
+        public SsqTransitions transitions() {
+            SsqTransitions t = transitions;
+            if (t == null) {
+                synchronized (this) {
+                    t = transitions;
+                    if (t == null) {
+                        t = previousTransitions != null ? previousTransitions.extend(ordered) : SsqTransitions.build(ordered);
+                        previousTransitions = null;
+                        transitions = t;
+                    }
+                }
+            }
+            return t;
+        }
+    }
+}
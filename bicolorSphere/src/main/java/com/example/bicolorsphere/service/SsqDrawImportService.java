@@ -0,0 +1,337 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import com.example.bicolorsphere.repo.SsqDrawRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 离线批量导入开奖历史：CSV（可 gzip 压缩）或 XLSX，列顺序与 {@link SsqExcelExportService} 导出的一致
+ * （drawNo, drawDate, red1..red6, blue，首行表头可有可无）。
+ * <p>
+ * 两种格式都流式解析：CSV 逐行读，XLSX 走 POI 的 SAX 事件接口，不把整个工作簿建成对象树；
+ * 每行按爬虫同一套规则校验，之后一次性与库里已有数据合并，分批 INSERT IGNORE。
+ */
+@Service
+public class SsqDrawImportService {
+
+    private static final Pattern DRAW_NO_PATTERN = Pattern.compile("\\d{7}");
+    private static final int MAX_ERROR_SAMPLES = 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SsqDrawRepository repository;
+    private final SsqDrawHistory history;
+    private final SsqBacktestStoreService backtestStore;
+    private final SsqSyncService syncService;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+
+    public SsqDrawImportService(SsqDrawRepository repository,
+                                SsqDrawHistory history,
+                                SsqBacktestStoreService backtestStore,
+                                SsqSyncService syncService,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.ssq.import.batchSize:2000}") int batchSize) {
+        this.repository = repository;
+        this.history = history;
+        this.backtestStore = backtestStore;
+        this.syncService = syncService;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * 按内容识别格式：PK 开头为 XLSX，1F 8B 开头为 gzip 压缩的 CSV，其余按 UTF-8 CSV。
+     */
+    public ImportResult importStream(InputStream in) throws IOException {
+        BufferedInputStream bin = new BufferedInputStream(in, BUFFER_SIZE);
+        bin.mark(2);
+        int b0 = bin.read();
+        int b1 = bin.read();
+        bin.reset();
+        if (b0 == 'P' && b1 == 'K') {
+            return importXlsx(bin);
+        }
+        if (b0 == 0x1f && b1 == 0x8b) {
+            return importCsv(new GZIPInputStream(bin, BUFFER_SIZE), "csv.gz");
+        }
+        return importCsv(bin, "csv");
+    }
+
+    private ImportResult importCsv(InputStream in, String format) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long t0 = System.currentTimeMillis();
+        Collector collector = new Collector();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            if (lineNo == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line.trim().isEmpty()) continue;
+            collector.accept(lineNo, splitCsv(line));
+        }
+        return finish(collector, format, t0, sample);
+    }
+
+    /**
+     * XLSX 的 zip 目录在文件末尾，先落到临时文件再按只读方式打开，只解析第一个工作表。
+     */
+    private ImportResult importXlsx(InputStream in) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long t0 = System.currentTimeMillis();
+        Collector collector = new Collector();
+        Path tmp = Files.createTempFile("ssq-import-", ".xlsx");
+        try {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            OPCPackage pkg = OPCPackage.open(tmp.toFile(), PackageAccess.READ);
+            try {
+                XSSFReader reader = new XSSFReader(pkg);
+                Iterator<InputStream> sheets = reader.getSheetsData();
+                if (sheets.hasNext()) {
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), new ReadOnlySharedStringsTable(pkg),
+                            new SheetRows(collector), new DataFormatter(), false));
+                    try (InputStream sheet = sheets.next()) {
+                        parser.parse(new InputSource(sheet));
+                    }
+                }
+            } finally {
+                pkg.revert();
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("XLSX 解析失败: " + e.getMessage(), e);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return finish(collector, "xlsx", t0, sample);
+    }
+
+    /**
+     * 解析不占锁；写库与同步共用 {@link SsqSyncService} 的锁，同步进行中时抛 {@link SsqSyncService.SyncInProgressException}。
+     */
+    private ImportResult finish(Collector c, String format, long t0, Timer.Sample sample) {
+        int inserted = syncService.runExclusive("import", () -> {
+            int n = repository.bulkInsertIgnore(c.draws.values(), batchSize);
+            if (n > 0) {
+                history.invalidate();
+                backtestStore.refresh();
+            }
+            return n;
+        });
+        sample.stop(meterRegistry.timer("ssq.import", "format", format));
+        meterRegistry.summary("ssq.import.rows").record(c.rows);
+        meterRegistry.summary("ssq.import.inserted").record(inserted);
+        return new ImportResult(format, c.rows, c.draws.size(), c.duplicates, c.invalid, inserted,
+                c.errors, System.currentTimeMillis() - t0);
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> out = new ArrayList<String>(9);
+        for (String s : line.split("[,\\t]", -1)) {
+            String t = s.trim();
+            if (t.length() >= 2 && t.startsWith("\"") && t.endsWith("\"")) {
+                t = t.substring(1, t.length() - 1).trim();
+            }
+            out.add(t);
+        }
+        return out;
+    }
+
+    /**
+     * 逐行校验并按期号去重（保留先出现的一行）；非数字开头的首行视为表头。
+     */
+    private static final class Collector {
+        final Map<String, SsqDraw> draws = new LinkedHashMap<String, SsqDraw>();
+        final List<String> errors = new ArrayList<String>();
+        int rows;
+        int duplicates;
+        int invalid;
+
+        void accept(int lineNo, List<String> cells) {
+            if (rows == 0 && draws.isEmpty() && invalid == 0 && !cells.isEmpty() && !cells.get(0).matches("\\d.*")) {
+                return;
+            }
+            rows++;
+            String error = null;
+            SsqDraw draw = null;
+            if (cells.size() < 9) {
+                error = "列数不足 9";
+            } else {
+                try {
+                    draw = parse(cells);
+                    if (draw == null) {
+                        error = "期号或号码不合法";
+                    }
+                } catch (NumberFormatException | DateTimeParseException e) {
+                    error = "格式错误: " + e.getMessage();
+                }
+            }
+            if (error != null) {
+                invalid++;
+                if (errors.size() < MAX_ERROR_SAMPLES) {
+                    errors.add("line=" + lineNo + ": " + error);
+                }
+                return;
+            }
+            if (draws.putIfAbsent(draw.getDrawNo(), draw) != null) {
+                duplicates++;
+            }
+        }
+
+        private static SsqDraw parse(List<String> cells) {
+            String drawNo = cells.get(0);
+            if (!DRAW_NO_PATTERN.matcher(drawNo).matches()) {
+                return null;
+            }
+            String date = cells.get(1);
+            LocalDate drawDate = date.isEmpty() ? null : LocalDate.parse(date);
+            List<Integer> reds = new ArrayList<Integer>(6);
+            for (int i = 2; i < 8; i++) {
+                reds.add(Integer.parseInt(cells.get(i)));
+            }
+            Collections.sort(reds);
+            int blue = Integer.parseInt(cells.get(8));
+            return SsqCrawlerService.isValid(reds, blue) ? new SsqDraw(drawNo, drawDate, reds, blue) : null;
+        }
+    }
+
+    /**
+     * 把 SAX 回调的单元格按列号拼成一行；空单元格不会回调，按列号补空串。
+     */
+    private static final class SheetRows implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final Collector collector;
+        private final List<String> cells = new ArrayList<String>(9);
+
+        SheetRows(Collector collector) {
+            this.collector = collector;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!cells.isEmpty()) {
+                collector.accept(rowNum + 1, new ArrayList<String>(cells));
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = columnIndex(cellReference, cells.size());
+            while (cells.size() < col) {
+                cells.add("");
+            }
+            cells.add(formattedValue == null ? "" : formattedValue.trim());
+        }
+
+        private static int columnIndex(String ref, int fallback) {
+            if (ref == null) return fallback;
+            int col = 0;
+            for (int i = 0; i < ref.length() && Character.isLetter(ref.charAt(i)); i++) {
+                col = col * 26 + (Character.toUpperCase(ref.charAt(i)) - 'A' + 1);
+            }
+            return col == 0 ? fallback : col - 1;
+        }
+    }
+
+    public static class ImportResult {
+        private final String format;
+        private final int rows;
+        private final int valid;
+        private final int duplicates;
+        private final int invalid;
+        private final int inserted;
+        private final List<String> errors;
+        private final long elapsedMs;
+
+        public ImportResult(String format, int rows, int valid, int duplicates, int invalid, int inserted,
+                            List<String> errors, long elapsedMs) {
+            this.format = format;
+            this.rows = rows;
+            this.valid = valid;
+            this.duplicates = duplicates;
+            this.invalid = invalid;
+            this.inserted = inserted;
+            this.errors = errors;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getValid() {
+            return valid;
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public int getInvalid() {
+            return invalid;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public Map<String, Object> asMap() {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("format", format);
+            m.put("rows", rows);
+            m.put("valid", valid);
+            m.put("duplicates", duplicates);
+            m.put("invalid", invalid);
+            m.put("inserted", inserted);
+            m.put("existing", valid - inserted);
+            m.put("errors", errors);
+            m.put("elapsedMs", elapsedMs);
+            return m;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.bicolorsphere.service;
 
 import com.example.bicolorsphere.domain.SsqDraw;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
@@ -15,7 +17,22 @@ import java.util.List;
 @Service
 public class SsqExcelExportService {
 
+    private final MeterRegistry meterRegistry;
+
+    public SsqExcelExportService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     public byte[] exportDraws(List<SsqDraw> draws) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        byte[] bytes = writeXlsx(draws);
+        sample.stop(meterRegistry.timer("ssq.export"));
+        meterRegistry.summary("ssq.export.rows").record(draws.size());
+        meterRegistry.summary("ssq.export.bytes").record(bytes.length);
+        return bytes;
+    }
+
+    private byte[] writeXlsx(List<SsqDraw> draws) throws IOException {
         try (Workbook wb = new XSSFWorkbook(); ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
             Sheet sheet = wb.createSheet("ssq_draws");
 
@@ -0,0 +1,106 @@
+package com.example.bicolorsphere.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Apache HttpClient 的抓取实现：整个进程共用一个连接池，多页同步复用同一条 keep-alive 连接，不再每页重新建 TCP；
+ * 请求自动带 Accept-Encoding: gzip,deflate 并透明解压，解压后的流直接交给解析器。
+ */
+@Component
+public class SsqHttpPageFetcher implements SsqPageFetcher {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+
+    public SsqHttpPageFetcher(MeterRegistry meterRegistry,
+                              @Value("${app.ssq.crawler.connectTimeoutMs:5000}") int connectTimeoutMs,
+                              @Value("${app.ssq.crawler.readTimeoutMs:15000}") int readTimeoutMs,
+                              @Value("${app.ssq.crawler.maxConnections:4}") int maxConnections,
+                              @Value("${app.ssq.crawler.bufferSize:16384}") int bufferSize,
+                              @Value("${app.ssq.crawler.idleTimeoutSeconds:30}") int idleTimeoutSeconds,
+                              @Value("${app.ssq.crawler.userAgent:Mozilla/5.0}") String userAgent) {
+        int conns = Math.max(1, maxConnections);
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(conns);
+        connectionManager.setDefaultMaxPerRoute(conns);
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setBufferSize(Math.max(1024, bufferSize))
+                .build());
+        // 服务端悄悄关掉的空闲连接在复用前先校验，避免同步第一页就拿到一条死连接
+        connectionManager.setValidateAfterInactivity(2_000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Math.max(1, connectTimeoutMs))
+                .setSocketTimeout(Math.max(1, readTimeoutMs))
+                .setConnectionRequestTimeout(Math.max(1, connectTimeoutMs))
+                .build();
+        this.client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setUserAgent(userAgent)
+                .evictIdleConnections(Math.max(1, idleTimeoutSeconds), TimeUnit.SECONDS)
+                .evictExpiredConnections()
+                .build();
+
+        meterRegistry.gauge("ssq.crawl.pool.leased", connectionManager, m -> m.getTotalStats().getLeased());
+        meterRegistry.gauge("ssq.crawl.pool.available", connectionManager, m -> m.getTotalStats().getAvailable());
+    }
+
+    @Override
+    public <T> T fetch(String url, BodyParser<T> parser) throws IOException {
+        HttpGet get = new HttpGet(url);
+        get.setHeader(HttpHeaders.ACCEPT, "text/html,application/xhtml+xml;q=0.9,*/*;q=0.8");
+        try (CloseableHttpResponse response = client.execute(get)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status < 200 || status >= 300) {
+                throw new SsqHttpStatusException(status, retryAfterMs(response.getFirstHeader(HttpHeaders.RETRY_AFTER)), url);
+            }
+            if (entity == null) {
+                throw new IOException("empty response: " + url);
+            }
+            ContentType type = ContentType.get(entity);
+            Charset charset = type == null ? null : type.getCharset();
+            // 读完并关闭流后连接才会回到池里；解析器中途抛异常时 response.close() 会丢弃这条连接
+            try (InputStream body = entity.getContent()) {
+                return parser.parse(body, charset == null ? null : charset.name(), url);
+            }
+        }
+    }
+
+    /**
+     * 只认秒数形式的 Retry-After，HTTP 日期形式按没给处理。
+     */
+    private static long retryAfterMs(Header header) {
+        if (header == null) return 0;
+        try {
+            return Math.max(0, Long.parseLong(header.getValue().trim())) * 1000L;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        client.close();
+    }
+}
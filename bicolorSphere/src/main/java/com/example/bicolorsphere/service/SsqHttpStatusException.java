@@ -0,0 +1,35 @@
+package com.example.bicolorsphere.service;
+
+import java.io.IOException;
+
+/**
+ * 数据源返回了非 2xx 状态码；5xx / 408 / 429 视为可重试，服务端给了 Retry-After 时一并带出。
+ */
+public class SsqHttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+    private final long retryAfterMs;
+
+    public SsqHttpStatusException(int status, long retryAfterMs, String url) {
+        super("HTTP " + status + ": " + url);
+        this.status = status;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * 服务端要求的等待毫秒数，没有给出时为 0。
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    public boolean isRetryable() {
+        return status >= 500 || status == 408 || status == 429;
+    }
+}
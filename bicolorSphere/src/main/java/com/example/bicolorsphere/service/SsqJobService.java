@@ -0,0 +1,282 @@
+package com.example.bicolorsphere.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 后台任务：同步、回测、推荐等耗时操作提交到有界线程池执行，接口立即返回任务 id，前端轮询进度与结果。
+ * 相同任务（同 key）执行中时直接复用；所有同步类任务共用一个 key，避免同时抓取相同页面。
+ */
+@Service
+public class SsqJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(SsqJobService.class);
+
+    public static final String TYPE_SYNC = "sync";
+    public static final String TYPE_SYNC_MISSING = "sync_missing";
+    public static final String TYPE_BACKTEST = "backtest";
+    public static final String TYPE_RECOMMEND = "recommend";
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private final SsqSyncService syncService;
+    private final SsqStatsService statsService;
+    private final SsqBacktestStoreService backtestStore;
+    private final SsqPredictionService predictionService;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor executor;
+    private final long retentionMillis;
+    private final int maxRetained;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<String, Job>();
+    private final Map<String, Job> inFlight = new HashMap<String, Job>();
+
+    public SsqJobService(SsqSyncService syncService,
+                         SsqStatsService statsService,
+                         SsqBacktestStoreService backtestStore,
+                         SsqPredictionService predictionService,
+                         MeterRegistry meterRegistry,
+                         @Value("${app.ssq.jobs.threads:2}") int threads,
+                         @Value("${app.ssq.jobs.queueCapacity:16}") int queueCapacity,
+                         @Value("${app.ssq.jobs.retentionMinutes:30}") int retentionMinutes,
+                         @Value("${app.ssq.jobs.maxRetained:200}") int maxRetained) {
+        this.syncService = syncService;
+        this.statsService = statsService;
+        this.backtestStore = backtestStore;
+        this.predictionService = predictionService;
+        this.meterRegistry = meterRegistry;
+        this.retentionMillis = Math.max(1, retentionMinutes) * 60_000L;
+        this.maxRetained = Math.max(10, maxRetained);
+
+        int n = Math.max(1, threads);
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(n, n, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "ssq-job-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        meterRegistry.gauge("ssq.jobs.queued", executor, e -> e.getQueue().size());
+        meterRegistry.gauge("ssq.jobs.active", executor, e -> e.getActiveCount());
+    }
+
+    public Submission submitSync(int fromPage, int toPage) {
+        int start = Math.max(1, fromPage);
+        int end = Math.max(start, toPage);
+        return submit(TYPE_SYNC, "sync", map("fromPage", start, "toPage", end), job -> {
+            Map<String, Object> m = syncService.syncPages(start, end, job::syncProgress).asMap();
+            m.put("reconcile", predictionService.reconcileUnresolved(5000));
+            return m;
+        });
+    }
+
+    public Submission submitSyncMissing(int maxPages, int stopAfterNoInsertPages) {
+        return submit(TYPE_SYNC_MISSING, "sync", map("maxPages", maxPages, "stopAfterNoInsertPages", stopAfterNoInsertPages), job -> {
+            Map<String, Object> m = syncService.syncMissing(maxPages, stopAfterNoInsertPages, job::syncProgress).asMap();
+            m.put("reconcile", predictionService.reconcileUnresolved(5000));
+            return m;
+        });
+    }
+
+    public Submission submitBacktest(String strategy, int trainWindow, int testCount, SsqStatsService.PredictOptions options, Long seed) {
+        long sd = SsqRandom.seedOrDefault(seed);
+        Map<String, Object> params = map("strategy", strategy, "trainWindow", trainWindow, "testCount", testCount,
+                "options", options == null ? null : new TreeMap<String, Object>(options.asMap()), "seed", sd);
+        return submit(TYPE_BACKTEST, TYPE_BACKTEST + ":" + params, params,
+                job -> statsService.backtest(strategy, trainWindow, testCount, options, sd));
+    }
+
+    public Submission submitRecommend(int trainWindow, int testCount, Long seed) {
+        long sd = SsqRandom.seedOrDefault(seed);
+        Map<String, Object> params = map("trainWindow", trainWindow, "testCount", testCount, "seed", sd);
+        return submit(TYPE_RECOMMEND, TYPE_RECOMMEND + ":" + params, params,
+                job -> backtestStore.recommend(trainWindow, testCount, sd));
+    }
+
+    /**
+     * 流式接口（SSE）的计算也放进同一有界线程池，与后台任务共享并发上限；池满时抛出 RejectedExecutionException。
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public Job get(String id) {
+        return id == null ? null : jobs.get(id);
+    }
+
+    private Submission submit(String type, String key, Map<String, Object> params, Task task) {
+        evictExpired();
+        Job job;
+        synchronized (inFlight) {
+            Job running = inFlight.get(key);
+            if (running != null) {
+                meterRegistry.counter("ssq.jobs.submitted", "type", type, "outcome", "deduplicated").increment();
+                return new Submission(running, true);
+            }
+            job = new Job(UUID.randomUUID().toString().replace("-", ""), type, key, params);
+            try {
+                executor.execute(() -> run(job, task));
+            } catch (RejectedExecutionException e) {
+                meterRegistry.counter("ssq.jobs.submitted", "type", type, "outcome", "rejected").increment();
+                job.fail("任务队列已满，请稍后再试");
+                return new Submission(job, false);
+            }
+            inFlight.put(key, job);
+            jobs.put(job.getId(), job);
+        }
+        meterRegistry.counter("ssq.jobs.submitted", "type", type, "outcome", "accepted").increment();
+        return new Submission(job, false);
+    }
+
+    private void run(Job job, Task task) {
+        job.start();
+        try {
+            job.succeed(task.run(job));
+        } catch (Exception e) {
+            log.warn("job {} ({}) failed", job.getId(), job.getType(), e);
+            job.fail(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        } finally {
+            synchronized (inFlight) {
+                inFlight.remove(job.key, job);
+            }
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(j -> j.isDone() && now - j.finishedAt > retentionMillis);
+        if (jobs.size() > maxRetained) {
+            List<Job> done = new ArrayList<Job>();
+            for (Job j : jobs.values()) {
+                if (j.isDone()) done.add(j);
+            }
+            done.sort(Comparator.comparingLong(j -> j.finishedAt));
+            for (int i = 0; i < done.size() && jobs.size() > maxRetained; i++) {
+                jobs.remove(done.get(i).getId());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private interface Task {
+        Object run(Job job) throws Exception;
+    }
+
+    public static class Submission {
+        private final Job job;
+        private final boolean deduplicated;
+
+        Submission(Job job, boolean deduplicated) {
+            this.job = job;
+            this.deduplicated = deduplicated;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        /**
+         * 相同任务已在排队/执行，返回的是已有任务
+         */
+        public boolean isDeduplicated() {
+            return deduplicated;
+        }
+    }
+
+    public static class Job {
+        private final String id;
+        private final String type;
+        private final String key;
+        private final Map<String, Object> params;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long startedAt;
+        private volatile long finishedAt;
+        private volatile String status = STATUS_QUEUED;
+        private volatile Map<String, Object> progress;
+        private volatile Object result;
+        private volatile String error;
+
+        Job(String id, String type, String key, Map<String, Object> params) {
+            this.id = id;
+            this.type = type;
+            this.key = key;
+            this.params = params;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public boolean isDone() {
+            return STATUS_SUCCEEDED.equals(status) || STATUS_FAILED.equals(status);
+        }
+
+        void syncProgress(int page, int pagesDone, int pagesTotal, int fetched, int inserted, int errors) {
+            progress = map("page", page, "pagesDone", pagesDone, "pagesTotal", pagesTotal,
+                    "fetched", fetched, "inserted", inserted, "errors", errors);
+        }
+
+        void start() {
+            startedAt = System.currentTimeMillis();
+            status = STATUS_RUNNING;
+        }
+
+        void succeed(Object r) {
+            result = r;
+            finishedAt = System.currentTimeMillis();
+            status = STATUS_SUCCEEDED;
+        }
+
+        void fail(String message) {
+            error = message;
+            finishedAt = System.currentTimeMillis();
+            status = STATUS_FAILED;
+        }
+
+        /**
+         * @param withResult 轮询中只关心进度时可不带结果，结束后再取
+         */
+        public Map<String, Object> asMap(boolean withResult) {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("id", id);
+            m.put("type", type);
+            m.put("status", status);
+            m.put("params", params);
+            m.put("createdAt", createdAt);
+            m.put("startedAt", startedAt == 0 ? null : startedAt);
+            m.put("finishedAt", finishedAt == 0 ? null : finishedAt);
+            m.put("progress", progress);
+            if (withResult) {
+                m.put("result", result);
+            }
+            m.put("error", error);
+            return m;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.bicolorsphere.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 接口返回用的小工具：按键值对顺序拼一个有序 Map。
+ */
+final class SsqMaps {
+
+    private SsqMaps() {
+    }
+
+    /**
+     * map("a", 1, "b", 2)；奇数个参数时忽略最后一个。
+     */
+    static Map<String, Object> map(Object... kv) {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        for (int i = 0; i + 1 < kv.length; i += 2) {
+            m.put(String.valueOf(kv[i]), kv[i + 1]);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.bicolorsphere.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 抓取一个开奖列表页：响应体以流的形式直接交给 parser，不先整页读成字符串。
+ * 默认实现见 {@link SsqHttpPageFetcher}（连接池 + keep-alive + gzip/deflate）。
+ */
+public interface SsqPageFetcher {
+
+    <T> T fetch(String url, BodyParser<T> parser) throws IOException;
+
+    interface BodyParser<T> {
+        /**
+         * @param body    已解压的响应体，由调用方负责关闭
+         * @param charset 响应头声明的字符集，没有声明时为 null（交给解析器按 meta 自行识别）
+         */
+        T parse(InputStream body, String charset, String url) throws IOException;
+    }
+}
@@ -0,0 +1,505 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 覆盖优化的投注组合（旋转矩阵）：在号码池内挑出至多 N 注红球组合，使“池内开出 ifDrawn 个红球时，至少有一注命中 match 个”
+ * 对尽可能多的开奖情形成立。
+ * <p>
+ * 号码池默认由策略模型重复采样的红球出现频次取前 poolSize 个；池内号码映射到 int 位图的低位，
+ * 目标为池内全部 ifDrawn 元子集，某注覆盖某目标 ⇔ popcount(注 &amp; 目标) ≥ match。
+ * 搜索为随机化贪心集合覆盖：每步随机取一个未覆盖目标，只在能覆盖它的候选注里挑新增覆盖最多的一注；
+ * 预算用满仍未全覆盖时，在剩余时间里逐注替换做局部搜索。多个线程各用 seed 派生的子流独立搜索，取覆盖最多、注数最少的结果。
+ * 时间预算内的迭代次数与机器快慢有关，所以同一 seed 的结果不保证逐注一致。
+ */
+@Service
+public class SsqPortfolioService {
+
+    static final int MAX_POOL = 20;
+    static final int MAX_TICKETS = 500;
+    /**
+     * 建号码池时从模型采样的注数。
+     */
+    static final int POOL_SAMPLES = 2000;
+    /**
+     * 贪心/局部搜索每步评估的候选注数。
+     */
+    static final int CANDIDATES = 96;
+
+    private final SsqStatsService statsService;
+    private final SsqDrawHistory history;
+    private final MeterRegistry meterRegistry;
+    private final long maxTimeBudgetMs;
+
+    public SsqPortfolioService(SsqStatsService statsService,
+                               SsqDrawHistory history,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.ssq.portfolio.maxTimeBudgetMs:10000}") long maxTimeBudgetMs) {
+        this.statsService = statsService;
+        this.history = history;
+        this.meterRegistry = meterRegistry;
+        this.maxTimeBudgetMs = Math.max(100, maxTimeBudgetMs);
+    }
+
+    /**
+     * @param pool     显式号码池，为空时按策略采样频次取前 poolSize 个红球
+     * @param match    保证命中的红球数
+     * @param ifDrawn  前提：开奖 6 红中至少有 ifDrawn 个落在号码池内
+     */
+    public Map<String, Object> portfolio(String strategy, int latestN, SsqStatsService.PredictOptions options,
+                                         int tickets, Set<Integer> pool, int poolSize, int match, int ifDrawn,
+                                         long timeBudgetMs, Long seed) {
+        String s = strategy == null || strategy.trim().isEmpty() ? "frequency_top" : strategy.trim();
+        SsqStatsService.PredictOptions opt = options == null ? new SsqStatsService.PredictOptions() : options;
+        int n = Math.max(20, Math.min(2000, latestN));
+        int budget = Math.max(1, Math.min(MAX_TICKETS, tickets));
+        long timeMs = Math.max(10, Math.min(maxTimeBudgetMs, timeBudgetMs));
+        long sd = SsqRandom.seedOrDefault(seed);
+        SsqRandom root = SsqRandom.of(sd);
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long t0 = System.currentTimeMillis();
+        try {
+            List<SsqDraw> draws = history.latest(n);
+            if (draws.isEmpty()) {
+                return map("strategy", s, "latestN", n, "seed", sd, "error", "数据量不足，先同步更多历史数据");
+            }
+
+            // 号码池与蓝球：模型重复采样，按出现频次排序，同频按窗口内出现次数
+            SsqStatsService.PickModel model = statsService.buildPickModel(draws, s, opt);
+            int[] redFreq = new int[34];
+            int[] blueFreq = new int[17];
+            SsqRandom sampleRoot = root.derive(0);
+            for (int i = 0; i < POOL_SAMPLES; i++) {
+                SsqStatsService.Pick p = model.sample(sampleRoot.derive(i));
+                if (p == null) {
+                    return map("strategy", s, "latestN", n, "seed", sd, "options", opt.asMap(),
+                            "error", "无法在 maxTry 次尝试内生成满足约束条件的号码，请适当放宽约束或提高 maxTry。");
+                }
+                for (int r : p.getReds()) redFreq[r]++;
+                blueFreq[p.getBlue()]++;
+            }
+            int[] redCnt = new int[34];
+            int[] blueCnt = new int[17];
+            for (SsqDraw d : draws) {
+                for (int r : d.getReds()) {
+                    if (r >= 1 && r <= 33) redCnt[r]++;
+                }
+                if (d.getBlue() >= 1 && d.getBlue() <= 16) blueCnt[d.getBlue()]++;
+            }
+
+            int[] reds;
+            if (pool != null && !pool.isEmpty()) {
+                reds = pool.stream().mapToInt(Integer::intValue).filter(v -> v >= 1 && v <= 33).sorted().distinct()
+                        .limit(MAX_POOL).toArray();
+            } else {
+                Set<Integer> kill = opt.getKillReds() == null ? Collections.<Integer>emptySet() : opt.getKillReds();
+                reds = rank(redFreq, redCnt, 1, 33, kill).stream().limit(Math.max(6, Math.min(MAX_POOL, poolSize)))
+                        .mapToInt(Integer::intValue).sorted().toArray();
+            }
+            if (reds.length < 6) {
+                return map("strategy", s, "latestN", n, "seed", sd, "pool", toList(reds),
+                        "error", "号码池至少需要 6 个红球");
+            }
+            Set<Integer> killBlues = opt.getKillBlues() == null ? Collections.<Integer>emptySet() : opt.getKillBlues();
+            List<Integer> blues = rank(blueFreq, blueCnt, 1, 16, killBlues);
+            if (opt.getDanBlues() != null && !opt.getDanBlues().isEmpty()) {
+                blues.retainAll(opt.getDanBlues());
+            }
+            if (blues.isEmpty()) {
+                return map("strategy", s, "latestN", n, "seed", sd, "error", "蓝球胆杀条件下没有可用蓝球");
+            }
+
+            int v = reds.length;
+            int t = Math.max(2, Math.min(6, match));
+            int m = Math.max(t, Math.min(Math.min(6, v), ifDrawn));
+            Cover cover = new Cover(reds, t, combinations(v, m), allowed(reds, blues.get(0), opt), danBits(reds, opt));
+            if (cover.candidates.length == 0) {
+                return map("strategy", s, "latestN", n, "seed", sd, "pool", toList(reds), "options", opt.asMap(),
+                        "error", "约束条件下号码池内没有任何合法的 6 红组合，请放宽约束或调整号码池");
+            }
+
+            long deadline = System.nanoTime() + timeMs * 1_000_000L;
+            int workers = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+            SsqRandom searchRoot = root.derive(1);
+            Result best = IntStream.range(0, workers).parallel()
+                    .mapToObj(w -> cover.search(budget, searchRoot.derive(w), deadline))
+                    .reduce(null, SsqPortfolioService::better);
+
+            List<Map<String, Object>> out = new ArrayList<Map<String, Object>>(best.tickets.length);
+            for (int i = 0; i < best.tickets.length; i++) {
+                out.add(map("red", cover.toReds(best.tickets[i]), "blue", blues.get(i % blues.size())));
+            }
+            int[] dist = cover.bestMatchDist(best.tickets, m);
+            List<Map<String, Object>> guarantees = new ArrayList<Map<String, Object>>();
+            for (int d = 1; d <= Math.min(6, v); d++) {
+                int[] h = d == m ? dist : cover.bestMatchDist(best.tickets, d);
+                guarantees.add(map("ifDrawn", d, "guaranteedMatch", worstCase(h)));
+            }
+            meterRegistry.summary("ssq.portfolio.tickets").record(best.tickets.length);
+
+            return map(
+                    "strategy", s,
+                    "latestN", n,
+                    "seed", sd,
+                    "options", opt.asMap(),
+                    "pool", toList(reds),
+                    "blues", blues.size() > best.tickets.length ? blues.subList(0, best.tickets.length) : blues,
+                    "ticketBudget", budget,
+                    "ticketsUsed", best.tickets.length,
+                    "target", map(
+                            "match", t,
+                            "ifDrawn", m,
+                            "cases", cover.targets.length,
+                            "covered", best.covered,
+                            "coverage", (double) best.covered / cover.targets.length,
+                            "guaranteed", best.covered == cover.targets.length,
+                            "bestMatchDist", histogram(dist)
+                    ),
+                    "guarantees", guarantees,
+                    "tickets", out,
+                    "search", map(
+                            "workers", workers,
+                            "candidates", cover.candidates.length,
+                            "iterations", best.iterations,
+                            "timeBudgetMs", timeMs,
+                            "timedOut", best.timedOut
+                    ),
+                    "elapsedMs", System.currentTimeMillis() - t0,
+                    "disclaimer", "覆盖保证只针对“开奖号码落在号码池内”的前提，不改变任何一注的中奖概率；结果仅供娱乐。"
+            );
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.portfolio", "strategy", SsqStatsService.metricTag(s)));
+        }
+    }
+
+    /**
+     * 池内全部 6 元子集（位图）中满足 PredictOptions 约束的部分。
+     */
+    private static int[] allowed(int[] reds, int blue, SsqStatsService.PredictOptions opt) {
+        int[] all = combinations(reds.length, 6);
+        int k = 0;
+        for (int c : all) {
+            if (SsqStatsService.accept(new SsqStatsService.Pick(toReds(reds, c), blue), opt)) {
+                all[k++] = c;
+            }
+        }
+        return Arrays.copyOf(all, k);
+    }
+
+    private static int danBits(int[] reds, SsqStatsService.PredictOptions opt) {
+        int bits = 0;
+        if (opt.getDanReds() != null) {
+            for (int i = 0; i < reds.length; i++) {
+                if (opt.getDanReds().contains(reds[i])) bits |= 1 << i;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * v 个位里取 k 个的全部位图，按数值升序（Gosper's hack）。
+     */
+    static int[] combinations(int v, int k) {
+        int[] out = new int[(int) SsqCombinatorics.binomial(v, k)];
+        int c = (1 << k) - 1;
+        for (int i = 0; i < out.length; i++) {
+            out[i] = c;
+            int u = c & -c;
+            int r = c + u;
+            c = (((r ^ c) >>> 2) / u) | r;
+        }
+        return out;
+    }
+
+    static final class Result {
+        final int[] tickets;
+        final int covered;
+        final long iterations;
+        final boolean timedOut;
+
+        Result(int[] tickets, int covered, long iterations, boolean timedOut) {
+            this.tickets = tickets;
+            this.covered = covered;
+            this.iterations = iterations;
+            this.timedOut = timedOut;
+        }
+    }
+
+    private static Result better(Result a, Result b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.covered != b.covered) return a.covered > b.covered ? a : b;
+        return b.tickets.length < a.tickets.length ? b : a;
+    }
+
+    /**
+     * 一次覆盖问题：号码池、目标（池内 ifDrawn 元子集）与合法候选注，均为池内位图，只读可跨线程共享。
+     */
+    static final class Cover {
+        final int[] reds;
+        final int match;
+        final int[] targets;
+        final int[] candidates;
+        private final boolean[] legal;
+        private final int dan;
+
+        Cover(int[] reds, int match, int[] targets, int[] candidates, int dan) {
+            this.reds = reds;
+            this.match = match;
+            this.targets = targets;
+            this.candidates = candidates;
+            this.legal = new boolean[1 << reds.length];
+            for (int c : candidates) {
+                legal[c] = true;
+            }
+            this.dan = dan;
+        }
+
+        /**
+         * 单线程搜索：随机化贪心到预算用满或全覆盖；预算用满仍未全覆盖时在截止时间前逐注替换（{@link #repair}）。
+         * 全覆盖后删掉冗余注，剩余时间里反复“去掉一注再修复”，修复成功即得到更少注数的全覆盖。
+         */
+        Result search(int budget, Random rnd, long deadline) {
+            int[] hits = new int[targets.length];
+            int[] chosen = new int[budget];
+            int used = 0;
+            int covered = 0;
+            long[] iterations = new long[1];
+
+            while (used < budget && covered < targets.length) {
+                if (System.nanoTime() > deadline) {
+                    return new Result(Arrays.copyOf(chosen, used), covered, iterations[0], true);
+                }
+                iterations[0]++;
+                int best = pick(uncovered(hits, rnd), hits, rnd, -1);
+                if (best < 0 || gain(best, hits) == 0) break;
+                chosen[used++] = best;
+                covered += add(best, hits, 1);
+            }
+            if (covered < targets.length) {
+                if (used < budget || used == 0) {
+                    return new Result(Arrays.copyOf(chosen, used), covered, iterations[0], false);
+                }
+                covered = repair(chosen, used, hits, covered, rnd, deadline, iterations);
+                if (covered < targets.length) {
+                    return new Result(chosen, covered, iterations[0], true);
+                }
+            }
+
+            used = prune(chosen, used, hits);
+            int[] best = Arrays.copyOf(chosen, used);
+            while (used > 1 && System.nanoTime() <= deadline) {
+                int i = rnd.nextInt(used);
+                int dropped = chosen[i];
+                chosen[i] = chosen[--used];
+                covered -= add(dropped, hits, -1);
+                covered = repair(chosen, used, hits, covered, rnd, deadline, iterations);
+                if (covered < targets.length) {
+                    break;
+                }
+                used = prune(chosen, used, hits);
+                best = Arrays.copyOf(chosen, used);
+            }
+            return new Result(best, targets.length, iterations[0], false);
+        }
+
+        /**
+         * 局部搜索：随机换掉一注，替换为覆盖某个未覆盖目标且新增覆盖最多的候选，直到全覆盖或到截止时间；返回覆盖数。
+         */
+        private int repair(int[] chosen, int used, int[] hits, int covered, Random rnd, long deadline, long[] iterations) {
+            while (covered < targets.length) {
+                if ((iterations[0] & 15) == 0 && System.nanoTime() > deadline) {
+                    break;
+                }
+                iterations[0]++;
+                int i = rnd.nextInt(used);
+                int old = chosen[i];
+                covered -= add(old, hits, -1);
+                int best = pick(uncovered(hits, rnd), hits, rnd, old);
+                chosen[i] = best;
+                covered += add(best, hits, 1);
+            }
+            return covered;
+        }
+
+        /**
+         * 删掉所覆盖目标都已被别的注覆盖的冗余注，返回剩余注数。
+         */
+        private int prune(int[] chosen, int used, int[] hits) {
+            for (int i = used - 1; i >= 0; i--) {
+                if (redundant(chosen[i], hits)) {
+                    add(chosen[i], hits, -1);
+                    chosen[i] = chosen[--used];
+                }
+            }
+            return used;
+        }
+
+        /**
+         * 在能覆盖 target 的随机候选里取新增覆盖最多的一注；keep 非负时作为初始候选（同分时优先换掉它）。
+         */
+        private int pick(int target, int[] hits, Random rnd, int keep) {
+            int best = keep;
+            int bestGain = keep < 0 ? -1 : gain(keep, hits);
+            for (int c = 0; c < CANDIDATES; c++) {
+                int cand = target < 0 ? candidates[rnd.nextInt(candidates.length)] : around(targets[target], rnd);
+                if (cand < 0) continue;
+                int g = gain(cand, hits);
+                if (g > bestGain || (g == bestGain && best == keep)) {
+                    best = cand;
+                    bestGain = g;
+                }
+            }
+            if (best < 0) {
+                // 该目标在约束下很难覆盖：退回到合法候选里随机挑
+                for (int c = 0; c < CANDIDATES; c++) {
+                    int cand = candidates[rnd.nextInt(candidates.length)];
+                    int g = gain(cand, hits);
+                    if (g > bestGain) {
+                        best = cand;
+                        bestGain = g;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * 覆盖该目标的随机一注：从目标里取 match 个，加上胆码，再从池内其余号码补足 6 个；不合法时返回 -1。
+         */
+        private int around(int target, Random rnd) {
+            int c = randomBits(target, match, rnd) | dan;
+            int need = 6 - Integer.bitCount(c);
+            if (need < 0) return -1;
+            c |= randomBits(((1 << reds.length) - 1) & ~c, need, rnd);
+            return legal[c] ? c : -1;
+        }
+
+        private int uncovered(int[] hits, Random rnd) {
+            int n = targets.length;
+            int start = rnd.nextInt(n);
+            for (int k = 0; k < n; k++) {
+                int j = start + k < n ? start + k : start + k - n;
+                if (hits[j] == 0) return j;
+            }
+            return -1;
+        }
+
+        private int gain(int ticket, int[] hits) {
+            int g = 0;
+            for (int j = 0; j < targets.length; j++) {
+                if (hits[j] == 0 && Integer.bitCount(targets[j] & ticket) >= match) g++;
+            }
+            return g;
+        }
+
+        /**
+         * 把 ticket 加入（sign=1）或移出（sign=-1），返回覆盖状态变化的目标数。
+         */
+        private int add(int ticket, int[] hits, int sign) {
+            int changed = 0;
+            for (int j = 0; j < targets.length; j++) {
+                if (Integer.bitCount(targets[j] & ticket) >= match) {
+                    if (sign > 0 ? hits[j]++ == 0 : --hits[j] == 0) changed++;
+                }
+            }
+            return changed;
+        }
+
+        private boolean redundant(int ticket, int[] hits) {
+            for (int j = 0; j < targets.length; j++) {
+                if (hits[j] < 2 && Integer.bitCount(targets[j] & ticket) >= match) return false;
+            }
+            return true;
+        }
+
+        /**
+         * 池内开出 drawn 个红球的全部情形下，最好一注命中红球数的分布（下标为命中数）。
+         */
+        int[] bestMatchDist(int[] tickets, int drawn) {
+            int[] dist = new int[7];
+            for (int target : combinations(reds.length, drawn)) {
+                int best = 0;
+                for (int ticket : tickets) {
+                    best = Math.max(best, Integer.bitCount(target & ticket));
+                }
+                dist[best]++;
+            }
+            return dist;
+        }
+
+        List<Integer> toReds(int ticket) {
+            return SsqPortfolioService.toReds(reds, ticket);
+        }
+    }
+
+    private static int randomBits(int mask, int k, Random rnd) {
+        int[] bits = new int[Integer.bitCount(mask)];
+        int n = 0;
+        for (int m = mask; m != 0; m &= m - 1) {
+            bits[n++] = Integer.numberOfTrailingZeros(m);
+        }
+        int out = 0;
+        for (int i = 0; i < k && i < n; i++) {
+            int j = i + rnd.nextInt(n - i);
+            int b = bits[j];
+            bits[j] = bits[i];
+            out |= 1 << b;
+        }
+        return out;
+    }
+
+    private static List<Integer> toReds(int[] reds, int ticket) {
+        List<Integer> out = new ArrayList<Integer>(6);
+        for (int m = ticket; m != 0; m &= m - 1) {
+            out.add(reds[Integer.numberOfTrailingZeros(m)]);
+        }
+        return out;
+    }
+
+    /**
+     * 号码按采样频次降序、窗口内出现次数降序、号码升序排列，排除 exclude。
+     */
+    private static List<Integer> rank(int[] freq, int[] cnt, int from, int to, Set<Integer> exclude) {
+        List<Integer> nums = new ArrayList<Integer>();
+        for (int v = from; v <= to; v++) {
+            if (!exclude.contains(v)) nums.add(v);
+        }
+        nums.sort((x, y) -> freq[x] != freq[y] ? Integer.compare(freq[y], freq[x])
+                : cnt[x] != cnt[y] ? Integer.compare(cnt[y], cnt[x]) : Integer.compare(x, y));
+        return nums;
+    }
+
+    /**
+     * 分布里最小的命中数，即全部情形下都能保证的命中数。
+     */
+    private static int worstCase(int[] dist) {
+        for (int i = 0; i < dist.length; i++) {
+            if (dist[i] > 0) return i;
+        }
+        return 0;
+    }
+
+    private static Map<String, Object> histogram(int[] dist) {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < dist.length; i++) {
+            if (dist[i] > 0) m.put(String.valueOf(i), dist[i]);
+        }
+        return m;
+    }
+
+    private static List<Integer> toList(int[] a) {
+        return Arrays.stream(a).boxed().collect(Collectors.toList());
+    }
+}
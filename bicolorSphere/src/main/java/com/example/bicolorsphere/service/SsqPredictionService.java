@@ -3,6 +3,8 @@ package com.example.bicolorsphere.service;
 import com.example.bicolorsphere.domain.SsqDraw;
 import com.example.bicolorsphere.repo.SsqDrawRepository;
 import com.example.bicolorsphere.repo.SsqPredictionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -17,21 +19,49 @@ public class SsqPredictionService {
 
     private final SsqPredictionRepository predictionRepository;
     private final SsqDrawRepository drawRepository;
+    private final SsqDrawHistory history;
+    private final MeterRegistry meterRegistry;
 
-    public SsqPredictionService(SsqPredictionRepository predictionRepository, SsqDrawRepository drawRepository) {
+    public SsqPredictionService(SsqPredictionRepository predictionRepository, SsqDrawRepository drawRepository,
+                                SsqDrawHistory history, MeterRegistry meterRegistry) {
         this.predictionRepository = predictionRepository;
         this.drawRepository = drawRepository;
+        this.history = history;
+        this.meterRegistry = meterRegistry;
     }
 
     public Map<String, Object> savePrediction(String drawNo, String predictReds, int predictBlue) {
+        return savePrediction(drawNo, predictReds, predictBlue, false);
+    }
+
+    /**
+     * @param checkHistory true 时在返回中附带 history：这注号码是否开过、与历史最接近的期（见 {@link #historyLookup}）
+     */
+    public Map<String, Object> savePrediction(String drawNo, String predictReds, int predictBlue, boolean checkHistory) {
         int inserted = predictionRepository.insertIgnore(drawNo, predictReds, predictBlue);
         Map<String, Object> m = new HashMap<String, Object>();
         m.put("ok", Boolean.TRUE);
         m.put("inserted", inserted);
+        if (checkHistory) {
+            m.put("history", historyLookup(SsqPredictionRepository.parseRedsToSet(predictReds), predictBlue, 5, 10));
+        }
         return m;
     }
 
+    /**
+     * 历史组合查询：完全相同的红球组合 O(1) 命中，另列出与之共享至少 minShared 个红球的历史期。
+     */
+    public Map<String, Object> historyLookup(Set<Integer> reds, int blue, int minShared, int limit) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return history.comboIndex().lookup(reds, blue, Math.max(0, Math.min(6, minShared)), Math.max(0, Math.min(500, limit)));
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.history.lookup"));
+        }
+    }
+
     public Map<String, Object> reconcileUnresolved(int limit) {
+        Timer.Sample sample = Timer.start(meterRegistry);
         List<SsqPredictionRepository.PredictionRow> rows = predictionRepository.listUnresolved(limit);
         int scanned = rows.size();
         int updated = 0;
@@ -75,6 +105,11 @@ public class SsqPredictionService {
             if (u > 0) updated += u;
         }
 
+        sample.stop(meterRegistry.timer("ssq.reconcile"));
+        meterRegistry.summary("ssq.reconcile.rows", "result", "scanned").record(scanned);
+        meterRegistry.summary("ssq.reconcile.rows", "result", "updated").record(updated);
+        meterRegistry.summary("ssq.reconcile.rows", "result", "notFound").record(notFound);
+
         Map<String, Object> m = new HashMap<String, Object>();
         m.put("ok", Boolean.TRUE);
         m.put("scanned", scanned);
@@ -0,0 +1,116 @@
+package com.example.bicolorsphere.service;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 采样用随机数：SplitMix64，可由 seed 完全复现，构造开销只有两个 long。
+ * <p>
+ * 继承 {@link Random} 以便直接传给现有采样方法；derive(stream) 按 (seed, stream) 派生独立子流，
+ * 与调用顺序、线程无关，所以逐期回测无论串行还是并行结果都一致。非线程安全，每个线程/每期各用一个实例。
+ */
+public final class SsqRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 回测/推荐未指定 seed 时使用，保证同一数据上重复执行结果一致。
+     */
+    public static final long DEFAULT_SEED = 20030223L;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private long seed;
+    private long state;
+
+    public SsqRandom(long seed) {
+        super(0L);
+        setSeed(seed);
+    }
+
+    public static SsqRandom of(long seed) {
+        return new SsqRandom(seed);
+    }
+
+    /**
+     * 未指定 seed 时随机取一个（限制在 2^53 内，前端 JSON 数字不丢精度），调用方应把它回显给客户端。
+     */
+    public static long randomSeed() {
+        return ThreadLocalRandom.current().nextLong(1L << 53);
+    }
+
+    public static long seedOrRandom(Long seed) {
+        return seed == null ? randomSeed() : seed;
+    }
+
+    public static long seedOrDefault(Long seed) {
+        return seed == null ? DEFAULT_SEED : seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * 派生第 stream 个子流；同一 (seed, stream) 总是得到同一序列，不消耗本实例的状态。
+     */
+    public SsqRandom derive(long stream) {
+        return new SsqRandom(mix64(seed + mix64((stream + 1) * GOLDEN_GAMMA)));
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        // Random 的构造函数会先调用一次，此时本类字段尚未初始化，这里直接覆盖即可
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    @Override
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        int m = bound - 1;
+        int r = nextInt();
+        if ((bound & m) == 0) {
+            return r & m;
+        }
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1) {
+            // 拒绝采样，去掉取模偏差
+        }
+        return r;
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 相似期检索：在 {@link SsqComboIndex} 的平行数组（红球位图、蓝球、打包形态特征）上逐期打分，取 top-k。
+ * <p>
+ * 相似度 = 红球重合数*10 + 蓝球相同*4 - 形态距离；形态距离 = |和值差|/10 + |跨度差|/5 + |奇数差| + 三区个数差之和/2。
+ * 另统计“相似期的下一期开了什么”，相当于 bayes 策略按 featureBucket 粗分桶统计下一期号码，只是换成逐期相似度。
+ */
+@Service
+public class SsqSimilarityService {
+
+    static final double RED_WEIGHT = 10;
+    static final double BLUE_WEIGHT = 4;
+
+    private final SsqDrawHistory history;
+    private final MeterRegistry meterRegistry;
+
+    public SsqSimilarityService(SsqDrawHistory history, MeterRegistry meterRegistry) {
+        this.history = history;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param drawNo   非空时以该期开奖号码为查询（reds/blue 被忽略），并从结果中排除该期本身
+     * @param blue     0 表示不比较蓝球
+     * @param parallel true 时打分在 ForkJoin 公共池上并行
+     */
+    public Map<String, Object> similar(Set<Integer> reds, int blue, String drawNo, int k, boolean parallel) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return similar(history.comboIndex(), reds, blue, drawNo, Math.max(1, Math.min(500, k)), parallel);
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.similar"));
+        }
+    }
+
+    static Map<String, Object> similar(SsqComboIndex idx, Set<Integer> reds, int blue, String drawNo, int k, boolean parallel) {
+        int self = -1;
+        long mask;
+        int b;
+        if (drawNo != null && !drawNo.trim().isEmpty()) {
+            self = idx.indexOf(drawNo.trim());
+            if (self < 0) {
+                return map("drawNo", drawNo, "error", "期号不存在");
+            }
+            mask = idx.redMask(self);
+            b = idx.blue(self);
+        } else {
+            mask = SsqBitmask.redMask(reds);
+            b = blue;
+            if (reds == null || reds.size() != 6 || Long.bitCount(mask) != 6) {
+                return map("reds", reds, "blue", blue, "error", "需要 6 个不重复的红球（1~33）");
+            }
+        }
+
+        int n = idx.size();
+        int f = SsqBitmask.features(mask);
+        double[] score = new double[n];
+        IntStream range = IntStream.range(0, n);
+        (parallel ? range.parallel() : range).forEach(i -> score[i] = score(idx, i, mask, b, f));
+        int[] top = topK(score, k, self);
+
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(top.length);
+        int[] followRed = new int[34];
+        int[] followBlue = new int[17];
+        int followed = 0;
+        for (int i : top) {
+            SsqDraw d = idx.draw(i);
+            SsqDraw next = i + 1 < n ? idx.draw(i + 1) : null;
+            int fi = idx.features(i);
+            rows.add(map(
+                    "drawNo", d.getDrawNo(),
+                    "drawDate", d.getDrawDate() == null ? null : d.getDrawDate().toString(),
+                    "red", d.getReds(),
+                    "blue", d.getBlue(),
+                    "score", score[i],
+                    "sharedReds", Long.bitCount(idx.redMask(i) & mask),
+                    "blueHit", b != 0 && idx.blue(i) == b,
+                    "distance", distance(f, fi),
+                    "next", next == null ? null : map("drawNo", next.getDrawNo(), "red", next.getReds(), "blue", next.getBlue())
+            ));
+            if (next != null) {
+                followed++;
+                for (long m = idx.redMask(i + 1); m != 0; m &= m - 1) {
+                    followRed[Long.numberOfTrailingZeros(m)]++;
+                }
+                int nb = idx.blue(i + 1);
+                if (nb >= 1 && nb <= 16) followBlue[nb]++;
+            }
+        }
+
+        return map(
+                "query", map("drawNo", self < 0 ? null : idx.draw(self).getDrawNo(),
+                        "red", SsqBitmask.toList(mask), "blue", b == 0 ? null : b,
+                        "sum", SsqBitmask.featureSum(f), "span", SsqBitmask.featureSpan(f), "odd", SsqBitmask.featureOdd(f),
+                        "zoneRatio", "" + SsqBitmask.featureZone(f, 1) + ":" + SsqBitmask.featureZone(f, 2) + ":" + SsqBitmask.featureZone(f, 3)),
+                "k", k,
+                "historySize", n,
+                "similar", rows,
+                "followed", map(
+                        "draws", followed,
+                        "red", followStats(followRed, 1, 33, followed * 6.0 / 33),
+                        "blue", followStats(followBlue, 1, 16, followed / 16.0)
+                ),
+                "disclaimer", "相似期的下一期号码仅为历史统计，不代表未来开奖概率。"
+        );
+    }
+
+    static double score(SsqComboIndex idx, int i, long mask, int blue, int f) {
+        return Long.bitCount(idx.redMask(i) & mask) * RED_WEIGHT
+                + (blue != 0 && idx.blue(i) == blue ? BLUE_WEIGHT : 0)
+                - distance(f, idx.features(i));
+    }
+
+    static double distance(int a, int b) {
+        double d = Math.abs(SsqBitmask.featureSum(a) - SsqBitmask.featureSum(b)) / 10.0
+                + Math.abs(SsqBitmask.featureSpan(a) - SsqBitmask.featureSpan(b)) / 5.0
+                + Math.abs(SsqBitmask.featureOdd(a) - SsqBitmask.featureOdd(b));
+        int z = 0;
+        for (int zone = 1; zone <= 3; zone++) {
+            z += Math.abs(SsqBitmask.featureZone(a, zone) - SsqBitmask.featureZone(b, zone));
+        }
+        return d + z / 2.0;
+    }
+
+    /**
+     * 分数降序、同分新期在前的前 k 个下标；小顶堆 O(n log k)。
+     */
+    static int[] topK(double[] score, int k, int exclude) {
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(k + 1, (x, y) -> {
+            int c = Double.compare(score[x], score[y]);
+            return c != 0 ? c : Integer.compare(x, y);
+        });
+        for (int i = 0; i < score.length; i++) {
+            if (i == exclude) continue;
+            heap.add(i);
+            if (heap.size() > k) heap.poll();
+        }
+        int[] out = new int[heap.size()];
+        for (int j = out.length - 1; j >= 0; j--) {
+            out[j] = heap.poll();
+        }
+        return out;
+    }
+
+    /**
+     * 下一期各号码出现次数，按次数降序；lift = 次数 / 均匀随机下的期望次数。
+     */
+    private static List<Map<String, Object>> followStats(int[] cnt, int from, int to, double expected) {
+        List<Integer> nums = new ArrayList<Integer>();
+        for (int v = from; v <= to; v++) {
+            if (cnt[v] > 0) nums.add(v);
+        }
+        nums.sort((x, y) -> cnt[y] != cnt[x] ? Integer.compare(cnt[y], cnt[x]) : Integer.compare(x, y));
+        List<Map<String, Object>> out = new ArrayList<Map<String, Object>>(nums.size());
+        for (Integer v : nums) {
+            out.add(map("num", v, "count", cnt[v], "lift", expected <= 0 ? null : cnt[v] / expected));
+        }
+        return out;
+    }
+}
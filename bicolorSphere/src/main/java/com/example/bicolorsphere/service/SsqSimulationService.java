@@ -0,0 +1,240 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 蒙特卡洛模拟：用策略（基于真实或合成历史）生成一组票，再对大量均匀随机开奖逐期计分，并与每期随机选号的基线对比。
+ * <p>
+ * 开奖按固定大小分块并行，第 c 块使用 seed 派生的第 c 个子流，结果与线程数无关；
+ * 每期结果只落到 (策略红命中, 策略蓝命中, 基线红命中, 基线蓝命中) 的 14×14 联合计数里，全程位运算、不装箱。
+ */
+@Service
+public class SsqSimulationService {
+
+    static final int CHUNK = 1 << 16;
+    private static final int OUTCOMES = 14;
+
+    private final SsqStatsService statsService;
+    private final SsqDrawHistory history;
+    private final MeterRegistry meterRegistry;
+    private final long maxDraws;
+
+    public SsqSimulationService(SsqStatsService statsService,
+                                SsqDrawHistory history,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.ssq.simulate.maxDraws:20000000}") long maxDraws) {
+        this.statsService = statsService;
+        this.history = history;
+        this.meterRegistry = meterRegistry;
+        this.maxDraws = Math.max(1000, maxDraws);
+    }
+
+    /**
+     * @param syntheticPrefix true 时策略基于 latestN 期合成随机历史出票，否则基于真实最近 latestN 期
+     */
+    public Map<String, Object> simulate(String strategy, int latestN, int tickets, long draws, boolean syntheticPrefix,
+                                        SsqStatsService.PredictOptions options, Long seed) {
+        String s = strategy == null || strategy.trim().isEmpty() ? "frequency_top" : strategy.trim();
+        int n = Math.max(30, Math.min(2000, latestN));
+        int t = Math.max(1, Math.min(1000, tickets));
+        long total = Math.max(1000, Math.min(maxDraws, draws));
+        long sd = SsqRandom.seedOrDefault(seed);
+        SsqRandom root = SsqRandom.of(sd);
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long t0 = System.currentTimeMillis();
+        try {
+            List<SsqDraw> prefix = syntheticPrefix ? syntheticPrefix(n, sd, root.derive(0)) : history.latest(n);
+            if (prefix.size() < 30) {
+                return map("strategy", s, "latestN", n, "seed", sd, "error", "数据量不足，先同步更多历史数据");
+            }
+
+            // 出票：与 predict 相同，第 i 张票用派生的第 i 个子流
+            long[] ticketReds = new long[t];
+            int[] ticketBlues = new int[t];
+            SsqRandom ticketRoot = root.derive(1);
+            SsqStatsService.PickModel model = statsService.buildPickModel(prefix, s, options);
+            for (int i = 0; i < t; i++) {
+                SsqStatsService.Pick p = model.sample(ticketRoot.derive(i));
+                if (p == null) {
+                    return map("strategy", s, "latestN", n, "seed", sd,
+                            "options", options == null ? null : options.asMap(),
+                            "error", "无法在 maxTry 次尝试内生成满足约束条件的号码，请适当放宽约束或提高 maxTry。");
+                }
+                ticketReds[i] = SsqBitmask.redMask(p.getReds());
+                ticketBlues[i] = SsqBitmask.blueBit(p.getBlue());
+            }
+
+            SsqRandom drawRoot = root.derive(2);
+            int chunks = (int) ((total + CHUNK - 1) / CHUNK);
+            long[] joint = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> runChunk(drawRoot.derive(c), (long) c * CHUNK, Math.min(CHUNK, total - (long) c * CHUNK),
+                            ticketReds, ticketBlues))
+                    .reduce(new long[OUTCOMES * OUTCOMES], SsqSimulationService::merge);
+
+            long[] strat = new long[OUTCOMES];
+            long[] base = new long[OUTCOMES];
+            double diffSum = 0;
+            double diffSq = 0;
+            for (int a = 0; a < OUTCOMES; a++) {
+                for (int b = 0; b < OUTCOMES; b++) {
+                    long c = joint[a * OUTCOMES + b];
+                    if (c == 0) continue;
+                    strat[a] += c;
+                    base[b] += c;
+                    double d = outcomeScore(a) - outcomeScore(b);
+                    diffSum += d * c;
+                    diffSq += d * d * c;
+                }
+            }
+            double diffMean = diffSum / total;
+            double diffHalf = halfWidth(diffSq / total - diffMean * diffMean, total);
+
+            List<Integer> firstTicket = SsqBitmask.toList(ticketReds[0]);
+            return map(
+                    "strategy", s,
+                    "latestN", n,
+                    "prefix", syntheticPrefix ? "synthetic" : "history",
+                    "tickets", t,
+                    "draws", total,
+                    "seed", sd,
+                    "options", options == null ? null : options.asMap(),
+                    "sampleTicket", map("red", firstTicket, "blue", Integer.numberOfTrailingZeros(ticketBlues[0])),
+                    "result", summarize(strat, total),
+                    "baseline", summarize(base, total),
+                    "scoreDiff", map(
+                            "mean", diffMean,
+                            "ci95", new double[]{diffMean - diffHalf, diffMean + diffHalf},
+                            "significant", diffMean - diffHalf > 0 || diffMean + diffHalf < 0
+                    ),
+                    "expected", map("avgRedHits", 36.0 / 33, "blueHitRate", 1.0 / 16),
+                    "elapsedMs", System.currentTimeMillis() - t0,
+                    "disclaimer", "模拟开奖为均匀随机，任何选号策略的期望命中都与随机选号相同；结果仅供娱乐。"
+            );
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.simulate", "strategy", SsqStatsService.metricTag(s)));
+            meterRegistry.summary("ssq.simulate.draws").record(total);
+        }
+    }
+
+    /**
+     * 每期：随机开奖 + 轮流用一张策略票 + 一张随机基线票，结果记入联合计数。
+     */
+    static long[] runChunk(Random rnd, long offset, long count, long[] ticketReds, int[] ticketBlues) {
+        long[] joint = new long[OUTCOMES * OUTCOMES];
+        int t = ticketReds.length;
+        int ti = (int) (offset % t);
+        for (long i = 0; i < count; i++) {
+            long drawRed = SsqBitmask.randomReds(rnd);
+            int drawBlue = 1 << (1 + rnd.nextInt(16));
+
+            int a = outcome(Long.bitCount(ticketReds[ti] & drawRed), (ticketBlues[ti] & drawBlue) != 0);
+            long baseRed = SsqBitmask.randomReds(rnd);
+            int baseBlue = 1 << (1 + rnd.nextInt(16));
+            int b = outcome(Long.bitCount(baseRed & drawRed), baseBlue == drawBlue);
+            joint[a * OUTCOMES + b]++;
+
+            if (++ti == t) ti = 0;
+        }
+        return joint;
+    }
+
+    private static long[] merge(long[] x, long[] y) {
+        long[] out = new long[x.length];
+        for (int i = 0; i < x.length; i++) {
+            out[i] = x[i] + y[i];
+        }
+        return out;
+    }
+
+    private static int outcome(int redHits, boolean blueHit) {
+        return redHits * 2 + (blueHit ? 1 : 0);
+    }
+
+    /**
+     * 与回测 score 同一口径：红命中 + 蓝命中*1.2 + (红命中>=2)*0.8。
+     */
+    private static double outcomeScore(int outcome) {
+        int r = outcome >> 1;
+        return r + (outcome & 1) * 1.2 + (r >= 2 ? 0.8 : 0);
+    }
+
+    private static Map<String, Object> summarize(long[] counts, long total) {
+        double red = 0, redSq = 0, blue = 0, red2 = 0, score = 0, scoreSq = 0;
+        long[] redDist = new long[7];
+        long[] prize = new long[7];
+        for (int o = 0; o < OUTCOMES; o++) {
+            long c = counts[o];
+            if (c == 0) continue;
+            int r = o >> 1;
+            boolean b = (o & 1) != 0;
+            double sc = outcomeScore(o);
+            red += (double) r * c;
+            redSq += (double) r * r * c;
+            blue += b ? c : 0;
+            red2 += r >= 2 ? c : 0;
+            score += sc * c;
+            scoreSq += sc * sc * c;
+            redDist[r] += c;
+            prize[SsqBitmask.prizeLevel(r, b)] += c;
+        }
+        double avgRed = red / total;
+        double blueRate = blue / total;
+        double red2Rate = red2 / total;
+        double avgScore = score / total;
+
+        Map<String, Object> dist = new LinkedHashMap<String, Object>();
+        for (int i = 0; i <= 6; i++) {
+            dist.put(String.valueOf(i), redDist[i]);
+        }
+        Map<String, Object> prizes = new LinkedHashMap<String, Object>();
+        for (int i = 1; i <= 6; i++) {
+            prizes.put(String.valueOf(i), prize[i]);
+        }
+        return map(
+                "avgRedHits", avgRed,
+                "avgRedHitsCi95", ci(avgRed, redSq / total - avgRed * avgRed, total),
+                "blueHitRate", blueRate,
+                "blueHitRateCi95", ci(blueRate, blueRate * (1 - blueRate), total),
+                "red2plusRate", red2Rate,
+                "red2plusRateCi95", ci(red2Rate, red2Rate * (1 - red2Rate), total),
+                "score", avgScore,
+                "scoreCi95", ci(avgScore, scoreSq / total - avgScore * avgScore, total),
+                "redHitDist", dist,
+                "prizeCounts", prizes,
+                "winRate", (total - prize[0]) * 1.0 / total
+        );
+    }
+
+    private static double[] ci(double mean, double variance, long n) {
+        double h = halfWidth(variance, n);
+        return new double[]{mean - h, mean + h};
+    }
+
+    /**
+     * 正态近似的 95% 置信区间半宽。
+     */
+    private static double halfWidth(double variance, long n) {
+        return 1.96 * Math.sqrt(Math.max(0, variance) / n);
+    }
+
+    /**
+     * 合成历史（期号倒序，与 history.latest 一致）；期号带 seed 前缀，避免与真实期号共用 ml 权重缓存。
+     */
+    private static List<SsqDraw> syntheticPrefix(int n, long seed, Random rnd) {
+        List<SsqDraw> out = new ArrayList<SsqDraw>(n);
+        for (int i = n; i >= 1; i--) {
+            out.add(new SsqDraw("sim" + seed + "-" + i, null, SsqBitmask.toList(SsqBitmask.randomReds(rnd)), 1 + rnd.nextInt(16)));
+        }
+        return out;
+    }
+}
@@ -1,23 +1,36 @@
 package com.example.bicolorsphere.service;
 
 import com.example.bicolorsphere.domain.SsqDraw;
-import com.example.bicolorsphere.repo.SsqDrawRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 
-import java.security.SecureRandom;
 import java.util.*;
 
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
 @Service
 public class SsqStatsService {
 
-    private final SsqDrawRepository repository;
+    private final SsqDrawHistory history;
+    private final MeterRegistry meterRegistry;
 
-    private static volatile String ENSEMBLE_TUNED_CACHE_KEY = null;
-    private static volatile long ENSEMBLE_TUNED_CACHE_AT = 0L;
-    private static volatile int[] ENSEMBLE_TUNED_CACHE_W = null;
+    private static final long ENSEMBLE_TUNED_CACHE_TTL_MS = 10 * 60 * 1000L;
+    private static final long ENSEMBLE_TUNE_SEED = 0x656e73L;
+    private static final int ENSEMBLE_TUNED_CACHE_MAX = 16;
+    // key -> {tunedAt, w0, w1, w2, w3}；按窗口分别缓存，预热多个窗口时互不覆盖
+    private static final Map<String, long[]> ENSEMBLE_TUNED_CACHE = new LinkedHashMap<String, long[]>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > ENSEMBLE_TUNED_CACHE_MAX;
+        }
+    };
 
-    public SsqStatsService(SsqDrawRepository repository) {
-        this.repository = repository;
+    public SsqStatsService(SsqDrawHistory history, MeterRegistry meterRegistry) {
+        this.history = history;
+        this.meterRegistry = meterRegistry;
     }
 
     public static class PredictOptions {
@@ -33,6 +46,8 @@ public class SsqStatsService {
         private Set<Integer> danBlues;
         private Set<Integer> killBlues;
         private int maxTry = 120;
+        private Integer pairWeight;
+        private Integer tripleWeight;
 
         public Map<String, Object> asMap() {
             return map(
@@ -47,10 +62,82 @@ public class SsqStatsService {
                     "killReds", killReds,
                     "danBlues", danBlues,
                     "killBlues", killBlues,
-                    "maxTry", maxTry
+                    "maxTry", maxTry,
+                    "pairWeight", pairWeight,
+                    "tripleWeight", tripleWeight
             );
         }
 
+        /**
+         * 规范化查询串（字段顺序固定、集合升序、默认值省略），两组等价约束得到同一个串，可作持久化键；不带任何约束时为空串。
+         */
+        public String toQuery() {
+            StringBuilder sb = new StringBuilder();
+            appendQuery(sb, "minSum", minSum);
+            appendQuery(sb, "maxSum", maxSum);
+            appendQuery(sb, "minSpan", minSpan);
+            appendQuery(sb, "maxSpan", maxSpan);
+            appendQuery(sb, "minOdd", minOdd);
+            appendQuery(sb, "maxOdd", maxOdd);
+            appendQuery(sb, "zoneRatio", zoneRatio == null ? null : ("" + zoneRatio[0] + ":" + zoneRatio[1] + ":" + zoneRatio[2]));
+            appendQuery(sb, "danReds", joinSorted(danReds));
+            appendQuery(sb, "killReds", joinSorted(killReds));
+            appendQuery(sb, "danBlues", joinSorted(danBlues));
+            appendQuery(sb, "killBlues", joinSorted(killBlues));
+            appendQuery(sb, "maxTry", maxTry == new PredictOptions().maxTry ? null : maxTry);
+            appendQuery(sb, "pairWeight", pairWeight);
+            appendQuery(sb, "tripleWeight", tripleWeight);
+            return sb.toString();
+        }
+
+        /**
+         * {@link #toQuery()} 的逆过程。
+         */
+        public static PredictOptions fromQuery(String query) {
+            PredictOptions o = new PredictOptions();
+            if (query == null || query.isEmpty()) return o;
+            for (String kv : query.split("&")) {
+                int eq = kv.indexOf('=');
+                if (eq <= 0) continue;
+                String k = kv.substring(0, eq);
+                String v = kv.substring(eq + 1);
+                switch (k) {
+                    case "minSum": o.minSum = Integer.valueOf(v); break;
+                    case "maxSum": o.maxSum = Integer.valueOf(v); break;
+                    case "minSpan": o.minSpan = Integer.valueOf(v); break;
+                    case "maxSpan": o.maxSpan = Integer.valueOf(v); break;
+                    case "minOdd": o.minOdd = Integer.valueOf(v); break;
+                    case "maxOdd": o.maxOdd = Integer.valueOf(v); break;
+                    case "zoneRatio": o.zoneRatio = parseZoneRatio(v); break;
+                    case "danReds": o.danReds = parseNumSet(v, 1, 33); break;
+                    case "killReds": o.killReds = parseNumSet(v, 1, 33); break;
+                    case "danBlues": o.danBlues = parseNumSet(v, 1, 16); break;
+                    case "killBlues": o.killBlues = parseNumSet(v, 1, 16); break;
+                    case "maxTry": o.maxTry = Integer.parseInt(v); break;
+                    case "pairWeight": o.pairWeight = Integer.valueOf(v); break;
+                    case "tripleWeight": o.tripleWeight = Integer.valueOf(v); break;
+                    default:
+                }
+            }
+            return o;
+        }
+
+        private static void appendQuery(StringBuilder sb, String key, Object value) {
+            if (value == null) return;
+            if (sb.length() > 0) sb.append('&');
+            sb.append(key).append('=').append(value);
+        }
+
+        private static String joinSorted(Set<Integer> nums) {
+            if (nums == null || nums.isEmpty()) return null;
+            StringBuilder sb = new StringBuilder();
+            for (Integer v : new TreeSet<Integer>(nums)) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(v);
+            }
+            return sb.toString();
+        }
+
         public Integer getMinSum() { return minSum; }
         public void setMinSum(Integer minSum) { this.minSum = minSum; }
         public Integer getMaxSum() { return maxSum; }
@@ -75,6 +162,10 @@ public class SsqStatsService {
         public void setKillBlues(Set<Integer> killBlues) { this.killBlues = killBlues; }
         public int getMaxTry() { return maxTry; }
         public void setMaxTry(int maxTry) { this.maxTry = maxTry; }
+        public Integer getPairWeight() { return pairWeight; }
+        public void setPairWeight(Integer pairWeight) { this.pairWeight = pairWeight; }
+        public Integer getTripleWeight() { return tripleWeight; }
+        public void setTripleWeight(Integer tripleWeight) { this.tripleWeight = tripleWeight; }
 
         public static int[] parseZoneRatio(String s) {
             if (s == null) return null;
@@ -113,7 +204,7 @@ public class SsqStatsService {
     }
 
     public Map<String, Object> hotCold(int latestN) {
-        List<SsqDraw> draws = repository.latest(latestN);
+        List<SsqDraw> draws = history.latest(latestN);
         int[] redCnt = new int[34];
         int[] blueCnt = new int[17];
 
@@ -133,7 +224,7 @@ public class SsqStatsService {
     }
 
     public Map<String, Object> trend(int latestN) {
-        List<SsqDraw> draws = repository.latest(latestN);
+        List<SsqDraw> draws = history.latest(latestN);
         Collections.reverse(draws);
 
         List<String> drawNos = new ArrayList<>();
@@ -162,7 +253,7 @@ public class SsqStatsService {
     }
 
     public Map<String, Object> predict(int latestN) {
-        List<SsqDraw> draws = repository.latest(latestN);
+        List<SsqDraw> draws = history.latest(latestN);
         int[] redCnt = new int[34];
         int[] blueCnt = new int[17];
 
@@ -187,8 +278,24 @@ public class SsqStatsService {
         );
     }
 
+    /**
+     * 红球两两（order=2）或三三（order=3）共现次数最多的组合，窗口为最近 latestN 期（不传为全部历史）。
+     */
+    public Map<String, Object> cooccurrence(Integer latestN, int order, int top) {
+        SsqCooccurrence co = history.cooccurrence();
+        int n = latestN == null ? co.size() : Math.max(1, Math.min(latestN, co.size()));
+        int o = order == 3 ? 3 : 2;
+        SsqCooccurrence.Counts c = co.window(n);
+        return map(
+                "latestN", n,
+                "draws", c.draws(),
+                "order", o,
+                "top", c.top(o, Math.max(1, Math.min(o == 3 ? SsqCooccurrence.TRIPLES : SsqCooccurrence.PAIRS, top)))
+        );
+    }
+
     public Map<String, Object> omission(int latestN) {
-        List<SsqDraw> draws = repository.latest(latestN);
+        List<SsqDraw> draws = history.latest(latestN);
         Collections.reverse(draws);
 
         int[] redMiss = initMissArray(33);
@@ -223,11 +330,32 @@ public class SsqStatsService {
     }
 
     public Map<String, Object> predict(int latestN, String strategy, int count, PredictOptions options) {
+        return predict(latestN, strategy, count, options, null);
+    }
+
+    /**
+     * @param seed 为空时随机取一个并在结果中返回，带上同一 seed 可复现同一组号码
+     */
+    public Map<String, Object> predict(int latestN, String strategy, int count, PredictOptions options, Long seed) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return predictInternal(latestN, strategy, count, options, SsqRandom.seedOrRandom(seed));
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.predict", "strategy", metricTag(strategy)));
+        }
+    }
+
+    /**
+     * 单次 predict 最多返回的注数。
+     */
+    public static final int MAX_PREDICT_COUNT = 10000;
+
+    private Map<String, Object> predictInternal(int latestN, String strategy, int count, PredictOptions options, long seed) {
         String raw = strategy == null ? "frequency_top" : strategy.trim();
         String s = normalizeStrategy(raw);
-        int c = Math.max(1, Math.min(20, count));
+        int c = Math.max(1, Math.min(MAX_PREDICT_COUNT, count));
 
-        List<SsqDraw> draws = repository.latest(latestN);
+        List<SsqDraw> draws = history.latest(latestN);
         List<Map<String, Object>> picks = new ArrayList<>();
 
         Map<String, Object> explain = null;
@@ -235,14 +363,18 @@ public class SsqStatsService {
             explain = buildMlExplain(draws);
         }
 
+        // 同一窗口只建一次模型，多注只是重复采样
+        PickModel model = buildPickModel(draws, s, options);
+        SsqRandom root = SsqRandom.of(seed);
         for (int i = 0; i < c; i++) {
-            Pick p = pickFromDraws(draws, s, i, options);
+            Pick p = model.sample(root.derive(i));
             if (p == null) {
                 return map(
                         "strategy", "ml",
                         "strategyAlias", raw,
                         "latestN", latestN,
                         "count", c,
+                        "seed", seed,
                         "options", options == null ? null : options.asMap(),
                         "explain", explain,
                         "error", "无法在 maxTry 次尝试内生成满足约束条件的号码，请适当放宽和值/跨度/区间比/奇偶比/胆杀等条件或提高 maxTry。",
@@ -259,6 +391,7 @@ public class SsqStatsService {
                 "strategyAlias", isMlFamily(s) ? raw : null,
                 "latestN", latestN,
                 "count", c,
+                "seed", seed,
                 "picks", picks,
                 "options", options == null ? null : options.asMap(),
                 "explain", explain,
@@ -271,18 +404,42 @@ public class SsqStatsService {
     }
 
     public Map<String, Object> backtest(String strategy, int trainWindow, int testCount, PredictOptions options) {
+        return backtest(strategy, trainWindow, testCount, options, null);
+    }
+
+    public Map<String, Object> backtest(String strategy, int trainWindow, int testCount, PredictOptions options, Long seed) {
+        return backtest(strategy, trainWindow, testCount, options, seed, BacktestListener.NONE);
+    }
+
+    /**
+     * 第 i 期用 seed 派生的第 i 个子流采样，seed 为空时用 {@link SsqRandom#DEFAULT_SEED}，同一数据上结果可逐位复现。
+     * listener 每算完一期回调一次（含当期命中与截至当期的累计指标），用于流式输出；返回值与不带 listener 时一致。
+     */
+    public Map<String, Object> backtest(String strategy, int trainWindow, int testCount, PredictOptions options,
+                                        Long seed, BacktestListener listener) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return backtestInternal(strategy, trainWindow, testCount, options, SsqRandom.seedOrDefault(seed), listener);
+        } finally {
+            sample.stop(meterRegistry.timer("ssq.backtest", "strategy", metricTag(strategy)));
+        }
+    }
+
+    private Map<String, Object> backtestInternal(String strategy, int trainWindow, int testCount, PredictOptions options,
+                                                 long seed, BacktestListener listener) {
         String s = strategy == null ? "frequency_top" : strategy.trim();
 
         int train = Math.max(50, trainWindow);
         int test = Math.max(10, testCount);
 
-        List<SsqDraw> all = repository.latest(train + test);
+        List<SsqDraw> all = history.latest(train + test);
         Collections.reverse(all);
         if (all.size() < train + test) {
             return map(
                     "strategy", s,
                     "trainWindow", train,
                     "testCount", test,
+                    "seed", seed,
                     "error", "数据量不足，先同步更多历史数据"
             );
         }
@@ -292,6 +449,7 @@ public class SsqStatsService {
         int bothHitTotal = 0;
         int[] redHitDist = new int[7];
         List<Map<String, Object>> samples = new ArrayList<>();
+        SsqRandom root = SsqRandom.of(seed);
 
         for (int i = 0; i < test; i++) {
             int trainStart = i;
@@ -299,7 +457,7 @@ public class SsqStatsService {
             List<SsqDraw> trainSet = all.subList(trainStart, trainEnd);
             SsqDraw actual = all.get(trainEnd);
 
-            Pick pick = pickFromDraws(trainSet, s, i, options);
+            Pick pick = pickFromDraws(trainSet, s, root.derive(i), options);
 
             int redHits = 0;
             Set<Integer> actualR = new HashSet<>(actual.getReds());
@@ -328,19 +486,41 @@ public class SsqStatsService {
                         "blueHit", blueHit
                 ));
             }
+
+            if (listener != BacktestListener.NONE) {
+                int done = i + 1;
+                double runAvg = redHitTotal * 1.0 / done;
+                double runBlue = blueHitTotal * 1.0 / done;
+                double run2plus = (done - redHitDist[0] - redHitDist[1]) * 1.0 / done;
+                listener.onStep(map(
+                        "step", done,
+                        "testCount", test,
+                        "predictRed", pick.getReds(),
+                        "predictBlue", pick.getBlue(),
+                        "actualDrawNo", actual.getDrawNo(),
+                        "actualRed", actual.getReds(),
+                        "actualBlue", actual.getBlue(),
+                        "redHits", redHits,
+                        "blueHit", blueHit,
+                        "avgRedHits", runAvg,
+                        "blueHitRate", runBlue,
+                        "red2plusRate", run2plus,
+                        "score", backtestScore(runAvg, runBlue, run2plus)
+                ));
+            }
         }
 
         double avgRedHits = redHitTotal * 1.0 / test;
         double blueHitRate = blueHitTotal * 1.0 / test;
 
-        // 一个简单的综合评分：偏向“稳”（红球平均命中 + 蓝球命中率加权 + 红球>=2命中率）
         double red2plusRate = (redHitDist[2] + redHitDist[3] + redHitDist[4] + redHitDist[5] + redHitDist[6]) * 1.0 / test;
-        double score = avgRedHits + (blueHitRate * 1.2) + (red2plusRate * 0.8);
+        double score = backtestScore(avgRedHits, blueHitRate, red2plusRate);
 
         return map(
                 "strategy", s,
                 "trainWindow", train,
                 "testCount", test,
+                "seed", seed,
                 "avgRedHits", avgRedHits,
                 "blueHitRate", blueHitRate,
                 "redHitDist", map(
@@ -360,65 +540,164 @@ public class SsqStatsService {
         );
     }
 
+    /**
+     * 一个简单的综合评分：偏向“稳”（红球平均命中 + 蓝球命中率加权 + 红球>=2命中率）
+     */
+    static double backtestScore(double avgRedHits, double blueHitRate, double red2plusRate) {
+        return avgRedHits + (blueHitRate * 1.2) + (red2plusRate * 0.8);
+    }
+
     public Map<String, Object> recommend(int trainWindow, int testCount) {
+        return recommend(trainWindow, testCount, null);
+    }
+
+    public Map<String, Object> recommend(int trainWindow, int testCount, Long seed) {
+        return recommend(trainWindow, testCount, seed, BacktestListener.NONE);
+    }
+
+    /**
+     * 各候选用同一 seed 回测（逐期随机数相同，比较更公平）。
+     * listener 每回测完一个候选回调一次（含候选序号与当前最佳），候选内部的逐期结果不回调。
+     */
+    public Map<String, Object> recommend(int trainWindow, int testCount, Long seed, BacktestListener listener) {
         int train = Math.max(50, trainWindow);
         int test = Math.max(10, testCount);
+        long sd = SsqRandom.seedOrDefault(seed);
 
         List<Map<String, Object>> candidates = new ArrayList<>();
+        RecommendProgress progress = new RecommendProgress(listener);
 
-        // 基础：不带约束
-        candidates.add(recommendCandidate("hybrid", train, test, null));
-        candidates.add(recommendCandidate("weighted_random", train, test, null));
-        candidates.add(recommendCandidate("frequency_top", train, test, null));
-        candidates.add(recommendCandidate("omission_top", train, test, null));
-
-        // 常用约束：2:2:2 + 奇数 2~4 + 适度重试
-        PredictOptions z222 = new PredictOptions();
-        z222.setZoneRatio(new int[]{2, 2, 2});
-        z222.setMinOdd(2);
-        z222.setMaxOdd(4);
-        z222.setMaxTry(200);
-        candidates.add(recommendCandidate("zone_balanced", train, test, z222));
-        candidates.add(recommendCandidate("weighted_random", train, test, z222));
-
-        // 稍微宽松和值/跨度（避免极端）：和值 70~140，跨度 15~28
-        PredictOptions z222SumSpan = new PredictOptions();
-        z222SumSpan.setZoneRatio(new int[]{2, 2, 2});
-        z222SumSpan.setMinOdd(2);
-        z222SumSpan.setMaxOdd(4);
-        z222SumSpan.setMinSum(70);
-        z222SumSpan.setMaxSum(140);
-        z222SumSpan.setMinSpan(15);
-        z222SumSpan.setMaxSpan(28);
-        z222SumSpan.setMaxTry(260);
-        candidates.add(recommendCandidate("zone_balanced", train, test, z222SumSpan));
-        candidates.add(recommendCandidate("weighted_random", train, test, z222SumSpan));
-
-        // 选出最佳 score
-        Map<String, Object> best = null;
-        double bestScore = -1e9;
-        for (int i = 0; i < candidates.size(); i++) {
-            Map<String, Object> c = candidates.get(i);
-            if (c == null) continue;
-            Object sObj = c.get("score");
-            double sc = (sObj instanceof Number) ? ((Number) sObj).doubleValue() : -1e9;
-            if (sc > bestScore) {
-                bestScore = sc;
-                best = c;
-            }
+        for (String[] c : RECOMMEND_CANDIDATES) {
+            candidates.add(progress.done(recommendCandidate(c[0], train, test, optionsPreset(c[1]), sd)));
         }
 
         return map(
                 "trainWindow", train,
                 "testCount", test,
-                "best", best,
+                "seed", sd,
+                "best", progress.best,
                 "candidates", candidates,
                 "disclaimer", "推荐基于历史回测，仅供娱乐，不构成任何保证或建议。"
         );
     }
 
-    private Map<String, Object> recommendCandidate(String strategy, int train, int test, PredictOptions opt) {
-        Map<String, Object> r = backtest(strategy, train, test, opt);
+    /**
+     * 推荐与参数扫描共用的约束预设。
+     */
+    static final List<String> OPTION_PRESETS = Arrays.asList("none", "z222", "z222_sum_span");
+
+    /**
+     * 推荐的候选（策略, 约束预设）：先是不带约束的基础策略；再是常用约束 2:2:2 + 奇数 2~4 + 适度重试；
+     * 最后在此基础上稍微宽松和值/跨度（避免极端）：和值 70~140，跨度 15~28。
+     */
+    static final String[][] RECOMMEND_CANDIDATES = {
+            {"hybrid", "none"},
+            {"weighted_random", "none"},
+            {"frequency_top", "none"},
+            {"omission_top", "none"},
+            {"zone_balanced", "z222"},
+            {"weighted_random", "z222"},
+            {"zone_balanced", "z222_sum_span"},
+            {"weighted_random", "z222_sum_span"}
+    };
+
+    /**
+     * 按名称新建约束预设：none 为 null（不带约束），未知名称也返回 null，调用方先用 {@link #OPTION_PRESETS} 校验。
+     */
+    static PredictOptions optionsPreset(String name) {
+        if ("z222".equals(name)) {
+            PredictOptions o = new PredictOptions();
+            o.setZoneRatio(new int[]{2, 2, 2});
+            o.setMinOdd(2);
+            o.setMaxOdd(4);
+            o.setMaxTry(200);
+            return o;
+        }
+        if ("z222_sum_span".equals(name)) {
+            PredictOptions o = new PredictOptions();
+            o.setZoneRatio(new int[]{2, 2, 2});
+            o.setMinOdd(2);
+            o.setMaxOdd(4);
+            o.setMinSum(70);
+            o.setMaxSum(140);
+            o.setMinSpan(15);
+            o.setMaxSpan(28);
+            o.setMaxTry(260);
+            return o;
+        }
+        return null;
+    }
+
+    /**
+     * 启动预热：为给定窗口调好 ml 融合权重（写入权重缓存），并把各策略的采样路径各跑 rounds 次让 JIT 编译热点代码。
+     */
+    public Map<String, Object> warmUp(int[] latestNs, int rounds) {
+        Map<String, Object> tuned = new LinkedHashMap<String, Object>();
+        for (int n : latestNs) {
+            List<SsqDraw> draws = history.latest(n);
+            long t0 = System.currentTimeMillis();
+            // 与 predict 的 buildMlExplain 走同一缓存 key（末期号 + 窗口大小）
+            buildMlExplain(draws);
+            tuned.put(String.valueOf(n), System.currentTimeMillis() - t0);
+
+            for (String s : ALL_STRATEGIES) {
+                for (int i = 0; i < Math.max(1, rounds); i++) {
+                    pickFromDraws(draws, s, SsqRandom.of(i), null);
+                }
+            }
+        }
+        return map("tunedMs", tuned, "strategies", ALL_STRATEGIES, "rounds", rounds);
+    }
+
+    private static final String[] ALL_STRATEGIES = new String[]{
+            "frequency_top", "omission_top", "hybrid", "weighted_random", "zone_balanced", "markov", "bayes", "ml"
+    };
+
+    /**
+     * 逐候选累计最佳 score，并把进度交给 listener。
+     */
+    private static final class RecommendProgress {
+        private static final int TOTAL = RECOMMEND_CANDIDATES.length;
+        private final BacktestListener listener;
+        private int done;
+        private Map<String, Object> best;
+        private double bestScore = -1e9;
+
+        RecommendProgress(BacktestListener listener) {
+            this.listener = listener;
+        }
+
+        Map<String, Object> done(Map<String, Object> c) {
+            done++;
+            if (c != null) {
+                Object sObj = c.get("score");
+                double sc = (sObj instanceof Number) ? ((Number) sObj).doubleValue() : -1e9;
+                if (sc > bestScore) {
+                    bestScore = sc;
+                    best = c;
+                }
+            }
+            listener.onCandidate(map("index", done, "total", TOTAL, "candidate", c, "best", best));
+            return c;
+        }
+    }
+
+    /**
+     * 回测/推荐的增量回调，两个方法默认空实现，按需覆盖。
+     */
+    public interface BacktestListener {
+        BacktestListener NONE = new BacktestListener() {
+        };
+
+        default void onStep(Map<String, Object> step) {
+        }
+
+        default void onCandidate(Map<String, Object> candidate) {
+        }
+    }
+
+    private Map<String, Object> recommendCandidate(String strategy, int train, int test, PredictOptions opt, long seed) {
+        Map<String, Object> r = backtest(strategy, train, test, opt, seed);
         if (r == null) return null;
         if (r.get("error") != null) {
             // 数据不足时直接返回错误（上层会一起带出去）
@@ -429,15 +708,26 @@ public class SsqStatsService {
         return r;
     }
 
-    private Map<String, Object> pickOne(int latestN, String strategy, int salt, PredictOptions options) {
-        List<SsqDraw> draws = repository.latest(latestN);
-        Pick p = pickFromDraws(draws, strategy, salt, options);
+    private Map<String, Object> pickOne(int latestN, String strategy, Random rnd, PredictOptions options) {
+        List<SsqDraw> draws = history.latest(latestN);
+        Pick p = pickFromDraws(draws, strategy, rnd, options);
         List<Integer> red = new ArrayList<Integer>(p.getReds());
         Collections.sort(red);
         return map("red", red, "blue", p.getBlue());
     }
 
-    private Pick pickFromDraws(List<SsqDraw> draws, String strategy, int salt, PredictOptions options) {
+    /**
+     * rnd 由调用方按 seed 派生（见 {@link SsqRandom}），同一 rnd 状态下结果确定。
+     */
+    Pick pickFromDraws(List<SsqDraw> draws, String strategy, Random rnd, PredictOptions options) {
+        return buildPickModel(draws, strategy, options).sample(rnd);
+    }
+
+    /**
+     * 建模一次：计数、遗漏、转移矩阵、bayes 桶计数、ml 融合权重与评分都在这里算好，
+     * 之后 {@link PickModel#sample(Random)} 只做约束过滤下的采样，同一窗口可重复采样任意次。
+     */
+    PickModel buildPickModel(List<SsqDraw> draws, String strategy, PredictOptions options) {
         int[] redCnt = new int[34];
         int[] blueCnt = new int[17];
         int[] redMiss = initMissArray(33);
@@ -446,67 +736,225 @@ public class SsqStatsService {
         List<SsqDraw> ordered = new ArrayList<>(draws);
         Collections.reverse(ordered);
 
-        for (SsqDraw d : ordered) {
-            boolean[] redHit = new boolean[34];
+        // 遗漏 = 最后一次出现之后的期数（从未出现为总期数）；只记最后出现位置，每期 O(7) 而不是逐号递增
+        int n = ordered.size();
+        int[] redLast = new int[34];
+        int[] blueLast = new int[17];
+        Arrays.fill(redLast, -1);
+        Arrays.fill(blueLast, -1);
+        for (int i = 0; i < n; i++) {
+            SsqDraw d = ordered.get(i);
             for (int r : d.getReds()) {
                 if (r >= 1 && r <= 33) {
                     redCnt[r]++;
-                    redHit[r] = true;
+                    redLast[r] = i;
                 }
             }
-            for (int i = 1; i <= 33; i++) {
-                redMiss[i] = redHit[i] ? 0 : (redMiss[i] + 1);
-            }
-
             int b = d.getBlue();
             if (b >= 1 && b <= 16) {
                 blueCnt[b]++;
-            }
-            for (int i = 1; i <= 16; i++) {
-                blueMiss[i] = (b == i) ? 0 : (blueMiss[i] + 1);
+                blueLast[b] = i;
             }
         }
+        for (int i = 1; i <= 33; i++) {
+            redMiss[i] = n - 1 - redLast[i];
+        }
+        for (int i = 1; i <= 16; i++) {
+            blueMiss[i] = n - 1 - blueLast[i];
+        }
 
         String s = strategy == null ? "frequency_top" : strategy;
         PredictOptions opt = options == null ? new PredictOptions() : options;
-        SecureRandom rnd = new SecureRandom(("ssq-" + salt).getBytes());
 
         SsqDraw last = ordered.isEmpty() ? null : ordered.get(ordered.size() - 1);
         int[][] redTrans = null;
         int[] blueTransFromLast = null;
         int[] bayesRedScore = null;
         int[] bayesBlueScore = null;
+        SsqTransitions transitions = "markov".equalsIgnoreCase(s) || "bayes".equalsIgnoreCase(s) || isMlFamily(s)
+                ? history.transitions() : null;
         if ("markov".equalsIgnoreCase(s) || "ml".equalsIgnoreCase(s) || "ensemble".equalsIgnoreCase(s) || "ensemble_tuned".equalsIgnoreCase(s)) {
-            redTrans = buildRedTransition(ordered);
-            blueTransFromLast = buildBlueFromLastTransition(ordered);
+            redTrans = redTransition(transitions, ordered);
+            blueTransFromLast = blueFromLastTransition(transitions, ordered);
         }
         if ("bayes".equalsIgnoreCase(s) || "ml".equalsIgnoreCase(s) || "ensemble".equalsIgnoreCase(s) || "ensemble_tuned".equalsIgnoreCase(s)) {
             int bucket = last == null ? 0 : featureBucket(last);
-            bayesRedScore = buildBayesRedScore(ordered, bucket);
-            bayesBlueScore = buildBayesBlueScore(ordered, bucket);
+            bayesRedScore = bayesRedScore(transitions, ordered, bucket);
+            bayesBlueScore = bayesBlueScore(transitions, ordered, bucket);
         }
 
-        // 约束过滤：生成-校验，不通过则重试（避免直接 topK 造成过于固定）
-        int maxTry = Math.max(50, opt.getMaxTry());
-        for (int t = 0; t < maxTry; t++) {
-            Pick candidate = pickRaw(redCnt, blueCnt, redMiss, blueMiss, ordered, last, redTrans, blueTransFromLast,
-                    bayesRedScore, bayesBlueScore, s, salt + t, rnd, opt);
-            if (candidate == null) continue;
-            if (accept(candidate, opt)) return candidate;
+        Pick top = new Pick(topK(redCnt, 6, 1, 33), topK(blueCnt, 1, 1, 16).get(0));
+        int[] redScore = null;
+        int[] blueScore = null;
+        Pick fixed = null;
+        boolean zoned = false;
+
+        // ml 家族：统一用集成策略（更稳），外部不再暴露 ensemble/ensemble_tuned
+        if (isMlFamily(s)) {
+            if (last == null) {
+                fixed = top;
+            } else {
+                int[] bestW = getOrTuneEnsembleWeights(ordered);
+                int wHybrid = bestW == null || bestW.length < 4 ? 250 : bestW[0];
+                int wMarkov = bestW == null || bestW.length < 4 ? 250 : bestW[1];
+                int wBayes = bestW == null || bestW.length < 4 ? 200 : bestW[2];
+                int wMl = bestW == null || bestW.length < 4 ? 300 : bestW[3];
+
+                redScore = buildEnsembleRedScore(redCnt, redMiss, ordered, last, redTrans, bayesRedScore, wHybrid, wMarkov, wBayes, wMl);
+                blueScore = buildEnsembleBlueScore(blueCnt, blueMiss, ordered, last, blueTransFromLast, bayesBlueScore, wHybrid, wMarkov, wBayes, wMl);
+                int[] cooccurRedScore = buildCooccurRedScore(ordered, last, opt);
+                if (cooccurRedScore != null) {
+                    for (int v = 1; v <= 33; v++) {
+                        redScore[v] = (int) Math.min(Integer.MAX_VALUE, (long) redScore[v] + cooccurRedScore[v]);
+                    }
+                }
+            }
+        } else if ("zone_balanced".equalsIgnoreCase(s)) {
+            // 分区均衡：一区(1-11)/二区(12-22)/三区(23-33) 各取2个
+            redScore = redCnt;
+            blueScore = blueCnt;
+            zoned = true;
+        } else if ("omission_top".equalsIgnoreCase(s)) {
+            fixed = new Pick(topK(redMiss, 6, 1, 33), topK(blueMiss, 1, 1, 16).get(0));
+        } else if ("hybrid".equalsIgnoreCase(s)) {
+            int[] hr = new int[34];
+            int[] hb = new int[17];
+            for (int i = 1; i <= 33; i++) {
+                hr[i] = redCnt[i] * 2 + redMiss[i];
+            }
+            for (int i = 1; i <= 16; i++) {
+                hb[i] = blueCnt[i] * 2 + blueMiss[i];
+            }
+            fixed = new Pick(topK(hr, 6, 1, 33), topK(hb, 1, 1, 16).get(0));
+        } else if ("weighted_random".equalsIgnoreCase(s)) {
+            redScore = redCnt;
+            blueScore = blueCnt;
+        } else if ("markov".equalsIgnoreCase(s)) {
+            if (last == null) {
+                fixed = top;
+            } else {
+                redScore = buildMarkovRedScore(last, redTrans, redCnt, redMiss);
+                blueScore = buildMarkovBlueScore(blueTransFromLast, blueCnt, blueMiss);
+            }
+        } else if ("bayes".equalsIgnoreCase(s)) {
+            if (bayesRedScore == null || bayesBlueScore == null) {
+                fixed = top;
+            } else {
+                redScore = bayesRedScore;
+                blueScore = bayesBlueScore;
+            }
+        } else {
+            // frequency_top
+            fixed = top;
         }
 
-        // 若用户设置了任何约束：宁可失败也不要返回不满足约束的号码
-        if (hasConstraints(opt)) {
-            return null;
+        String tag = metricTag(s);
+        return new PickModel(opt, redScore, blueScore, redMiss, blueMiss, fixed, zoned, top,
+                meterRegistry.summary("ssq.pick.tries", "strategy", tag),
+                meterRegistry.counter("ssq.pick.exhausted", "strategy", tag));
+    }
+
+    /**
+     * 约束里会影响建模（而不只是采样过滤）的部分：目前只有 ml 的共现加权及其锚点（胆码）。
+     * 两组约束的该值相同，同一窗口的模型即可共用（见 {@link PickModel#withOptions}）。
+     */
+    static String modelVariant(String strategy, PredictOptions options) {
+        if (options == null || !isMlFamily(strategy == null ? null : strategy.trim())) return "";
+        int pw = options.getPairWeight() == null ? 0 : Math.max(0, options.getPairWeight());
+        int tw = options.getTripleWeight() == null ? 0 : Math.max(0, options.getTripleWeight());
+        if (pw == 0 && tw == 0) return "";
+        Set<Integer> dan = options.getDanReds() == null ? Collections.<Integer>emptySet() : new TreeSet<Integer>(options.getDanReds());
+        return pw + ":" + tw + ":" + dan;
+    }
+
+    /**
+     * 某一窗口、某一策略建好的模型：评分向量与遗漏都已算好且不再修改，可多线程共享、重复采样。
+     */
+    static final class PickModel {
+        private final PredictOptions opt;
+        private final int[] redScore;
+        private final int[] blueScore;
+        private final int[] redMiss;
+        private final int[] blueMiss;
+        /**
+         * 确定性策略（热号/遗漏/综合 topK 等）的结果，非 null 时不采样。
+         */
+        private final Pick fixed;
+        private final boolean zoned;
+        private final Pick top;
+        private final DistributionSummary tries;
+        private final Counter exhausted;
+
+        private PickModel(PredictOptions opt, int[] redScore, int[] blueScore, int[] redMiss, int[] blueMiss,
+                          Pick fixed, boolean zoned, Pick top, DistributionSummary tries, Counter exhausted) {
+            this.opt = opt;
+            this.redScore = redScore;
+            this.blueScore = blueScore;
+            this.redMiss = redMiss;
+            this.blueMiss = blueMiss;
+            this.fixed = fixed;
+            this.zoned = zoned;
+            this.top = top;
+            this.tries = tries;
+            this.exhausted = exhausted;
+        }
+
+        /**
+         * 同一评分换一组约束；只在两组约束的 {@link #modelVariant} 相同时才与重新建模等价。
+         */
+        PickModel withOptions(PredictOptions options) {
+            return new PickModel(options == null ? new PredictOptions() : options, redScore, blueScore, redMiss, blueMiss,
+                    fixed, zoned, top, tries, exhausted);
+        }
+
+        /**
+         * 约束过滤下采一注；设置了约束且 maxTry 次都不满足时返回 null。
+         */
+        Pick sample(Random rnd) {
+            // 约束过滤：生成-校验，不通过则重试（避免直接 topK 造成过于固定）
+            int maxTry = Math.max(50, opt.getMaxTry());
+            for (int t = 0; t < maxTry; t++) {
+                Pick candidate = raw(rnd, opt);
+                if (candidate == null) continue;
+                if (accept(candidate, opt)) {
+                    tries.record(t + 1);
+                    return candidate;
+                }
+            }
+            tries.record(maxTry);
+            exhausted.increment();
+
+            // 若用户设置了任何约束：宁可失败也不要返回不满足约束的号码
+            if (hasConstraints(opt)) {
+                return null;
+            }
+
+            // 无约束兜底：返回一次不带过滤的结果，保证接口稳定
+            Pick fallback = raw(rnd, new PredictOptions());
+            if (fallback != null) return fallback;
+            return copy(top);
         }
 
-        // 无约束兜底：返回一次不带过滤的结果，保证接口稳定
-        Pick fallback = pickRaw(redCnt, blueCnt, redMiss, blueMiss, ordered, last, redTrans, blueTransFromLast,
-                bayesRedScore, bayesBlueScore, s, salt, rnd, new PredictOptions());
-        if (fallback != null) return fallback;
-        List<Integer> red = topK(redCnt, 6, 1, 33);
-        int blue = topK(blueCnt, 1, 1, 16).get(0);
-        return new Pick(red, blue);
+        private Pick raw(Random rnd, PredictOptions o) {
+            if (fixed != null) {
+                return copy(fixed);
+            }
+            List<Integer> red;
+            if (zoned) {
+                red = new ArrayList<>();
+                red.addAll(weightedSampleWithoutReplacementInRange(redScore, redMiss, 2, 1, 11, rnd, o));
+                red.addAll(weightedSampleWithoutReplacementInRange(redScore, redMiss, 2, 12, 22, rnd, o));
+                red.addAll(weightedSampleWithoutReplacementInRange(redScore, redMiss, 2, 23, 33, rnd, o));
+            } else {
+                red = weightedSampleWithoutReplacementInRange(redScore, redMiss, 6, 1, 33, rnd, o);
+            }
+            int blue = weightedSampleOneWithFilter(blueScore, blueMiss, 1, 16, rnd, o);
+            return new Pick(red, blue);
+        }
+
+        private static Pick copy(Pick p) {
+            return new Pick(new ArrayList<Integer>(p.getReds()), p.getBlue());
+        }
     }
 
     private static boolean hasConstraints(PredictOptions opt) {
@@ -522,97 +970,23 @@ public class SsqStatsService {
         return false;
     }
 
-    private Pick pickRaw(int[] redCnt, int[] blueCnt, int[] redMiss, int[] blueMiss,
-                         List<SsqDraw> ordered, SsqDraw last,
-                         int[][] redTrans, int[] blueTransFromLast,
-                         int[] bayesRedScore, int[] bayesBlueScore,
-                         String strategy, int salt, Random rnd, PredictOptions opt) {
-        String s = strategy == null ? "frequency_top" : strategy;
-
-        // ml 家族：统一用集成策略（更稳），外部不再暴露 ensemble/ensemble_tuned
-        if (isMlFamily(s)) {
-            if (last == null) {
-                List<Integer> red = topK(redCnt, 6, 1, 33);
-                int blue = topK(blueCnt, 1, 1, 16).get(0);
-                return new Pick(red, blue);
-            }
-
-            int[] bestW = getOrTuneEnsembleWeights(ordered, salt);
-            int wHybrid = bestW == null || bestW.length < 4 ? 250 : bestW[0];
-            int wMarkov = bestW == null || bestW.length < 4 ? 250 : bestW[1];
-            int wBayes = bestW == null || bestW.length < 4 ? 200 : bestW[2];
-            int wMl = bestW == null || bestW.length < 4 ? 300 : bestW[3];
-
-            int[] redScore = buildEnsembleRedScore(redCnt, redMiss, ordered, last, redTrans, bayesRedScore, wHybrid, wMarkov, wBayes, wMl);
-            int[] blueScore = buildEnsembleBlueScore(blueCnt, blueMiss, ordered, last, blueTransFromLast, bayesBlueScore, wHybrid, wMarkov, wBayes, wMl);
-
-            List<Integer> red = weightedSampleWithoutReplacementInRange(redScore, redMiss, 6, 1, 33, rnd, opt);
-            int blue = weightedSampleOneWithFilter(blueScore, blueMiss, 1, 16, rnd, opt);
-            return new Pick(red, blue);
-        }
-
-        if ("zone_balanced".equalsIgnoreCase(s)) {
-            // 分区均衡：一区(1-11)/二区(12-22)/三区(23-33) 各取2个
-            List<Integer> red = new ArrayList<>();
-            red.addAll(weightedSampleWithoutReplacementInRange(redCnt, redMiss, 2, 1, 11, rnd, opt));
-            red.addAll(weightedSampleWithoutReplacementInRange(redCnt, redMiss, 2, 12, 22, rnd, opt));
-            red.addAll(weightedSampleWithoutReplacementInRange(redCnt, redMiss, 2, 23, 33, rnd, opt));
-            int blue = weightedSampleOneWithFilter(blueCnt, blueMiss, 1, 16, rnd, opt);
-            return new Pick(red, blue);
-        }
-
-        if ("omission_top".equalsIgnoreCase(s)) {
-            List<Integer> red = topK(redMiss, 6, 1, 33);
-            int blue = topK(blueMiss, 1, 1, 16).get(0);
-            return new Pick(red, blue);
-        }
-        if ("hybrid".equalsIgnoreCase(s)) {
-            int[] redScore = new int[34];
-            int[] blueScore = new int[17];
-            for (int i = 1; i <= 33; i++) {
-                redScore[i] = redCnt[i] * 2 + redMiss[i];
-            }
-            for (int i = 1; i <= 16; i++) {
-                blueScore[i] = blueCnt[i] * 2 + blueMiss[i];
-            }
-            List<Integer> red = topK(redScore, 6, 1, 33);
-            int blue = topK(blueScore, 1, 1, 16).get(0);
-            return new Pick(red, blue);
-        }
-        if ("weighted_random".equalsIgnoreCase(s)) {
-            SecureRandom rr = new SecureRandom(("ssq-" + salt).getBytes());
-            List<Integer> red = weightedSampleWithoutReplacementInRange(redCnt, redMiss, 6, 1, 33, rr, opt);
-            int blue = weightedSampleOneWithFilter(blueCnt, blueMiss, 1, 16, rr, opt);
-            return new Pick(red, blue);
-        }
-
-        if ("markov".equalsIgnoreCase(s)) {
-            if (last == null) {
-                List<Integer> red = topK(redCnt, 6, 1, 33);
-                int blue = topK(blueCnt, 1, 1, 16).get(0);
-                return new Pick(red, blue);
-            }
-            int[] redScore = buildMarkovRedScore(last, redTrans, redCnt, redMiss);
-            List<Integer> red = weightedSampleWithoutReplacementInRange(redScore, redMiss, 6, 1, 33, rnd, opt);
-            int blue = buildMarkovBluePick(last, blueTransFromLast, blueCnt, blueMiss, rnd, opt);
-            return new Pick(red, blue);
-        }
+    private static final Set<String> METRIC_STRATEGIES = new HashSet<String>(Arrays.asList(ALL_STRATEGIES));
 
-        if ("bayes".equalsIgnoreCase(s)) {
-            if (bayesRedScore == null || bayesBlueScore == null) {
-                List<Integer> red = topK(redCnt, 6, 1, 33);
-                int blue = topK(blueCnt, 1, 1, 16).get(0);
-                return new Pick(red, blue);
-            }
-            List<Integer> red = weightedSampleWithoutReplacementInRange(bayesRedScore, redMiss, 6, 1, 33, rnd, opt);
-            int blue = weightedSampleOneWithFilter(bayesBlueScore, blueMiss, 1, 16, rnd, opt);
-            return new Pick(red, blue);
-        }
+    /**
+     * 指标 tag：策略名来自请求参数，只保留已知策略，避免任意入参撑爆时间序列。
+     */
+    static String metricTag(String strategy) {
+        String s = normalizeStrategy(strategy).toLowerCase(Locale.ROOT);
+        return METRIC_STRATEGIES.contains(s) ? s : "other";
+    }
 
-        // frequency_top
-        List<Integer> red = topK(redCnt, 6, 1, 33);
-        int blue = topK(blueCnt, 1, 1, 16).get(0);
-        return new Pick(red, blue);
+    /**
+     * 规范化后的已知策略名（小写，ml / ensemble / ensemble_tuned 归为 ml），未知策略返回 null；
+     * 策略名要持久化或作键时用它，避免同一策略的不同写法各存一份。
+     */
+    static String canonicalStrategy(String raw) {
+        String s = normalizeStrategy(raw).toLowerCase(Locale.ROOT);
+        return METRIC_STRATEGIES.contains(s) ? s : null;
     }
 
     private static boolean isMlFamily(String s) {
@@ -627,12 +1001,12 @@ public class SsqStatsService {
         return s;
     }
 
-    private static Map<String, Object> buildMlExplain(List<SsqDraw> draws) {
+    private Map<String, Object> buildMlExplain(List<SsqDraw> draws) {
         if (draws == null || draws.isEmpty()) return null;
         List<SsqDraw> ordered = new ArrayList<>(draws);
         Collections.reverse(ordered);
 
-        int[] w = getOrTuneEnsembleWeights(ordered, 0);
+        int[] w = getOrTuneEnsembleWeights(ordered);
         return map(
                 "mode", "ensemble_tuned",
                 "weights", map(
@@ -645,6 +1019,20 @@ public class SsqStatsService {
         );
     }
 
+    /**
+     * ordered 是历史快照中的一段连续区间时直接从 {@link SsqTransitions} 前缀差分取矩阵，否则（合成历史等）逐期累加。
+     */
+    private static int[][] redTransition(SsqTransitions transitions, List<SsqDraw> ordered) {
+        int s = transitions == null ? -1 : transitions.locate(ordered);
+        return s < 0 ? buildRedTransition(ordered) : transitions.redMatrix(s, s + ordered.size());
+    }
+
+    private static int[] blueFromLastTransition(SsqTransitions transitions, List<SsqDraw> ordered) {
+        int s = transitions == null ? -1 : transitions.locate(ordered);
+        if (s < 0) return buildBlueFromLastTransition(ordered);
+        return transitions.blueRow(s, s + ordered.size(), ordered.get(ordered.size() - 1).getBlue());
+    }
+
     private static int[][] buildRedTransition(List<SsqDraw> ordered) {
         int[][] trans = new int[34][34];
         if (ordered == null || ordered.size() < 2) return trans;
@@ -681,25 +1069,33 @@ public class SsqStatsService {
         return score;
     }
 
-    private static int[] getOrTuneEnsembleWeights(List<SsqDraw> ordered, int salt) {
+    /**
+     * 调参固定用 {@link #ENSEMBLE_TUNE_SEED}，权重只取决于数据本身，与谁先触发调参无关。
+     */
+    int[] getOrTuneEnsembleWeights(List<SsqDraw> ordered) {
         if (ordered == null || ordered.size() < 80) return new int[]{250, 250, 200, 300};
         SsqDraw last = ordered.get(ordered.size() - 1);
         String lastNo = last == null ? "" : String.valueOf(last.getDrawNo());
         String key = lastNo + ":" + ordered.size();
         long now = System.currentTimeMillis();
-        if (key.equals(ENSEMBLE_TUNED_CACHE_KEY) && ENSEMBLE_TUNED_CACHE_W != null && (now - ENSEMBLE_TUNED_CACHE_AT) < 10 * 60 * 1000L) {
-            return ENSEMBLE_TUNED_CACHE_W;
+        synchronized (ENSEMBLE_TUNED_CACHE) {
+            long[] hit = ENSEMBLE_TUNED_CACHE.get(key);
+            if (hit != null && (now - hit[0]) < ENSEMBLE_TUNED_CACHE_TTL_MS) {
+                return new int[]{(int) hit[1], (int) hit[2], (int) hit[3], (int) hit[4]};
+            }
         }
 
         int testCount = 20;
         int total = ordered.size();
         if (total <= testCount + 30) return new int[]{250, 250, 200, 300};
 
+        SsqTransitions transitions = history.transitions();
         // 小网格：控制组合数，保证接口响应速度
         int[] hybridCandidates = new int[]{150, 250, 350};
         int[] markovCandidates = new int[]{200, 300, 400};
         int[] bayesCandidates = new int[]{100, 200, 300};
 
+        Timer.Sample sample = Timer.start(meterRegistry);
         double bestScore = -1e18;
         int[] best = new int[]{250, 250, 200, 300};
         for (int h : hybridCandidates) {
@@ -707,7 +1103,7 @@ public class SsqStatsService {
                 for (int b : bayesCandidates) {
                     int ml = 1000 - h - m - b;
                     if (ml < 100 || ml > 600) continue;
-                    double sc = rollingScoreEnsemble(ordered, h, m, b, ml, testCount, salt);
+                    double sc = rollingScoreEnsemble(ordered, transitions, h, m, b, ml, testCount);
                     if (sc > bestScore) {
                         bestScore = sc;
                         best = new int[]{h, m, b, ml};
@@ -716,13 +1112,23 @@ public class SsqStatsService {
             }
         }
 
-        ENSEMBLE_TUNED_CACHE_KEY = key;
-        ENSEMBLE_TUNED_CACHE_AT = now;
-        ENSEMBLE_TUNED_CACHE_W = best;
+        sample.stop(meterRegistry.timer("ssq.ensemble.tune"));
+
+        synchronized (ENSEMBLE_TUNED_CACHE) {
+            ENSEMBLE_TUNED_CACHE.put(key, new long[]{now, best[0], best[1], best[2], best[3]});
+        }
         return best;
     }
 
-    private static double rollingScoreEnsemble(List<SsqDraw> ordered, int wHybrid, int wMarkov, int wBayes, int wMl, int testCount, int salt) {
+    static void clearEnsembleWeightCache() {
+        synchronized (ENSEMBLE_TUNED_CACHE) {
+            ENSEMBLE_TUNED_CACHE.clear();
+        }
+    }
+
+    private static double rollingScoreEnsemble(List<SsqDraw> ordered, SsqTransitions transitions,
+                                               int wHybrid, int wMarkov, int wBayes, int wMl, int testCount) {
+        SsqRandom root = SsqRandom.of(ENSEMBLE_TUNE_SEED);
         int total = ordered.size();
         int start = Math.max(60, total - testCount);
         double sum = 0.0;
@@ -730,7 +1136,8 @@ public class SsqStatsService {
             List<SsqDraw> train = ordered.subList(0, i);
             SsqDraw actual = ordered.get(i);
             if (actual == null || actual.getReds() == null || actual.getReds().size() != 6) continue;
-            Pick pred = ensemblePredictOnce(train, wHybrid, wMarkov, wBayes, wMl, salt + i);
+            // 各组权重在同一期用同一子流，差异只来自权重
+            Pick pred = ensemblePredictOnce(train, transitions, wHybrid, wMarkov, wBayes, wMl, root.derive(i));
             if (pred == null) continue;
 
             int redHit = 0;
@@ -744,7 +1151,8 @@ public class SsqStatsService {
         return sum;
     }
 
-    private static Pick ensemblePredictOnce(List<SsqDraw> ordered, int wHybrid, int wMarkov, int wBayes, int wMl, int salt) {
+    private static Pick ensemblePredictOnce(List<SsqDraw> ordered, SsqTransitions transitions,
+                                            int wHybrid, int wMarkov, int wBayes, int wMl, Random rnd) {
         if (ordered == null || ordered.size() < 30) return null;
 
         int[] redCnt = new int[34];
@@ -774,13 +1182,12 @@ public class SsqStatsService {
         }
 
         SsqDraw last = ordered.get(ordered.size() - 1);
-        int[][] redTrans = buildRedTransition(ordered);
-        int[] blueTransFromLast = buildBlueFromLastTransition(ordered);
+        int[][] redTrans = redTransition(transitions, ordered);
+        int[] blueTransFromLast = blueFromLastTransition(transitions, ordered);
         int bucket = last == null ? 0 : featureBucket(last);
-        int[] bayesRedScore = buildBayesRedScore(ordered, bucket);
-        int[] bayesBlueScore = buildBayesBlueScore(ordered, bucket);
+        int[] bayesRedScore = bayesRedScore(transitions, ordered, bucket);
+        int[] bayesBlueScore = bayesBlueScore(transitions, ordered, bucket);
 
-        Random rnd = new SecureRandom(("ssq-ens-tune-" + salt).getBytes());
         int[] redScore = buildEnsembleRedScore(redCnt, redMiss, ordered, last, redTrans, bayesRedScore, wHybrid, wMarkov, wBayes, wMl);
         int[] blueScore = buildEnsembleBlueScore(blueCnt, blueMiss, ordered, last, blueTransFromLast, bayesBlueScore, wHybrid, wMarkov, wBayes, wMl);
         List<Integer> red = weightedSampleWithoutReplacementInRange(redScore, redMiss, 6, 1, 33, rnd, new PredictOptions());
@@ -890,59 +1297,89 @@ public class SsqStatsService {
         return score;
     }
 
-    private static int buildMarkovBluePick(SsqDraw last, int[] blueTransFromLast, int[] blueCnt, int[] blueMiss, Random rnd, PredictOptions opt) {
+    private static int[] buildMarkovBlueScore(int[] blueTransFromLast, int[] blueCnt, int[] blueMiss) {
         int[] score = new int[17];
         for (int v = 1; v <= 16; v++) {
             long s = blueTransFromLast == null ? 0 : blueTransFromLast[v];
             long base = (long) blueCnt[v] * 2L + Math.min(50, blueMiss[v]);
             score[v] = (int) Math.min(Integer.MAX_VALUE, (s * 10L + base));
         }
-        return weightedSampleOneWithFilter(score, blueMiss, 1, 16, rnd, opt);
+        return score;
+    }
+
+    /**
+     * ml 融合的可选附加项：与锚点号码（有胆码用胆码，否则用上一期红球）的两两/三三共现次数，
+     * 各自归一化后乘以 pairWeight / tripleWeight；两个权重都未设置时返回 null。
+     * ordered 是历史快照中的一段连续区间时从 {@link SsqCooccurrence} 的检查点前缀差分取计数，否则逐期累加。
+     */
+    private int[] buildCooccurRedScore(List<SsqDraw> ordered, SsqDraw last, PredictOptions opt) {
+        int pw = opt.getPairWeight() == null ? 0 : Math.max(0, opt.getPairWeight());
+        int tw = opt.getTripleWeight() == null ? 0 : Math.max(0, opt.getTripleWeight());
+        if ((pw == 0 && tw == 0) || last == null) return null;
+
+        long anchors = opt.getDanReds() != null && !opt.getDanReds().isEmpty()
+                ? SsqBitmask.redMask(opt.getDanReds())
+                : SsqBitmask.redMask(last.getReds());
+        SsqCooccurrence co = history.cooccurrence();
+        int s = co.locate(ordered);
+        SsqCooccurrence.Counts counts = s < 0 ? SsqCooccurrence.Counts.of(ordered) : co.range(s, s + ordered.size());
+        int[] nPair = pw == 0 ? new int[34] : normalizeScore(counts.pairAffinity(anchors), 1, 33);
+        int[] nTriple = tw == 0 ? new int[34] : normalizeScore(counts.tripleAffinity(anchors), 1, 33);
+        int[] out = new int[34];
+        for (int v = 1; v <= 33; v++) {
+            out[v] = (int) Math.min(Integer.MAX_VALUE, (long) nPair[v] * pw + (long) nTriple[v] * tw);
+        }
+        return out;
     }
 
     private static int featureBucket(SsqDraw d) {
-        if (d == null || d.getReds() == null || d.getReds().size() != 6) return 0;
-        List<Integer> r = new ArrayList<>(d.getReds());
-        Collections.sort(r);
-        int sum = 0;
-        int odd = 0;
-        int z1 = 0, z2 = 0, z3 = 0;
-        for (int i = 0; i < r.size(); i++) {
-            int v = r.get(i);
-            sum += v;
-            if ((v & 1) == 1) odd++;
-            if (v <= 11) z1++; else if (v <= 22) z2++; else z3++;
+        return SsqTransitions.bucketOf(d);
+    }
+
+    /**
+     * ordered 是历史快照中的一段连续区间时从 {@link SsqTransitions} 的桶前缀差分取计数，否则逐期累加；两者结果相同。
+     */
+    private static int[] bayesRedScore(SsqTransitions transitions, List<SsqDraw> ordered, int bucket) {
+        int s = transitions == null ? -1 : transitions.locate(ordered);
+        if (s < 0) return buildBayesRedScore(ordered, bucket);
+        int[] score = new int[34];
+        if (ordered.size() < 2) return score;
+        int[] cnt = transitions.bucketRedCounts(s, s + ordered.size(), bucket);
+        for (int v = 1; v <= 33; v++) {
+            score[v] = cnt[v] + 1;
         }
-        int span = r.get(r.size() - 1) - r.get(0);
-        int sumB = Math.min(6, Math.max(0, sum / 30));
-        int spanB = Math.min(6, Math.max(0, span / 5));
-        int oddB = odd;
-        int zoneB = (z1 * 100 + z2 * 10 + z3);
-        return sumB * 1000 + spanB * 100 + oddB * 10 + (zoneB % 10);
+        return score;
+    }
+
+    private static int[] bayesBlueScore(SsqTransitions transitions, List<SsqDraw> ordered, int bucket) {
+        int s = transitions == null ? -1 : transitions.locate(ordered);
+        if (s < 0) return buildBayesBlueScore(ordered, bucket);
+        int[] score = new int[17];
+        if (ordered.size() < 2) return score;
+        int[] cnt = transitions.bucketBlueCounts(s, s + ordered.size(), bucket);
+        for (int v = 1; v <= 16; v++) {
+            score[v] = cnt[v] + 1;
+        }
+        return score;
     }
 
     private static int[] buildBayesRedScore(List<SsqDraw> ordered, int bucket) {
         int[] score = new int[34];
         if (ordered == null || ordered.size() < 2) return score;
 
-        Map<Integer, int[]> byBucket = new HashMap<Integer, int[]>();
+        int[] cnt = new int[34];
+        int prevBucket = featureBucket(ordered.get(0));
         for (int i = 0; i + 1 < ordered.size(); i++) {
-            SsqDraw prev = ordered.get(i);
             SsqDraw next = ordered.get(i + 1);
-            if (prev == null || next == null) continue;
-            int b = featureBucket(prev);
-            int[] cnt = byBucket.get(b);
-            if (cnt == null) {
-                cnt = new int[34];
-                byBucket.put(b, cnt);
-            }
-            for (Integer r : next.getReds()) {
-                if (r != null && r >= 1 && r <= 33) cnt[r]++;
+            int nextBucket = featureBucket(next);
+            if (prevBucket == bucket && ordered.get(i) != null && next != null) {
+                for (Integer r : next.getReds()) {
+                    if (r != null && r >= 1 && r <= 33) cnt[r]++;
+                }
             }
+            prevBucket = nextBucket;
         }
 
-        int[] cnt = byBucket.get(bucket);
-        if (cnt == null) cnt = new int[34];
         for (int v = 1; v <= 33; v++) {
             score[v] = cnt[v] + 1;
         }
@@ -953,23 +1390,18 @@ public class SsqStatsService {
         int[] score = new int[17];
         if (ordered == null || ordered.size() < 2) return score;
 
-        Map<Integer, int[]> byBucket = new HashMap<Integer, int[]>();
+        int[] cnt = new int[17];
+        int prevBucket = featureBucket(ordered.get(0));
         for (int i = 0; i + 1 < ordered.size(); i++) {
-            SsqDraw prev = ordered.get(i);
             SsqDraw next = ordered.get(i + 1);
-            if (prev == null || next == null) continue;
-            int b = featureBucket(prev);
-            int[] cnt = byBucket.get(b);
-            if (cnt == null) {
-                cnt = new int[17];
-                byBucket.put(b, cnt);
+            int nextBucket = featureBucket(next);
+            if (prevBucket == bucket && ordered.get(i) != null && next != null) {
+                int blue = next.getBlue();
+                if (blue >= 1 && blue <= 16) cnt[blue]++;
             }
-            int blue = next.getBlue();
-            if (blue >= 1 && blue <= 16) cnt[blue]++;
+            prevBucket = nextBucket;
         }
 
-        int[] cnt = byBucket.get(bucket);
-        if (cnt == null) cnt = new int[17];
         for (int v = 1; v <= 16; v++) {
             score[v] = cnt[v] + 1;
         }
@@ -1021,7 +1453,7 @@ public class SsqStatsService {
         return score;
     }
 
-    private static boolean accept(Pick p, PredictOptions opt) {
+    static boolean accept(Pick p, PredictOptions opt) {
         if (p == null) return false;
         List<Integer> reds = p.getReds() == null ? Collections.<Integer>emptyList() : p.getReds();
         if (reds.size() != 6) return false;
@@ -1077,41 +1509,24 @@ public class SsqStatsService {
     }
 
     private static List<Integer> weightedSampleWithoutReplacementInRange(int[] cnt, int[] miss, int k, int from, int to, Random rnd, PredictOptions opt) {
-        List<Integer> pool = new ArrayList<>();
-        for (int i = from; i <= to; i++) {
-            if (opt.getKillReds() != null && opt.getKillReds().contains(i)) continue;
-            pool.add(i);
+        WeightedSampler sampler = WeightedSampler.local().reset(cnt, miss, from, to);
+        if (opt.getKillReds() != null) {
+            for (Integer v : opt.getKillReds()) {
+                if (v != null) sampler.remove(v);
+            }
         }
         // 先把胆号塞进去（只在覆盖范围内）
-        List<Integer> picked = new ArrayList<>();
+        List<Integer> picked = new ArrayList<>(k);
         if (opt.getDanReds() != null && !opt.getDanReds().isEmpty()) {
             for (Integer d : opt.getDanReds()) {
-                if (d != null && d >= from && d <= to && pool.contains(d) && picked.size() < k) {
+                if (d != null && picked.size() < k && sampler.remove(d)) {
                     picked.add(d);
-                    pool.remove(d);
                 }
             }
         }
 
-        while (picked.size() < k && !pool.isEmpty()) {
-            long total = 0;
-            long[] w = new long[pool.size()];
-            for (int i = 0; i < pool.size(); i++) {
-                int v = pool.get(i);
-                long wi = 1L + cnt[v] * 3L + Math.min(50, miss[v]);
-                w[i] = wi;
-                total += wi;
-            }
-            long r = (long) (rnd.nextDouble() * total);
-            int idx = 0;
-            for (int i = 0; i < pool.size(); i++) {
-                r -= w[i];
-                if (r < 0) {
-                    idx = i;
-                    break;
-                }
-            }
-            picked.add(pool.remove(idx));
+        while (picked.size() < k && !sampler.isEmpty()) {
+            picked.add(sampler.take(rnd));
         }
         return picked;
     }
@@ -1127,30 +1542,27 @@ public class SsqStatsService {
         }
 
         // 过滤 kill 蓝球
-        List<Integer> pool = new ArrayList<>();
-        for (int i = from; i <= to; i++) {
-            if (opt.getKillBlues() != null && opt.getKillBlues().contains(i)) continue;
-            pool.add(i);
-        }
-        if (pool.isEmpty()) return from;
-        if (pool.size() == (to - from + 1)) {
+        Set<Integer> kill = opt.getKillBlues();
+        if (kill == null || kill.isEmpty()) {
             return weightedSampleOne(cnt, miss, from, to, rnd);
         }
-
         long total = 0;
-        long[] w = new long[pool.size()];
-        for (int i = 0; i < pool.size(); i++) {
-            int v = pool.get(i);
-            long wi = 1L + cnt[v] * 3L + Math.min(50, miss[v]);
-            w[i] = wi;
-            total += wi;
+        int first = -1;
+        for (int i = from; i <= to; i++) {
+            if (kill.contains(i)) continue;
+            if (first < 0) first = i;
+            total += WeightedSampler.weight(cnt[i], miss[i]);
         }
+        if (first < 0) return from;
+
+        // 单次抽取不需要建树：两遍线性扫描，不分配权重数组
         long r = (long) (rnd.nextDouble() * total);
-        for (int i = 0; i < pool.size(); i++) {
-            r -= w[i];
-            if (r < 0) return pool.get(i);
+        for (int i = from; i <= to; i++) {
+            if (kill.contains(i)) continue;
+            r -= WeightedSampler.weight(cnt[i], miss[i]);
+            if (r < 0) return i;
         }
-        return pool.get(0);
+        return first;
     }
 
     private static int[] initMissArray(int max) {
@@ -1161,15 +1573,12 @@ public class SsqStatsService {
 
     private static int weightedSampleOne(int[] cnt, int[] miss, int from, int to, Random rnd) {
         long total = 0;
-        long[] w = new long[to + 1];
         for (int i = from; i <= to; i++) {
-            long wi = 1L + cnt[i] * 3L + Math.min(50, miss[i]);
-            w[i] = wi;
-            total += wi;
+            total += WeightedSampler.weight(cnt[i], miss[i]);
         }
         long r = (long) (rnd.nextDouble() * total);
         for (int i = from; i <= to; i++) {
-            r -= w[i];
+            r -= WeightedSampler.weight(cnt[i], miss[i]);
             if (r < 0) {
                 return i;
             }
@@ -1177,36 +1586,7 @@ public class SsqStatsService {
         return from;
     }
 
-    private static List<Integer> weightedSampleWithoutReplacement(int[] cnt, int[] miss, int k, int from, int to, Random rnd) {
-        List<Integer> pool = new ArrayList<>();
-        for (int i = from; i <= to; i++) {
-            pool.add(i);
-        }
-        List<Integer> picked = new ArrayList<>();
-        for (int j = 0; j < k && !pool.isEmpty(); j++) {
-            long total = 0;
-            long[] w = new long[pool.size()];
-            for (int i = 0; i < pool.size(); i++) {
-                int v = pool.get(i);
-                long wi = 1L + cnt[v] * 3L + Math.min(50, miss[v]);
-                w[i] = wi;
-                total += wi;
-            }
-            long r = (long) (rnd.nextDouble() * total);
-            int idx = 0;
-            for (int i = 0; i < pool.size(); i++) {
-                r -= w[i];
-                if (r < 0) {
-                    idx = i;
-                    break;
-                }
-            }
-            picked.add(pool.remove(idx));
-        }
-        return picked;
-    }
-
-    private static class Pick {
+    static class Pick {
         private List<Integer> reds;
         private int blue;
 
@@ -1224,14 +1604,6 @@ public class SsqStatsService {
         }
     }
 
-    private static Map<String, Object> map(Object... kv) {
-        Map<String, Object> m = new HashMap<String, Object>();
-        for (int i = 0; i + 1 < kv.length; i += 2) {
-            m.put(String.valueOf(kv[i]), kv[i + 1]);
-        }
-        return m;
-    }
-
     private static List<Map<String, Object>> toList(int[] cnt, int from, int to) {
         List<Map<String, Object>> list = new ArrayList<>();
         for (int i = from; i <= to; i++) {
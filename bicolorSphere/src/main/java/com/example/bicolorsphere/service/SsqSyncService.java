@@ -1,66 +1,117 @@
 package com.example.bicolorsphere.service;
 
 import com.example.bicolorsphere.domain.SsqDraw;
+import com.example.bicolorsphere.repo.SsqCrawlFailureRepository;
 import com.example.bicolorsphere.repo.SsqDrawRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
+/**
+ * 同步入口（接口、后台任务、定时同步）与离线导入共用一把锁，同一时刻只有一个在写开奖表；
+ * 锁已被占用时直接抛 {@link SyncInProgressException}，不排队等待。
+ */
 @Service
 public class SsqSyncService {
-    private final SsqCrawlerService crawlerService;
+    private final ReentrantLock running = new ReentrantLock();
+    private final SsqCrawlScheduler crawlScheduler;
     private final SsqDrawRepository repository;
+    private final SsqDrawHistory history;
+    private final SsqBacktestStoreService backtestStore;
+    private final MeterRegistry meterRegistry;
 
-    public SsqSyncService(SsqCrawlerService crawlerService, SsqDrawRepository repository) {
-        this.crawlerService = crawlerService;
+    public SsqSyncService(SsqCrawlScheduler crawlScheduler, SsqDrawRepository repository, SsqDrawHistory history,
+                          SsqBacktestStoreService backtestStore, MeterRegistry meterRegistry) {
+        this.crawlScheduler = crawlScheduler;
         this.repository = repository;
+        this.history = history;
+        this.backtestStore = backtestStore;
+        this.meterRegistry = meterRegistry;
     }
 
     public SyncResult syncPages(int fromPage, int toPage) throws IOException {
+        return syncPages(fromPage, toPage, ProgressListener.NONE);
+    }
+
+    public SyncResult syncPages(int fromPage, int toPage, ProgressListener listener) throws IOException {
+        return runExclusive("pages", () -> doSyncPages(fromPage, toPage, listener));
+    }
+
+    private SyncResult doSyncPages(int fromPage, int toPage, ProgressListener listener) {
         int start = Math.max(1, fromPage);
         int end = Math.max(start, toPage);
+        Timer.Sample sample = Timer.start(meterRegistry);
 
         int fetched = 0;
         int inserted = 0;
         List<String> errors = new ArrayList<>();
+        Set<Integer> failedPages = new HashSet<Integer>();
 
         for (int p = start; p <= end; p++) {
             try {
-                List<SsqDraw> page = crawlerService.fetchPage(p);
+                List<SsqDraw> page = crawlScheduler.fetch(p);
                 fetched += page.size();
-                for (SsqDraw draw : page) {
-                    inserted += repository.upsertIgnore(draw);
-                }
+                inserted += insert(page);
             } catch (Exception e) {
+                // 熔断期间剩下的页也都入队，下次同步补抓
+                crawlScheduler.enqueue(p, e);
+                failedPages.add(p);
                 errors.add("page=" + p + ": " + e.getMessage());
             }
+            listener.onPage(p, p - start + 1, end - start + 1, fetched, inserted, errors.size());
         }
 
-        return new SyncResult(start, end, fetched, inserted, errors);
+        SsqCrawlScheduler.QueueResult queue = crawlScheduler.retryQueued(failedPages, this::insert);
+        inserted += queue.getInserted();
+        if (inserted > 0) {
+            history.invalidate();
+            backtestStore.refresh();
+        }
+        record(sample, "pages", fetched, inserted, errors.size());
+        return new SyncResult(start, end, fetched, inserted, errors, queue);
     }
 
     public SyncMissingResult syncMissing(int maxPages, int stopAfterNoInsertPages) {
+        return syncMissing(maxPages, stopAfterNoInsertPages, ProgressListener.NONE);
+    }
+
+    /**
+     * listener 的 pagesTotal 为上限 maxPages，连续无新增提前结束时不会走满。
+     */
+    public SyncMissingResult syncMissing(int maxPages, int stopAfterNoInsertPages, ProgressListener listener) {
+        return runExclusive("missing", () -> doSyncMissing(maxPages, stopAfterNoInsertPages, listener));
+    }
+
+    private SyncMissingResult doSyncMissing(int maxPages, int stopAfterNoInsertPages, ProgressListener listener) {
         int maxP = Math.max(1, Math.min(200, maxPages));
         int stopAfter = Math.max(1, Math.min(20, stopAfterNoInsertPages));
+        Timer.Sample sample = Timer.start(meterRegistry);
 
         int fetched = 0;
         int inserted = 0;
         int scannedPages = 0;
         int noInsertStreak = 0;
         List<String> errors = new ArrayList<String>();
+        Set<Integer> failedPages = new HashSet<Integer>();
 
         for (int p = 1; p <= maxP; p++) {
             scannedPages++;
             try {
-                List<SsqDraw> page = crawlerService.fetchPage(p);
+                List<SsqDraw> page = crawlScheduler.fetch(p);
                 fetched += page.size();
-                int pageInserted = 0;
-                for (SsqDraw draw : page) {
-                    pageInserted += repository.upsertIgnore(draw);
-                }
+                int pageInserted = insert(page);
                 inserted += pageInserted;
+                listener.onPage(p, scannedPages, maxP, fetched, inserted, errors.size());
 
                 if (pageInserted == 0) {
                     noInsertStreak++;
@@ -73,10 +124,84 @@ public class SsqSyncService {
                 }
             } catch (Exception e) {
                 errors.add("page=" + p + ": " + e.getMessage());
+                listener.onPage(p, scannedPages, maxP, fetched, inserted, errors.size());
+                // 被熔断拒绝的页根本没发出请求，不入队；后面的页也不再逐页快速失败：补缺扫描本来就会在下次同步从第 1 页重来
+                if (e instanceof SsqCrawlScheduler.CircuitOpenException) {
+                    break;
+                }
+                crawlScheduler.enqueue(p, e);
+                failedPages.add(p);
             }
         }
 
-        return new SyncMissingResult(scannedPages, fetched, inserted, noInsertStreak, errors);
+        SsqCrawlScheduler.QueueResult queue = crawlScheduler.retryQueued(failedPages, this::insert);
+        inserted += queue.getInserted();
+        if (inserted > 0) {
+            history.invalidate();
+            backtestStore.refresh();
+        }
+        record(sample, "missing", fetched, inserted, errors.size());
+        return new SyncMissingResult(scannedPages, fetched, inserted, noInsertStreak, errors, queue);
+    }
+
+    /**
+     * 失败页重试队列（按页码升序）。
+     */
+    public List<SsqCrawlFailureRepository.FailedPage> failedPages(int limit) {
+        return crawlScheduler.queued(limit);
+    }
+
+    /**
+     * 持有同步锁执行 task；其他写开奖表的入口（如离线导入）也走这里，避免与同步交错修正 repeat_prev。
+     */
+    public <T> T runExclusive(String mode, Supplier<T> task) {
+        if (!running.tryLock()) {
+            meterRegistry.counter("ssq.sync.rejected", "mode", mode).increment();
+            throw new SyncInProgressException();
+        }
+        try {
+            return task.get();
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private int insert(List<SsqDraw> page) {
+        int n = 0;
+        for (SsqDraw draw : page) {
+            n += repository.upsertIgnore(draw);
+        }
+        return n;
+    }
+
+    private void record(Timer.Sample sample, String mode, int fetched, int inserted, int errors) {
+        sample.stop(meterRegistry.timer("ssq.sync", "mode", mode));
+        meterRegistry.summary("ssq.sync.fetched", "mode", mode).record(fetched);
+        meterRegistry.summary("ssq.sync.inserted", "mode", mode).record(inserted);
+        if (errors > 0) {
+            meterRegistry.counter("ssq.sync.page.errors", "mode", mode).increment(errors);
+        }
+    }
+
+    /**
+     * 已有同步在执行。
+     */
+    public static class SyncInProgressException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        public SyncInProgressException() {
+            super("已有同步或导入正在执行，请稍后再试");
+        }
+    }
+
+    /**
+     * 逐页进度回调（每处理完一页调用一次，失败页也会回调）。
+     */
+    public interface ProgressListener {
+        ProgressListener NONE = (page, pagesDone, pagesTotal, fetched, inserted, errors) -> {
+        };
+
+        void onPage(int page, int pagesDone, int pagesTotal, int fetched, int inserted, int errors);
     }
 
     public static class SyncResult {
@@ -85,13 +210,16 @@ public class SsqSyncService {
         private int fetched;
         private int inserted;
         private List<String> errors;
+        private SsqCrawlScheduler.QueueResult retryQueue;
 
-        public SyncResult(int fromPage, int toPage, int fetched, int inserted, List<String> errors) {
+        public SyncResult(int fromPage, int toPage, int fetched, int inserted, List<String> errors,
+                          SsqCrawlScheduler.QueueResult retryQueue) {
             this.fromPage = fromPage;
             this.toPage = toPage;
             this.fetched = fetched;
             this.inserted = inserted;
             this.errors = errors;
+            this.retryQueue = retryQueue;
         }
 
         public int getFromPage() {
@@ -113,6 +241,21 @@ public class SsqSyncService {
         public List<String> getErrors() {
             return errors;
         }
+
+        public SsqCrawlScheduler.QueueResult getRetryQueue() {
+            return retryQueue;
+        }
+
+        public Map<String, Object> asMap() {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("fromPage", fromPage);
+            m.put("toPage", toPage);
+            m.put("fetched", fetched);
+            m.put("inserted", inserted);
+            m.put("errors", errors);
+            m.put("retryQueue", retryQueue.asMap());
+            return m;
+        }
     }
 
     public static class SyncMissingResult {
@@ -121,13 +264,16 @@ public class SsqSyncService {
         private int inserted;
         private int stopAfterNoInsertPages;
         private List<String> errors;
+        private SsqCrawlScheduler.QueueResult retryQueue;
 
-        public SyncMissingResult(int scannedPages, int fetched, int inserted, int stopAfterNoInsertPages, List<String> errors) {
+        public SyncMissingResult(int scannedPages, int fetched, int inserted, int stopAfterNoInsertPages, List<String> errors,
+                                 SsqCrawlScheduler.QueueResult retryQueue) {
             this.scannedPages = scannedPages;
             this.fetched = fetched;
             this.inserted = inserted;
             this.stopAfterNoInsertPages = stopAfterNoInsertPages;
             this.errors = errors;
+            this.retryQueue = retryQueue;
         }
 
         public int getScannedPages() {
@@ -149,5 +295,20 @@ public class SsqSyncService {
         public List<String> getErrors() {
             return errors;
         }
+
+        public SsqCrawlScheduler.QueueResult getRetryQueue() {
+            return retryQueue;
+        }
+
+        public Map<String, Object> asMap() {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("scannedPages", scannedPages);
+            m.put("fetched", fetched);
+            m.put("inserted", inserted);
+            m.put("stopAfterNoInsertPages", stopAfterNoInsertPages);
+            m.put("errors", errors);
+            m.put("retryQueue", retryQueue.asMap());
+            return m;
+        }
     }
 }
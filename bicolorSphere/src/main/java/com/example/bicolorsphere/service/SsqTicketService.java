@@ -0,0 +1,348 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+import com.example.bicolorsphere.repo.SsqDrawRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 批量兑奖：逐行读入票（不整体缓冲请求体），转成红球位图 + 蓝球位图，对每个开奖期做 AND + popcount 查表得奖级。
+ * <p>
+ * 每行一注，格式如 {@code 01 02 03 04 05 06 + 07}、{@code 1,2,3,4,5,6|7} 或 7 个数字（最后一个为蓝球）；
+ * 空行与 {@code #} 开头的行忽略。
+ */
+@Service
+public class SsqTicketService {
+
+    public static final String DETAILS_ALL = "all";
+    public static final String DETAILS_WINNERS = "winners";
+    public static final String DETAILS_NONE = "none";
+
+    /**
+     * 固定奖金（元），一、二等奖为浮动奖金不计入。
+     */
+    private static final int[] FIXED_PRIZE = {0, 0, 0, 3000, 200, 10, 5};
+    private static final int[] TIER_BY_OUTCOME = new int[14];
+    private static final int MAX_INVALID_REPORTED = 100;
+
+    static {
+        for (int r = 0; r <= 6; r++) {
+            TIER_BY_OUTCOME[r * 2] = SsqBitmask.prizeLevel(r, false);
+            TIER_BY_OUTCOME[r * 2 + 1] = SsqBitmask.prizeLevel(r, true);
+        }
+    }
+
+    private final SsqDrawRepository drawRepository;
+    private final SsqDrawHistory history;
+    private final MeterRegistry meterRegistry;
+    private final int maxTickets;
+    private final int maxDetails;
+
+    public SsqTicketService(SsqDrawRepository drawRepository,
+                            SsqDrawHistory history,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.ssq.tickets.maxTickets:500000}") int maxTickets,
+                            @Value("${app.ssq.tickets.maxDetails:5000}") int maxDetails) {
+        this.drawRepository = drawRepository;
+        this.history = history;
+        this.meterRegistry = meterRegistry;
+        this.maxTickets = Math.max(1, maxTickets);
+        this.maxDetails = Math.max(0, maxDetails);
+    }
+
+    /**
+     * @param drawNos 为空时按最新一期兑奖
+     * @param details all：逐票返回奖级；winners：只返回中奖票；none：只返回汇总
+     */
+    public Map<String, Object> check(Reader body, List<String> drawNos, String details) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long t0 = System.currentTimeMillis();
+        TicketBatch batch = TicketBatch.read(body, maxTickets);
+
+        List<SsqDraw> draws = new ArrayList<SsqDraw>();
+        List<String> notFound = new ArrayList<String>();
+        resolveDraws(drawNos, draws, notFound);
+
+        int n = batch.size;
+        int[][] tiers = new int[draws.size()][];
+        List<Map<String, Object>> drawSummaries = new ArrayList<Map<String, Object>>();
+        for (int d = 0; d < draws.size(); d++) {
+            SsqDraw draw = draws.get(d);
+            tiers[d] = new int[n];
+            long[] counts = new long[7];
+            evaluate(batch.reds, batch.blues, n, SsqBitmask.redMask(draw.getReds()), SsqBitmask.blueBit(draw.getBlue()), tiers[d], counts);
+            drawSummaries.add(drawSummary(draw, counts, n));
+        }
+
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+        boolean truncated = false;
+        if (!DETAILS_NONE.equalsIgnoreCase(details)) {
+            boolean winnersOnly = !DETAILS_ALL.equalsIgnoreCase(details);
+            for (int i = 0; i < n; i++) {
+                boolean won = false;
+                for (int d = 0; d < draws.size() && !won; d++) {
+                    won = tiers[d][i] > 0;
+                }
+                if (winnersOnly && !won) continue;
+                if (results.size() >= maxDetails) {
+                    truncated = true;
+                    break;
+                }
+                int[] ticketTiers = new int[draws.size()];
+                for (int d = 0; d < draws.size(); d++) {
+                    ticketTiers[d] = tiers[d][i];
+                }
+                results.add(map(
+                        "line", batch.lines[i],
+                        "red", SsqBitmask.toList(batch.reds[i]),
+                        "blue", Integer.numberOfTrailingZeros(batch.blues[i]),
+                        "tiers", ticketTiers
+                ));
+            }
+        }
+
+        sample.stop(meterRegistry.timer("ssq.tickets.check"));
+        meterRegistry.summary("ssq.tickets.checked").record((double) n * draws.size());
+
+        return map(
+                "tickets", n,
+                "tooMany", batch.tooMany,
+                "invalidCount", batch.invalidCount,
+                "invalid", batch.invalid,
+                "draws", drawSummaries,
+                "notFound", notFound,
+                "results", results,
+                "resultsTruncated", truncated,
+                "elapsedMs", System.currentTimeMillis() - t0
+        );
+    }
+
+    /**
+     * 复式/胆拖兑奖：不展开单注，按胆码、拖码与开奖号码的重叠数直接组合计数。danReds 为空即复式。
+     *
+     * @param danReds 胆码（最多 5 个）
+     * @param reds    拖码（复式时为全部红球）
+     * @param drawNos 为空时按最新一期兑奖
+     */
+    public Map<String, Object> checkCompound(Set<Integer> danReds, Set<Integer> reds, Set<Integer> blues, List<String> drawNos) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long danMask = SsqBitmask.redMask(danReds);
+        long tuoMask = SsqBitmask.redMask(reds);
+        int blueMask = SsqBitmask.blueMask(blues);
+        int dan = Long.bitCount(danMask);
+        int tuo = Long.bitCount(tuoMask);
+
+        String error = null;
+        if (tuo == 0) {
+            error = "缺少红球（拖码）";
+        } else if (blueMask == 0) {
+            error = "缺少蓝球";
+        } else if (dan > 5) {
+            error = "胆码最多 5 个";
+        } else if ((danMask & tuoMask) != 0) {
+            error = "胆码与拖码重复: " + SsqBitmask.toList(danMask & tuoMask);
+        } else if (dan + tuo < 6) {
+            error = "红球（胆码+拖码）不足 6 个";
+        }
+        if (error != null) {
+            return map("danReds", SsqBitmask.toList(danMask), "reds", SsqBitmask.toList(tuoMask),
+                    "blues", SsqBitmask.toList(blueMask), "error", error);
+        }
+
+        long bets = SsqCombinatorics.binomial(tuo, 6 - dan) * Integer.bitCount(blueMask);
+        List<SsqDraw> draws = new ArrayList<SsqDraw>();
+        List<String> notFound = new ArrayList<String>();
+        resolveDraws(drawNos, draws, notFound);
+
+        List<Map<String, Object>> drawSummaries = new ArrayList<Map<String, Object>>();
+        for (SsqDraw draw : draws) {
+            long[] counts = compoundTierCounts(danMask, tuoMask, blueMask,
+                    SsqBitmask.redMask(draw.getReds()), SsqBitmask.blueBit(draw.getBlue()));
+            drawSummaries.add(drawSummary(draw, counts, bets));
+        }
+        sample.stop(meterRegistry.timer("ssq.tickets.compound"));
+
+        return map(
+                "type", dan > 0 ? "dantuo" : (bets == 1 ? "single" : "compound"),
+                "danReds", SsqBitmask.toList(danMask),
+                "reds", SsqBitmask.toList(tuoMask),
+                "blues", SsqBitmask.toList(blueMask),
+                "bets", bets,
+                "cost", bets * 2,
+                "draws", drawSummaries,
+                "notFound", notFound
+        );
+    }
+
+    /**
+     * 各奖级中奖注数（下标为奖级，0 为未中奖注数）：拖码中恰好选中 j 个开奖红球的单注有 C(th, j)·C(tm, k-j) 注，
+     * 再乘以蓝球命中/未命中的个数。
+     */
+    static long[] compoundTierCounts(long danMask, long tuoMask, int blueMask, long drawRed, int drawBlue) {
+        long[] counts = new long[7];
+        int k = 6 - Long.bitCount(danMask);
+        int dh = Long.bitCount(danMask & drawRed);
+        int th = Long.bitCount(tuoMask & drawRed);
+        int tm = Long.bitCount(tuoMask) - th;
+        long blueHit = (blueMask & drawBlue) != 0 ? 1 : 0;
+        long blueMiss = Integer.bitCount(blueMask) - blueHit;
+        for (int j = Math.max(0, k - tm); j <= Math.min(k, th); j++) {
+            long ways = SsqCombinatorics.binomial(th, j) * SsqCombinatorics.binomial(tm, k - j);
+            counts[TIER_BY_OUTCOME[(dh + j) * 2 + 1]] += ways * blueHit;
+            counts[TIER_BY_OUTCOME[(dh + j) * 2]] += ways * blueMiss;
+        }
+        return counts;
+    }
+
+    /**
+     * 核心循环：每注一次 AND + popcount + 查表，counts[奖级] 累加（0 为未中奖）。
+     */
+    static void evaluate(long[] reds, int[] blues, int n, long drawRed, int drawBlue, int[] outTiers, long[] counts) {
+        for (int i = 0; i < n; i++) {
+            int outcome = (Long.bitCount(reds[i] & drawRed) << 1) | ((blues[i] & drawBlue) != 0 ? 1 : 0);
+            int tier = TIER_BY_OUTCOME[outcome];
+            outTiers[i] = tier;
+            counts[tier]++;
+        }
+    }
+
+    private void resolveDraws(List<String> drawNos, List<SsqDraw> draws, List<String> notFound) {
+        if (drawNos == null || drawNos.isEmpty()) {
+            draws.addAll(history.latest(1));
+            return;
+        }
+        for (String no : drawNos) {
+            Optional<SsqDraw> d = no == null || no.trim().isEmpty() ? Optional.<SsqDraw>empty() : drawRepository.findByDrawNo(no.trim());
+            if (d.isPresent()) {
+                draws.add(d.get());
+            } else {
+                notFound.add(no);
+            }
+        }
+    }
+
+    private static Map<String, Object> drawSummary(SsqDraw draw, long[] counts, long total) {
+        Map<String, Object> tierCounts = new LinkedHashMap<String, Object>();
+        long fixedPrize = 0;
+        for (int t = 1; t <= 6; t++) {
+            tierCounts.put(String.valueOf(t), counts[t]);
+            fixedPrize += counts[t] * FIXED_PRIZE[t];
+        }
+        return map(
+                "drawNo", draw.getDrawNo(),
+                "red", draw.getReds(),
+                "blue", draw.getBlue(),
+                "tierCounts", tierCounts,
+                "winners", total - counts[0],
+                "fixedPrize", fixedPrize
+        );
+    }
+
+    /**
+     * 解析后的票：红球/蓝球位图 + 原始行号，数组按需扩容。
+     */
+    static final class TicketBatch {
+        long[] reds = new long[1024];
+        int[] blues = new int[1024];
+        int[] lines = new int[1024];
+        int size;
+        int invalidCount;
+        boolean tooMany;
+        final List<Map<String, Object>> invalid = new ArrayList<Map<String, Object>>();
+
+        static TicketBatch read(Reader body, int maxTickets) throws IOException {
+            TicketBatch b = new TicketBatch();
+            BufferedReader reader = body instanceof BufferedReader ? (BufferedReader) body : new BufferedReader(body, 64 * 1024);
+            int[] nums = new int[64];
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (b.size >= maxTickets) {
+                    b.tooMany = true;
+                    break;
+                }
+                String error = b.parseLine(line, lineNo, nums);
+                if (error == null || error.isEmpty()) continue;
+                b.invalidCount++;
+                if (b.invalid.size() < MAX_INVALID_REPORTED) {
+                    b.invalid.add(map("line", lineNo, "text", line.length() > 80 ? line.substring(0, 80) : line, "error", error));
+                }
+            }
+            return b;
+        }
+
+        /**
+         * @return null 表示已加入；空串表示空行/注释；否则为错误原因
+         */
+        private String parseLine(String line, int lineNo, int[] nums) {
+            int count = 0;
+            int split = -1;
+            int cur = -1;
+            for (int i = 0, len = line.length(); i <= len; i++) {
+                char c = i < len ? line.charAt(i) : ' ';
+                if (c >= '0' && c <= '9') {
+                    cur = (cur < 0 ? 0 : cur * 10) + (c - '0');
+                    if (cur > 99) return "号码超出范围";
+                    continue;
+                }
+                if (cur >= 0) {
+                    if (count == nums.length) return "号码过多";
+                    nums[count++] = cur;
+                    cur = -1;
+                }
+                if (c == '#' && count == 0) return "";
+                if (c == '+' || c == '|' || c == ':') {
+                    if (split >= 0) return "分隔符重复";
+                    split = count;
+                }
+            }
+            if (count == 0) return "";
+            if (split < 0) {
+                if (count != 7) return "需要 6 个红球 + 1 个蓝球";
+                split = 6;
+            }
+
+            long red = 0L;
+            for (int i = 0; i < split; i++) {
+                int v = nums[i];
+                if (v < 1 || v > 33) return "红球超出 1~33: " + v;
+                red |= 1L << v;
+            }
+            int blue = 0;
+            for (int i = split; i < count; i++) {
+                int v = nums[i];
+                if (v < 1 || v > 16) return "蓝球超出 1~16: " + v;
+                blue |= 1 << v;
+            }
+            if (Long.bitCount(red) != split) return "红球重复";
+            if (Long.bitCount(red) != 6 || Integer.bitCount(blue) != 1 || count - split != 1) {
+                return "需要 6 个红球 + 1 个蓝球";
+            }
+            add(red, blue, lineNo);
+            return null;
+        }
+
+        void add(long red, int blue, int lineNo) {
+            if (size == reds.length) {
+                int cap = size * 2;
+                reds = Arrays.copyOf(reds, cap);
+                blues = Arrays.copyOf(blues, cap);
+                lines = Arrays.copyOf(lines, cap);
+            }
+            reds[size] = red;
+            blues[size] = blue;
+            lines[size] = lineNo;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.bicolorsphere.service;
+
+import com.example.bicolorsphere.domain.SsqDraw;
+
+import java.util.*;
+
+/**
+ * 相邻期转移计数（红球 34×34、蓝球 17×17，平铺存放），供 markov / ml 策略使用。
+ * <p>
+ * 第 t 个转移为第 t-1 期 → 第 t 期；每 {@link #CHECKPOINT} 个转移存一份前缀计数，
+ * 任意连续窗口的转移矩阵 = 前缀(终点) − 前缀(起点)，再补上不足一个检查点的零头，代价与窗口长度无关。
+ * 新数据入库后若旧快照是新快照的前缀则只追加新转移（每期 36 次红球 + 1 次蓝球累加），见 {@link #extend(List)}。
+ * <p>
+ * 另按上一期的形态桶（{@link #bucketOf(SsqDraw)}，每期只算一次）记录“该桶之后一期”的号码计数，供 bayes 策略使用：
+ * 每个桶按转移顺序存一份前缀计数，窗口内某桶的计数 = 两次二分定位后的前缀差，O(33)。
+ */
+public final class SsqTransitions {
+
+    static final int CHECKPOINT = 16;
+    /**
+     * 形态桶：和值/30、跨度/5、奇数个数、三区个数各取 0~6。
+     */
+    static final int BUCKETS = 7 * 7 * 7 * 7;
+    private static final int RED = 34;
+    private static final int BLUE = 17;
+
+    private final SsqDraw[] draws;
+    private final long[] reds;
+    private final int[] blues;
+    private final Map<String, Integer> indexByDrawNo;
+    /**
+     * 第 c 个元素为第 [1, c*CHECKPOINT) 个转移的计数，只追加、数组本身不再修改，可在新旧结构间共享。
+     */
+    private final List<int[]> redCheckpoints;
+    private final List<int[]> blueCheckpoints;
+    private final BucketTable buckets;
+
+    private SsqTransitions(SsqDraw[] draws, long[] reds, int[] blues, Map<String, Integer> indexByDrawNo,
+                           List<int[]> redCheckpoints, List<int[]> blueCheckpoints, BucketTable buckets) {
+        this.draws = draws;
+        this.reds = reds;
+        this.blues = blues;
+        this.indexByDrawNo = indexByDrawNo;
+        this.redCheckpoints = redCheckpoints;
+        this.blueCheckpoints = blueCheckpoints;
+        this.buckets = buckets;
+    }
+
+    static SsqTransitions build(List<SsqDraw> ordered) {
+        return append(new SsqDraw[0], new long[0], new int[0], new HashMap<String, Integer>(),
+                new ArrayList<int[]>(), new ArrayList<int[]>(), new BucketTable(), ordered, 0);
+    }
+
+    /**
+     * 旧结构的所有期与 ordered 的前缀逐期一致（期号、红球、蓝球）时只追加新期，否则全量重建。
+     */
+    SsqTransitions extend(List<SsqDraw> ordered) {
+        int m = draws.length;
+        if (ordered.size() < m) {
+            return build(ordered);
+        }
+        for (int i = 0; i < m; i++) {
+            SsqDraw d = ordered.get(i);
+            if (!Objects.equals(draws[i].getDrawNo(), d.getDrawNo())
+                    || reds[i] != SsqBitmask.redMask(d.getReds()) || blues[i] != d.getBlue()) {
+                return build(ordered);
+            }
+        }
+        if (ordered.size() == m) {
+            return this;
+        }
+        return append(draws, reds, blues, new HashMap<String, Integer>(indexByDrawNo),
+                new ArrayList<int[]>(redCheckpoints), new ArrayList<int[]>(blueCheckpoints), buckets.copy(), ordered, m);
+    }
+
+    private static SsqTransitions append(SsqDraw[] oldDraws, long[] oldReds, int[] oldBlues, Map<String, Integer> index,
+                                         List<int[]> redCps, List<int[]> blueCps, BucketTable buckets,
+                                         List<SsqDraw> ordered, int from) {
+        int n = ordered.size();
+        SsqDraw[] draws = Arrays.copyOf(oldDraws, n);
+        long[] reds = Arrays.copyOf(oldReds, n);
+        int[] blues = Arrays.copyOf(oldBlues, n);
+        for (int i = from; i < n; i++) {
+            SsqDraw d = ordered.get(i);
+            draws[i] = d;
+            reds[i] = SsqBitmask.redMask(d.getReds());
+            blues[i] = d.getBlue();
+            index.put(d.getDrawNo(), i);
+            buckets.append(i, d, i == 0 ? null : ordered.get(i - 1));
+        }
+        // 续上最后一个检查点之后的计数，再按需补检查点
+        int lastCp = redCps.size() - 1;
+        int[] red = lastCp < 0 ? new int[RED * RED] : redCps.get(lastCp).clone();
+        int[] blue = lastCp < 0 ? new int[BLUE * BLUE] : blueCps.get(lastCp).clone();
+        int t = lastCp < 0 ? 0 : lastCp * CHECKPOINT;
+        for (; t <= n; t++) {
+            if (t % CHECKPOINT == 0 && t / CHECKPOINT >= redCps.size()) {
+                redCps.add(red.clone());
+                blueCps.add(blue.clone());
+            }
+            if (t >= 1 && t < n) {
+                addRed(red, reds[t - 1], reds[t], 1);
+                addBlue(blue, blues[t - 1], blues[t], 1);
+            }
+        }
+        return new SsqTransitions(draws, reds, blues, index, redCps, blueCps, buckets);
+    }
+
+    public int size() {
+        return draws.length;
+    }
+
+    /**
+     * window 是本结构的一段连续区间（同一批 SsqDraw 对象、按期号升序）时返回其起点下标，否则 -1。
+     */
+    int locate(List<SsqDraw> window) {
+        if (window == null || window.isEmpty()) return -1;
+        SsqDraw first = window.get(0);
+        Integer s = first == null ? null : indexByDrawNo.get(first.getDrawNo());
+        if (s == null) return -1;
+        int e = s + window.size() - 1;
+        return e < draws.length && draws[s] == first && draws[e] == window.get(window.size() - 1) ? s : -1;
+    }
+
+    /**
+     * 第 [s, e) 期内相邻期的红球转移矩阵 trans[a][b]，与逐期累加结果相同。
+     */
+    int[][] redMatrix(int s, int e) {
+        int[][] out = new int[RED][RED];
+        if (e - s < 2) return out;
+        int ce = e / CHECKPOINT;
+        int cs = (s + 1) / CHECKPOINT;
+        int[] pe = redCheckpoints.get(ce);
+        int[] ps = redCheckpoints.get(cs);
+        for (int a = 1; a < RED; a++) {
+            int base = a * RED;
+            for (int b = 1; b < RED; b++) {
+                out[a][b] = pe[base + b] - ps[base + b];
+            }
+        }
+        for (int t = Math.max(1, ce * CHECKPOINT); t < e; t++) {
+            addRed(out, reds[t - 1], reds[t], 1);
+        }
+        for (int t = Math.max(1, cs * CHECKPOINT); t < s + 1; t++) {
+            addRed(out, reds[t - 1], reds[t], -1);
+        }
+        return out;
+    }
+
+    /**
+     * 第 [s, e) 期内蓝球从 from 转移到各蓝球的次数（下标 1~16）。
+     */
+    int[] blueRow(int s, int e, int from) {
+        int[] out = new int[BLUE];
+        if (e - s < 2 || from < 1 || from > 16) return out;
+        int ce = e / CHECKPOINT;
+        int cs = (s + 1) / CHECKPOINT;
+        int[] pe = blueCheckpoints.get(ce);
+        int[] ps = blueCheckpoints.get(cs);
+        for (int b = 1; b < BLUE; b++) {
+            out[b] = pe[from * BLUE + b] - ps[from * BLUE + b];
+        }
+        for (int t = Math.max(1, ce * CHECKPOINT); t < e; t++) {
+            if (blues[t - 1] == from && blues[t] >= 1 && blues[t] <= 16) out[blues[t]]++;
+        }
+        for (int t = Math.max(1, cs * CHECKPOINT); t < s + 1; t++) {
+            if (blues[t - 1] == from && blues[t] >= 1 && blues[t] <= 16) out[blues[t]]--;
+        }
+        return out;
+    }
+
+    /**
+     * 第 [s, e) 期内，上一期形态桶为 bucket 的各转移中下一期红球的出现次数（下标 1~33）。
+     */
+    int[] bucketRedCounts(int s, int e, int bucket) {
+        return buckets.counts(s, e, bucket, false);
+    }
+
+    int[] bucketBlueCounts(int s, int e, int bucket) {
+        return buckets.counts(s, e, bucket, true);
+    }
+
+    /**
+     * 形态桶编号 [0, {@link #BUCKETS})；红球不足 6 个时为 0。
+     */
+    static int bucketOf(SsqDraw d) {
+        if (d == null || d.getReds() == null || d.getReds().size() != 6) return 0;
+        int sum = 0;
+        int odd = 0;
+        int z3 = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (Integer r : d.getReds()) {
+            int v = r == null ? 0 : r;
+            sum += v;
+            if ((v & 1) == 1) odd++;
+            if (v > 22) z3++;
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        int sumB = Math.min(6, Math.max(0, sum / 30));
+        int spanB = Math.min(6, Math.max(0, (max - min) / 5));
+        return ((sumB * 7 + spanB) * 7 + Math.min(6, odd)) * 7 + Math.min(6, z3);
+    }
+
+    /**
+     * 每个形态桶一条按转移顺序递增的列表：转移编号 + 下一期号码计数的前缀和（红 34 格、蓝 17 格一行）。
+     * 扩展时只复制被追加的桶（写时复制），旧结构继续可读。
+     */
+    private static final class BucketTable {
+        private final int[] len;
+        private final int[][] ids;
+        private final int[][] redPrefix;
+        private final int[][] bluePrefix;
+        private final boolean[] owned;
+
+        BucketTable() {
+            this(new int[BUCKETS], new int[BUCKETS][], new int[BUCKETS][], new int[BUCKETS][]);
+            Arrays.fill(owned, true);
+        }
+
+        private BucketTable(int[] len, int[][] ids, int[][] redPrefix, int[][] bluePrefix) {
+            this.len = len;
+            this.ids = ids;
+            this.redPrefix = redPrefix;
+            this.bluePrefix = bluePrefix;
+            this.owned = new boolean[BUCKETS];
+        }
+
+        BucketTable copy() {
+            return new BucketTable(len.clone(), ids.clone(), redPrefix.clone(), bluePrefix.clone());
+        }
+
+        /**
+         * 追加第 t 个转移（prev → next）；t == 0 时没有上一期，什么也不做。
+         */
+        void append(int t, SsqDraw next, SsqDraw prev) {
+            if (prev == null) return;
+            int b = bucketOf(prev);
+            int n = len[b];
+            if (!owned[b] || ids[b] == null || n == ids[b].length) {
+                int cap = ids[b] == null ? 8 : (n == ids[b].length ? n * 2 : ids[b].length);
+                ids[b] = ids[b] == null ? new int[cap] : Arrays.copyOf(ids[b], cap);
+                redPrefix[b] = redPrefix[b] == null ? new int[(cap + 1) * RED] : Arrays.copyOf(redPrefix[b], (cap + 1) * RED);
+                bluePrefix[b] = bluePrefix[b] == null ? new int[(cap + 1) * BLUE] : Arrays.copyOf(bluePrefix[b], (cap + 1) * BLUE);
+                owned[b] = true;
+            }
+            ids[b][n] = t;
+            int[] rp = redPrefix[b];
+            System.arraycopy(rp, n * RED, rp, (n + 1) * RED, RED);
+            for (Integer r : next.getReds()) {
+                if (r != null && r >= 1 && r <= 33) rp[(n + 1) * RED + r]++;
+            }
+            int[] bp = bluePrefix[b];
+            System.arraycopy(bp, n * BLUE, bp, (n + 1) * BLUE, BLUE);
+            int blue = next.getBlue();
+            if (blue >= 1 && blue <= 16) bp[(n + 1) * BLUE + blue]++;
+            len[b] = n + 1;
+        }
+
+        int[] counts(int s, int e, int bucket, boolean blue) {
+            int width = blue ? BLUE : RED;
+            int[] out = new int[width];
+            if (bucket < 0 || bucket >= BUCKETS || ids[bucket] == null) return out;
+            // 窗口内的转移编号为 [s+1, e)
+            int j1 = lowerBound(ids[bucket], len[bucket], s + 1);
+            int j2 = lowerBound(ids[bucket], len[bucket], e);
+            int[] p = blue ? bluePrefix[bucket] : redPrefix[bucket];
+            for (int v = 1; v < width; v++) {
+                out[v] = p[j2 * width + v] - p[j1 * width + v];
+            }
+            return out;
+        }
+
+        private static int lowerBound(int[] a, int n, int key) {
+            int lo = 0;
+            int hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (a[mid] < key) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private static void addRed(int[] cells, long prev, long next, int sign) {
+        for (long a = prev & SsqBitmask.ALL_REDS; a != 0; a &= a - 1) {
+            int base = Long.numberOfTrailingZeros(a) * RED;
+            for (long b = next & SsqBitmask.ALL_REDS; b != 0; b &= b - 1) {
+                cells[base + Long.numberOfTrailingZeros(b)] += sign;
+            }
+        }
+    }
+
+    private static void addRed(int[][] m, long prev, long next, int sign) {
+        for (long a = prev & SsqBitmask.ALL_REDS; a != 0; a &= a - 1) {
+            int[] row = m[Long.numberOfTrailingZeros(a)];
+            for (long b = next & SsqBitmask.ALL_REDS; b != 0; b &= b - 1) {
+                row[Long.numberOfTrailingZeros(b)] += sign;
+            }
+        }
+    }
+
+    private static void addBlue(int[] cells, int prev, int next, int sign) {
+        if (prev >= 1 && prev <= 16 && next >= 1 && next <= 16) {
+            cells[prev * BLUE + next] += sign;
+        }
+    }
+}
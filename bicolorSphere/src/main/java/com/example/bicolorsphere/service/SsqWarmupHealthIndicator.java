@@ -0,0 +1,27 @@
+package com.example.bicolorsphere.service;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * /actuator/health/readiness 中的 ssqWarmup：预热进行中为 OUT_OF_SERVICE，负载均衡据此暂不导流。
+ */
+@Component
+public class SsqWarmupHealthIndicator implements HealthIndicator {
+
+    private final SsqWarmupService warmupService;
+
+    public SsqWarmupHealthIndicator(SsqWarmupService warmupService) {
+        this.warmupService = warmupService;
+    }
+
+    @Override
+    public Health health() {
+        String state = warmupService.getState();
+        if (SsqWarmupService.STATE_PENDING.equals(state) || SsqWarmupService.STATE_RUNNING.equals(state)) {
+            return Health.outOfService().withDetails(warmupService.details()).build();
+        }
+        return Health.up().withDetails(warmupService.details()).build();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.bicolorsphere.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.example.bicolorsphere.service.SsqMaps.map;
+
+/**
+ * 启动预热（默认关闭）：应用就绪后在后台线程加载全量历史并建好组合索引、共现与转移检查点，调好默认窗口的 ml 融合权重、
+ * 把各策略跑一遍让 JIT 编译热点，并让 recommend 的各候选在持久化回测中就位；完成前健康检查 ssqWarmup 为 OUT_OF_SERVICE。
+ */
+@Service
+public class SsqWarmupService {
+
+    private static final Logger log = LoggerFactory.getLogger(SsqWarmupService.class);
+
+    public static final String STATE_DISABLED = "DISABLED";
+    public static final String STATE_PENDING = "PENDING";
+    public static final String STATE_RUNNING = "RUNNING";
+    public static final String STATE_READY = "READY";
+    public static final String STATE_FAILED = "FAILED";
+
+    private final boolean enabled;
+    private final int[] latestNs;
+    private final int rounds;
+    private final boolean recommend;
+    private final int recommendTrainWindow;
+    private final int recommendTestCount;
+    private final SsqDrawHistory history;
+    private final SsqStatsService statsService;
+    private final SsqBacktestStoreService backtestStore;
+
+    private volatile String state;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+    private final Map<String, Object> steps = new LinkedHashMap<String, Object>();
+
+    public SsqWarmupService(
+            @Value("${app.ssq.warmup.enabled:false}") boolean enabled,
+            @Value("${app.ssq.warmup.latestNs:200,300}") int[] latestNs,
+            @Value("${app.ssq.warmup.rounds:50}") int rounds,
+            @Value("${app.ssq.warmup.recommend:true}") boolean recommend,
+            @Value("${app.ssq.warmup.recommendTrainWindow:200}") int recommendTrainWindow,
+            @Value("${app.ssq.warmup.recommendTestCount:80}") int recommendTestCount,
+            SsqDrawHistory history,
+            SsqStatsService statsService,
+            SsqBacktestStoreService backtestStore
+    ) {
+        this.enabled = enabled;
+        this.latestNs = latestNs;
+        this.rounds = Math.max(1, rounds);
+        this.recommend = recommend;
+        this.recommendTrainWindow = recommendTrainWindow;
+        this.recommendTestCount = recommendTestCount;
+        this.history = history;
+        this.statsService = statsService;
+        this.backtestStore = backtestStore;
+        this.state = enabled ? STATE_PENDING : STATE_DISABLED;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!enabled) {
+            return;
+        }
+        Thread t = new Thread(this::run, "ssq-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    void run() {
+        state = STATE_RUNNING;
+        startedAt = System.currentTimeMillis();
+        try {
+            long t0 = System.currentTimeMillis();
+            SsqDrawHistory.Snapshot snapshot = history.reload();
+            step("history", map("draws", snapshot.size(), "ms", System.currentTimeMillis() - t0));
+
+            // 派生索引都是首个查询时才按需构建，这里在同一快照上建好，之后的 lookup / similar / cooccurrence 直接命中
+            t0 = System.currentTimeMillis();
+            int combos = snapshot.comboIndex().size();
+            step("comboIndex", map("draws", combos, "ms", System.currentTimeMillis() - t0));
+
+            t0 = System.currentTimeMillis();
+            int cooccur = snapshot.cooccurrence().size();
+            step("cooccurrence", map("draws", cooccur, "ms", System.currentTimeMillis() - t0));
+
+            t0 = System.currentTimeMillis();
+            int transitions = snapshot.transitions().size();
+            step("transitions", map("draws", transitions, "ms", System.currentTimeMillis() - t0));
+
+            t0 = System.currentTimeMillis();
+            Map<String, Object> w = statsService.warmUp(latestNs, rounds);
+            w.put("ms", System.currentTimeMillis() - t0);
+            step("strategies", w);
+
+            if (recommend) {
+                t0 = System.currentTimeMillis();
+                backtestStore.recommend(recommendTrainWindow, recommendTestCount, null);
+                step("recommend", map("ms", System.currentTimeMillis() - t0));
+            }
+            state = STATE_READY;
+        } catch (Exception e) {
+            // 预热失败不影响服务可用，只是首个请求会慢；健康检查仍放行
+            error = e.getMessage();
+            state = STATE_FAILED;
+            log.warn("warm-up failed", e);
+        } finally {
+            finishedAt = System.currentTimeMillis();
+        }
+        log.info("warm-up {} in {} ms: {}", state, finishedAt - startedAt, steps);
+    }
+
+    private void step(String name, Object detail) {
+        synchronized (steps) {
+            steps.put(name, detail);
+        }
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public Map<String, Object> details() {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        m.put("state", state);
+        if (startedAt > 0) {
+            m.put("elapsedMs", (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt);
+        }
+        synchronized (steps) {
+            m.put("steps", new LinkedHashMap<String, Object>(steps));
+        }
+        if (error != null) {
+            m.put("error", error);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.bicolorsphere.service;
+
+import java.util.Random;
+
+/**
+ * 不放回加权抽样：树状数组（Fenwick）维护前缀和，每次抽取/移除 O(log n)，缓冲区可复用，抽样过程不分配对象。
+ * <p>
+ * 权重公式与原实现一致：1 + cnt*3 + min(50, miss)；同一个随机数落在与原来线性扫描完全相同的号码上，
+ * 因此在相同随机序列下结果逐位一致。非线程安全，按线程复用（见 {@link #local()}）。
+ */
+final class WeightedSampler {
+
+    private static final ThreadLocal<WeightedSampler> LOCAL = ThreadLocal.withInitial(() -> new WeightedSampler(64));
+
+    private long[] tree;
+    private long[] weight;
+    private int from;
+    private int n;
+    private int topBit;
+    private long total;
+
+    WeightedSampler(int capacity) {
+        tree = new long[capacity + 1];
+        weight = new long[capacity + 1];
+    }
+
+    static WeightedSampler local() {
+        return LOCAL.get();
+    }
+
+    static long weight(int cnt, int miss) {
+        return Math.max(0L, 1L + cnt * 3L + Math.min(50, miss));
+    }
+
+    /**
+     * 以 [from, to] 内各号码的权重建树，O(n)。
+     */
+    WeightedSampler reset(int[] cnt, int[] miss, int from, int to) {
+        int size = Math.max(0, to - from + 1);
+        if (size + 1 > tree.length) {
+            tree = new long[size + 1];
+            weight = new long[size + 1];
+        }
+        this.from = from;
+        this.n = size;
+        this.total = 0;
+        for (int i = 1; i <= size; i++) {
+            int v = from + i - 1;
+            long w = weight(cnt[v], miss[v]);
+            weight[i] = w;
+            tree[i] = w;
+            total += w;
+        }
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+        topBit = size == 0 ? 0 : Integer.highestOneBit(size);
+        return this;
+    }
+
+    /**
+     * 从候选中移除号码 v（杀号、已选胆号）；不在范围内或已移除时忽略。
+     *
+     * @return 是否确实移除
+     */
+    boolean remove(int v) {
+        int i = v - from + 1;
+        if (i < 1 || i > n || weight[i] == 0) {
+            return false;
+        }
+        long w = weight[i];
+        weight[i] = 0;
+        total -= w;
+        for (; i <= n; i += i & -i) {
+            tree[i] -= w;
+        }
+        return true;
+    }
+
+    boolean contains(int v) {
+        int i = v - from + 1;
+        return i >= 1 && i <= n && weight[i] > 0;
+    }
+
+    boolean isEmpty() {
+        return total <= 0;
+    }
+
+    /**
+     * 按权重抽取一个号码并移除；已无候选时返回 -1。
+     */
+    int take(Random rnd) {
+        if (total <= 0) {
+            return -1;
+        }
+        long r = (long) (rnd.nextDouble() * total);
+        // 找前缀和 > r 的最小下标
+        int pos = 0;
+        for (int step = topBit; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= n && tree[next] <= r) {
+                pos = next;
+                r -= tree[next];
+            }
+        }
+        int v = from + pos;
+        remove(v);
+        return v;
+    }
+}
@@ -3,20 +3,31 @@ package com.example.bicolorsphere.web;
 import com.example.bicolorsphere.repo.SsqDrawRepository;
 import com.example.bicolorsphere.service.SsqStatsService;
 import com.example.bicolorsphere.service.SsqSyncService;
+import com.example.bicolorsphere.service.SsqBacktestStoreService;
+import com.example.bicolorsphere.service.SsqBacktestSweepService;
+import com.example.bicolorsphere.service.SsqDrawImportService;
 import com.example.bicolorsphere.service.SsqExcelExportService;
+import com.example.bicolorsphere.service.SsqPortfolioService;
 import com.example.bicolorsphere.service.SsqPredictionService;
+import com.example.bicolorsphere.service.SsqSimulationService;
+import com.example.bicolorsphere.service.SsqSimilarityService;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 @RestController
 @RequestMapping("/api")
@@ -28,17 +39,35 @@ public class SsqController {
     private final SsqStatsService statsService;
     private final SsqExcelExportService excelExportService;
     private final SsqPredictionService predictionService;
+    private final SsqSimulationService simulationService;
+    private final SsqSimilarityService similarityService;
+    private final SsqPortfolioService portfolioService;
+    private final SsqBacktestSweepService sweepService;
+    private final SsqBacktestStoreService backtestStore;
+    private final SsqDrawImportService importService;
 
     public SsqController(SsqDrawRepository repository,
                          SsqSyncService syncService,
                          SsqStatsService statsService,
                          SsqExcelExportService excelExportService,
-                         SsqPredictionService predictionService) {
+                         SsqPredictionService predictionService,
+                         SsqSimulationService simulationService,
+                         SsqSimilarityService similarityService,
+                         SsqPortfolioService portfolioService,
+                         SsqBacktestSweepService sweepService,
+                         SsqBacktestStoreService backtestStore,
+                         SsqDrawImportService importService) {
         this.repository = repository;
         this.syncService = syncService;
         this.statsService = statsService;
         this.excelExportService = excelExportService;
         this.predictionService = predictionService;
+        this.simulationService = simulationService;
+        this.similarityService = similarityService;
+        this.portfolioService = portfolioService;
+        this.sweepService = sweepService;
+        this.backtestStore = backtestStore;
+        this.importService = importService;
     }
 
     @GetMapping("/health")
@@ -62,6 +91,13 @@ public class SsqController {
                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateTo,
                          @RequestParam(required = false) @Min(1) @Max(33) Integer includeRed,
                          @RequestParam(required = false) @Min(1) @Max(16) Integer includeBlue,
+                         @RequestParam(required = false) Integer minSum,
+                         @RequestParam(required = false) Integer maxSum,
+                         @RequestParam(required = false) Integer minSpan,
+                         @RequestParam(required = false) Integer maxSpan,
+                         @RequestParam(required = false) Integer minOdd,
+                         @RequestParam(required = false) Integer maxOdd,
+                         @RequestParam(required = false) String zoneRatio,
                          @RequestParam(defaultValue = "0") @Min(0) int page,
                          @RequestParam(defaultValue = "20") @Min(1) @Max(200) int size) {
         return repository.search(new SsqDrawRepository.SearchFilter(
@@ -73,7 +109,31 @@ public class SsqController {
                 includeBlue,
                 page,
                 size
-        )).asMap();
+        ).setFeatureRange(minSum, maxSum, minSpan, maxSpan, minOdd, maxOdd,
+                SsqStatsService.PredictOptions.parseZoneRatio(zoneRatio))).asMap();
+    }
+
+    /**
+     * 这注号码开过没有（6 红 / 6+1），以及与之共享至少 minShared 个红球的历史期；号码以空格或逗号分隔。
+     */
+    @GetMapping("/draws/lookup")
+    public Object lookup(@RequestParam String reds,
+                         @RequestParam(defaultValue = "0") @Min(0) @Max(16) int blue,
+                         @RequestParam(defaultValue = "4") @Min(0) @Max(6) int minShared,
+                         @RequestParam(defaultValue = "20") @Min(0) @Max(500) int limit) {
+        return predictionService.historyLookup(SsqStatsService.PredictOptions.parseNumSet(reds, 1, 33), blue, minShared, limit);
+    }
+
+    /**
+     * 与给定号码（或某一期开奖号码）最相似的 k 期，以及这些期的下一期号码统计。
+     */
+    @GetMapping("/draws/similar")
+    public Object similar(@RequestParam(required = false) String reds,
+                          @RequestParam(defaultValue = "0") @Min(0) @Max(16) int blue,
+                          @RequestParam(required = false) String drawNo,
+                          @RequestParam(defaultValue = "20") @Min(1) @Max(500) int k,
+                          @RequestParam(defaultValue = "false") boolean parallel) {
+        return similarityService.similar(SsqStatsService.PredictOptions.parseNumSet(reds, 1, 33), blue, drawNo, k, parallel);
     }
 
     @GetMapping("/draws/export")
@@ -83,8 +143,16 @@ public class SsqController {
                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateTo,
                                          @RequestParam(required = false) @Min(1) @Max(33) Integer includeRed,
                                          @RequestParam(required = false) @Min(1) @Max(16) Integer includeBlue,
+                                         @RequestParam(required = false) Integer minSum,
+                                         @RequestParam(required = false) Integer maxSum,
+                                         @RequestParam(required = false) Integer minSpan,
+                                         @RequestParam(required = false) Integer maxSpan,
+                                         @RequestParam(required = false) Integer minOdd,
+                                         @RequestParam(required = false) Integer maxOdd,
+                                         @RequestParam(required = false) String zoneRatio,
                                          @RequestParam(defaultValue = "5000") @Min(1) @Max(10000) int maxRows) throws IOException {
-        SsqDrawRepository.SearchFilter filter = new SsqDrawRepository.SearchFilter(drawNoFrom, drawNoTo, dateFrom, dateTo, includeRed, includeBlue, 0, maxRows);
+        SsqDrawRepository.SearchFilter filter = new SsqDrawRepository.SearchFilter(drawNoFrom, drawNoTo, dateFrom, dateTo, includeRed, includeBlue, 0, maxRows)
+                .setFeatureRange(minSum, maxSum, minSpan, maxSpan, minOdd, maxOdd, SsqStatsService.PredictOptions.parseZoneRatio(zoneRatio));
         byte[] bytes = excelExportService.exportDraws(repository.listForExport(filter, maxRows));
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=ssq_draws.xlsx")
@@ -95,13 +163,12 @@ public class SsqController {
     @PostMapping("/sync")
     public Object sync(@RequestParam(defaultValue = "1") @Min(1) int fromPage,
                        @RequestParam(defaultValue = "5") @Min(1) int toPage) throws IOException {
-        SsqSyncService.SyncResult r = syncService.syncPages(fromPage, toPage);
-        Map<String, Object> m = new HashMap<String, Object>();
-        m.put("fromPage", r.getFromPage());
-        m.put("toPage", r.getToPage());
-        m.put("fetched", r.getFetched());
-        m.put("inserted", r.getInserted());
-        m.put("errors", r.getErrors());
+        Map<String, Object> m;
+        try {
+            m = syncService.syncPages(fromPage, toPage).asMap();
+        } catch (SsqSyncService.SyncInProgressException e) {
+            return syncBusy(e);
+        }
         m.put("reconcile", predictionService.reconcileUnresolved(5000));
         return m;
     }
@@ -109,13 +176,44 @@ public class SsqController {
     @PostMapping("/sync/missing")
     public Object syncMissing(@RequestParam(defaultValue = "80") @Min(1) @Max(200) int maxPages,
                               @RequestParam(defaultValue = "3") @Min(1) @Max(20) int stopAfterNoInsertPages) {
-        SsqSyncService.SyncMissingResult r = syncService.syncMissing(maxPages, stopAfterNoInsertPages);
+        Map<String, Object> m;
+        try {
+            m = syncService.syncMissing(maxPages, stopAfterNoInsertPages).asMap();
+        } catch (SsqSyncService.SyncInProgressException e) {
+            return syncBusy(e);
+        }
+        m.put("reconcile", predictionService.reconcileUnresolved(5000));
+        return m;
+    }
+
+    /**
+     * 同步（接口、后台任务、定时）与导入不并发写库，已有一个在跑时返回 409。
+     */
+    private static ResponseEntity<Map<String, Object>> syncBusy(SsqSyncService.SyncInProgressException e) {
         Map<String, Object> m = new HashMap<String, Object>();
-        m.put("scannedPages", r.getScannedPages());
-        m.put("fetched", r.getFetched());
-        m.put("inserted", r.getInserted());
-        m.put("stopAfterNoInsertPages", r.getStopAfterNoInsertPages());
-        m.put("errors", r.getErrors());
+        m.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(m);
+    }
+
+    /**
+     * 抓取失败、等待下次同步补抓的页。
+     */
+    @GetMapping("/sync/failed")
+    public Object syncFailed(@RequestParam(defaultValue = "100") @Min(1) @Max(1000) int limit) {
+        return syncService.failedPages(limit);
+    }
+
+    /**
+     * 离线导入开奖历史，请求体为 CSV / gzip CSV / XLSX 原始字节，格式按内容自动识别。
+     */
+    @PostMapping("/import")
+    public Object importDraws(InputStream body) throws IOException {
+        Map<String, Object> m;
+        try {
+            m = importService.importStream(body).asMap();
+        } catch (SsqSyncService.SyncInProgressException e) {
+            return syncBusy(e);
+        }
         m.put("reconcile", predictionService.reconcileUnresolved(5000));
         return m;
     }
@@ -123,8 +221,9 @@ public class SsqController {
     @PostMapping("/predictions")
     public Object savePrediction(@RequestParam String drawNo,
                                  @RequestParam String reds,
-                                 @RequestParam @Min(1) @Max(16) int blue) {
-        return predictionService.savePrediction(drawNo, reds, blue);
+                                 @RequestParam @Min(1) @Max(16) int blue,
+                                 @RequestParam(defaultValue = "false") boolean checkHistory) {
+        return predictionService.savePrediction(drawNo, reds, blue, checkHistory);
     }
 
     @PostMapping("/predictions/reconcile")
@@ -154,10 +253,17 @@ public class SsqController {
         return statsService.omission(latestN);
     }
 
+    @GetMapping("/cooccurrence")
+    public Object cooccurrence(@RequestParam(required = false) @Min(1) Integer latestN,
+                               @RequestParam(defaultValue = "2") @Min(2) @Max(3) int order,
+                               @RequestParam(defaultValue = "20") @Min(1) @Max(5456) int top) {
+        return statsService.cooccurrence(latestN, order, top);
+    }
+
     @GetMapping("/predict")
     public Object predict(@RequestParam(defaultValue = "200") @Min(20) @Max(2000) int latestN,
                           @RequestParam(defaultValue = "frequency_top") String strategy,
-                          @RequestParam(defaultValue = "1") @Min(1) @Max(20) int count,
+                          @RequestParam(defaultValue = "1") @Min(1) @Max(SsqStatsService.MAX_PREDICT_COUNT) int count,
                           @RequestParam(required = false) Integer minSum,
                           @RequestParam(required = false) Integer maxSum,
                           @RequestParam(required = false) Integer minSpan,
@@ -169,10 +275,15 @@ public class SsqController {
                           @RequestParam(required = false) String killReds,
                           @RequestParam(required = false) String danBlues,
                           @RequestParam(required = false) String killBlues,
-                          @RequestParam(required = false) Integer maxTry) {
+                          @RequestParam(required = false) Integer maxTry,
+                          @RequestParam(required = false) @Min(0) @Max(1000) Integer pairWeight,
+                          @RequestParam(required = false) @Min(0) @Max(1000) Integer tripleWeight,
+                          @RequestParam(required = false) Long seed) {
         SsqStatsService.PredictOptions opt = buildPredictOptions(minSum, maxSum, minSpan, maxSpan, minOdd, maxOdd,
                 zoneRatio, danReds, killReds, danBlues, killBlues, maxTry);
-        return statsService.predict(latestN, strategy, count, opt);
+        opt.setPairWeight(pairWeight);
+        opt.setTripleWeight(tripleWeight);
+        return statsService.predict(latestN, strategy, count, opt, seed);
     }
 
     @GetMapping("/backtest")
@@ -190,19 +301,125 @@ public class SsqController {
                            @RequestParam(required = false) String killReds,
                            @RequestParam(required = false) String danBlues,
                            @RequestParam(required = false) String killBlues,
-                           @RequestParam(required = false) Integer maxTry) {
+                           @RequestParam(required = false) Integer maxTry,
+                           @RequestParam(required = false) @Min(0) @Max(1000) Integer pairWeight,
+                           @RequestParam(required = false) @Min(0) @Max(1000) Integer tripleWeight,
+                           @RequestParam(required = false) Long seed,
+                           @RequestParam(defaultValue = "false") boolean stored) {
         SsqStatsService.PredictOptions opt = buildPredictOptions(minSum, maxSum, minSpan, maxSpan, minOdd, maxOdd,
                 zoneRatio, danReds, killReds, danBlues, killBlues, maxTry);
-        return statsService.backtest(strategy, trainWindow, testCount, opt);
+        opt.setPairWeight(pairWeight);
+        opt.setTripleWeight(tripleWeight);
+        if (stored) {
+            return backtestStore.backtest(strategy, trainWindow, testCount, opt, seed);
+        }
+        return statsService.backtest(strategy, trainWindow, testCount, opt, seed);
+    }
+
+    /**
+     * 参数扫描：各列表取笛卡尔积；任一约束参数非空时额外加入名为 custom 的预设。
+     */
+    @GetMapping("/backtest/sweep")
+    public Object backtestSweep(@RequestParam(defaultValue = "frequency_top") String strategies,
+                                @RequestParam(defaultValue = "200") String trainWindows,
+                                @RequestParam(defaultValue = "50") String testCounts,
+                                @RequestParam(defaultValue = "none") String presets,
+                                @RequestParam(defaultValue = "50") @Min(1) @Max(1000) int top,
+                                @RequestParam(required = false) Integer minSum,
+                                @RequestParam(required = false) Integer maxSum,
+                                @RequestParam(required = false) Integer minSpan,
+                                @RequestParam(required = false) Integer maxSpan,
+                                @RequestParam(required = false) Integer minOdd,
+                                @RequestParam(required = false) Integer maxOdd,
+                                @RequestParam(required = false) String zoneRatio,
+                                @RequestParam(required = false) String danReds,
+                                @RequestParam(required = false) String killReds,
+                                @RequestParam(required = false) String danBlues,
+                                @RequestParam(required = false) String killBlues,
+                                @RequestParam(required = false) Integer maxTry,
+                                @RequestParam(required = false) @Min(0) @Max(1000) Integer pairWeight,
+                                @RequestParam(required = false) @Min(0) @Max(1000) Integer tripleWeight,
+                                @RequestParam(required = false) Long seed) {
+        SsqStatsService.PredictOptions custom = null;
+        if (minSum != null || maxSum != null || minSpan != null || maxSpan != null || minOdd != null || maxOdd != null
+                || zoneRatio != null || danReds != null || killReds != null || danBlues != null || killBlues != null
+                || maxTry != null || pairWeight != null || tripleWeight != null) {
+            custom = buildPredictOptions(minSum, maxSum, minSpan, maxSpan, minOdd, maxOdd,
+                    zoneRatio, danReds, killReds, danBlues, killBlues, maxTry);
+            custom.setPairWeight(pairWeight);
+            custom.setTripleWeight(tripleWeight);
+        }
+        Set<Integer> trains = SsqStatsService.PredictOptions.parseNumSet(trainWindows, 50, 2000);
+        Set<Integer> tests = SsqStatsService.PredictOptions.parseNumSet(testCounts, 10, 500);
+        return sweepService.sweep(SsqRequestParams.splitCsv(strategies),
+                trains == null ? new ArrayList<Integer>() : new ArrayList<Integer>(new TreeSet<Integer>(trains)),
+                tests == null ? new ArrayList<Integer>() : new ArrayList<Integer>(new TreeSet<Integer>(tests)),
+                SsqRequestParams.splitCsv(presets), custom, seed, top);
     }
 
     @GetMapping("/recommend")
     public Object recommend(@RequestParam(defaultValue = "200") @Min(50) @Max(2000) int trainWindow,
-                            @RequestParam(defaultValue = "80") @Min(10) @Max(500) int testCount) {
-        return statsService.recommend(trainWindow, testCount);
+                            @RequestParam(defaultValue = "80") @Min(10) @Max(500) int testCount,
+                            @RequestParam(required = false) Long seed) {
+        return backtestStore.recommend(trainWindow, testCount, seed);
+    }
+
+    @GetMapping("/simulate")
+    public Object simulate(@RequestParam(defaultValue = "frequency_top") String strategy,
+                           @RequestParam(defaultValue = "200") @Min(30) @Max(2000) int latestN,
+                           @RequestParam(defaultValue = "20") @Min(1) @Max(1000) int tickets,
+                           @RequestParam(defaultValue = "1000000") @Min(1000) long draws,
+                           @RequestParam(defaultValue = "history") String prefix,
+                           @RequestParam(required = false) Integer minSum,
+                           @RequestParam(required = false) Integer maxSum,
+                           @RequestParam(required = false) Integer minSpan,
+                           @RequestParam(required = false) Integer maxSpan,
+                           @RequestParam(required = false) Integer minOdd,
+                           @RequestParam(required = false) Integer maxOdd,
+                           @RequestParam(required = false) String zoneRatio,
+                           @RequestParam(required = false) String danReds,
+                           @RequestParam(required = false) String killReds,
+                           @RequestParam(required = false) String danBlues,
+                           @RequestParam(required = false) String killBlues,
+                           @RequestParam(required = false) Integer maxTry,
+                           @RequestParam(required = false) Long seed) {
+        SsqStatsService.PredictOptions opt = buildPredictOptions(minSum, maxSum, minSpan, maxSpan, minOdd, maxOdd,
+                zoneRatio, danReds, killReds, danBlues, killBlues, maxTry);
+        return simulationService.simulate(strategy, latestN, tickets, draws, "synthetic".equalsIgnoreCase(prefix), opt, seed);
+    }
+
+    /**
+     * 覆盖优化的投注组合：pool 为空时按策略采样频次取前 poolSize 个红球作号码池。
+     */
+    @GetMapping("/portfolio")
+    public Object portfolio(@RequestParam(defaultValue = "frequency_top") String strategy,
+                            @RequestParam(defaultValue = "200") @Min(20) @Max(2000) int latestN,
+                            @RequestParam(defaultValue = "10") @Min(1) @Max(500) int tickets,
+                            @RequestParam(required = false) String pool,
+                            @RequestParam(defaultValue = "12") @Min(6) @Max(20) int poolSize,
+                            @RequestParam(defaultValue = "4") @Min(2) @Max(6) int match,
+                            @RequestParam(defaultValue = "6") @Min(2) @Max(6) int ifDrawn,
+                            @RequestParam(defaultValue = "1000") @Min(10) long timeBudgetMs,
+                            @RequestParam(required = false) Integer minSum,
+                            @RequestParam(required = false) Integer maxSum,
+                            @RequestParam(required = false) Integer minSpan,
+                            @RequestParam(required = false) Integer maxSpan,
+                            @RequestParam(required = false) Integer minOdd,
+                            @RequestParam(required = false) Integer maxOdd,
+                            @RequestParam(required = false) String zoneRatio,
+                            @RequestParam(required = false) String danReds,
+                            @RequestParam(required = false) String killReds,
+                            @RequestParam(required = false) String danBlues,
+                            @RequestParam(required = false) String killBlues,
+                            @RequestParam(required = false) Integer maxTry,
+                            @RequestParam(required = false) Long seed) {
+        SsqStatsService.PredictOptions opt = buildPredictOptions(minSum, maxSum, minSpan, maxSpan, minOdd, maxOdd,
+                zoneRatio, danReds, killReds, danBlues, killBlues, maxTry);
+        return portfolioService.portfolio(strategy, latestN, opt, tickets,
+                SsqStatsService.PredictOptions.parseNumSet(pool, 1, 33), poolSize, match, ifDrawn, timeBudgetMs, seed);
     }
 
-    private static SsqStatsService.PredictOptions buildPredictOptions(Integer minSum,
+    static SsqStatsService.PredictOptions buildPredictOptions(Integer minSum,
                                                                       Integer maxSum,
                                                                       Integer minSpan,
                                                                       Integer maxSpan,
@@ -0,0 +1,87 @@
+package com.example.bicolorsphere.web;
+
+import com.example.bicolorsphere.service.SsqJobService;
+import com.example.bicolorsphere.service.SsqStatsService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 后台任务接口：POST 提交后立即返回任务 id，GET 轮询状态/进度，完成后 result 与同步接口返回一致。
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@CrossOrigin
+public class SsqJobController {
+
+    private final SsqJobService jobService;
+
+    public SsqJobController(SsqJobService jobService) {
+        this.jobService = jobService;
+    }
+
+    @PostMapping("/{type}")
+    public ResponseEntity<Map<String, Object>> submit(@PathVariable String type,
+                                                      @RequestParam(defaultValue = "1") int fromPage,
+                                                      @RequestParam(defaultValue = "5") int toPage,
+                                                      @RequestParam(defaultValue = "80") int maxPages,
+                                                      @RequestParam(defaultValue = "3") int stopAfterNoInsertPages,
+                                                      @RequestParam(defaultValue = "frequency_top") String strategy,
+                                                      @RequestParam(defaultValue = "200") int trainWindow,
+                                                      @RequestParam(required = false) Integer testCount,
+                                                      @RequestParam(required = false) Integer minSum,
+                                                      @RequestParam(required = false) Integer maxSum,
+                                                      @RequestParam(required = false) Integer minSpan,
+                                                      @RequestParam(required = false) Integer maxSpan,
+                                                      @RequestParam(required = false) Integer minOdd,
+                                                      @RequestParam(required = false) Integer maxOdd,
+                                                      @RequestParam(required = false) String zoneRatio,
+                                                      @RequestParam(required = false) String danReds,
+                                                      @RequestParam(required = false) String killReds,
+                                                      @RequestParam(required = false) String danBlues,
+                                                      @RequestParam(required = false) String killBlues,
+                                                      @RequestParam(required = false) Integer maxTry,
+                                                      @RequestParam(required = false) Long seed) {
+        // 参数范围与对应的同步接口保持一致
+        int tw = SsqRequestParams.clamp(trainWindow, 50, 2000);
+        SsqJobService.Submission submitted;
+        if (SsqJobService.TYPE_SYNC.equals(type)) {
+            submitted = jobService.submitSync(Math.max(1, fromPage), Math.max(1, toPage));
+        } else if (SsqJobService.TYPE_SYNC_MISSING.equals(type)) {
+            submitted = jobService.submitSyncMissing(SsqRequestParams.clamp(maxPages, 1, 200),
+                    SsqRequestParams.clamp(stopAfterNoInsertPages, 1, 20));
+        } else if (SsqJobService.TYPE_BACKTEST.equals(type)) {
+            SsqStatsService.PredictOptions opt = SsqController.buildPredictOptions(minSum, maxSum, minSpan, maxSpan,
+                    minOdd, maxOdd, zoneRatio, danReds, killReds, danBlues, killBlues, maxTry);
+            submitted = jobService.submitBacktest(strategy, tw,
+                    SsqRequestParams.clamp(testCount == null ? 50 : testCount, 10, 500), opt, seed);
+        } else if (SsqJobService.TYPE_RECOMMEND.equals(type)) {
+            submitted = jobService.submitRecommend(tw, SsqRequestParams.clamp(testCount == null ? 80 : testCount, 10, 500), seed);
+        } else {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("error", "不支持的任务类型: " + type);
+            return ResponseEntity.badRequest().body(m);
+        }
+        SsqJobService.Job job = submitted.getJob();
+        Map<String, Object> m = job.asMap(false);
+        if (SsqJobService.STATUS_FAILED.equals(job.getStatus())) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(m);
+        }
+        m.put("deduplicated", submitted.isDeduplicated());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(m);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> get(@PathVariable String id) {
+        SsqJobService.Job job = jobService.get(id);
+        if (job == null) {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("error", "任务不存在或已过期: " + id);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(m);
+        }
+        return ResponseEntity.ok(job.asMap(job.isDone()));
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.bicolorsphere.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 各控制器共用的请求参数处理。
+ * <p>
+ * 项目没有开启方法级校验（@Validated），参数上的 @Min / @Max 只是文档，真正的范围要在这里显式收紧。
+ */
+final class SsqRequestParams {
+
+    private SsqRequestParams() {
+    }
+
+    static int clamp(int v, int min, int max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    /**
+     * 以逗号（含全角）或空白分隔的列表参数，去掉空项；参数缺省时为空列表。
+     */
+    static List<String> splitCsv(String raw) {
+        List<String> out = new ArrayList<String>();
+        if (raw == null) return out;
+        for (String s : raw.split("[,，\\s]+")) {
+            if (!s.trim().isEmpty()) out.add(s.trim());
+        }
+        return out;
+    }
+}
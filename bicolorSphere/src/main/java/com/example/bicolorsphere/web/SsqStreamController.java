@@ -0,0 +1,145 @@
+package com.example.bicolorsphere.web;
+
+import com.example.bicolorsphere.service.SsqBacktestStoreService;
+import com.example.bicolorsphere.service.SsqJobService;
+import com.example.bicolorsphere.service.SsqStatsService;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 回测/推荐的 SSE 版本：逐期（step）或逐候选（candidate）推送，最后推送 summary（与非流式接口返回一致）。
+ * 客户端断开后后续计算会中止。
+ */
+@RestController
+@RequestMapping("/api")
+@CrossOrigin
+public class SsqStreamController {
+
+    private static final Logger log = LoggerFactory.getLogger(SsqStreamController.class);
+
+    private final SsqStatsService statsService;
+    private final SsqBacktestStoreService backtestStore;
+    private final SsqJobService jobService;
+    private final long timeoutMillis;
+
+    public SsqStreamController(SsqStatsService statsService,
+                               SsqBacktestStoreService backtestStore,
+                               SsqJobService jobService,
+                               @Value("${app.ssq.stream.timeoutSeconds:600}") long timeoutSeconds) {
+        this.statsService = statsService;
+        this.backtestStore = backtestStore;
+        this.jobService = jobService;
+        this.timeoutMillis = Math.max(10, timeoutSeconds) * 1000L;
+    }
+
+    @GetMapping(value = "/backtest/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter backtestStream(@RequestParam(defaultValue = "frequency_top") String strategy,
+                                     @RequestParam(defaultValue = "200") @Min(50) @Max(2000) int trainWindow,
+                                     @RequestParam(defaultValue = "50") @Min(10) @Max(500) int testCount,
+                                     @RequestParam(required = false) Integer minSum,
+                                     @RequestParam(required = false) Integer maxSum,
+                                     @RequestParam(required = false) Integer minSpan,
+                                     @RequestParam(required = false) Integer maxSpan,
+                                     @RequestParam(required = false) Integer minOdd,
+                                     @RequestParam(required = false) Integer maxOdd,
+                                     @RequestParam(required = false) String zoneRatio,
+                                     @RequestParam(required = false) String danReds,
+                                     @RequestParam(required = false) String killReds,
+                                     @RequestParam(required = false) String danBlues,
+                                     @RequestParam(required = false) String killBlues,
+                                     @RequestParam(required = false) Integer maxTry,
+                                     @RequestParam(required = false) Long seed) {
+        SsqStatsService.PredictOptions opt = SsqController.buildPredictOptions(minSum, maxSum, minSpan, maxSpan,
+                minOdd, maxOdd, zoneRatio, danReds, killReds, danBlues, killBlues, maxTry);
+        // 范围与 /api/backtest 一致；超大窗口会长时间占住 SSE 线程池
+        int tw = SsqRequestParams.clamp(trainWindow, 50, 2000);
+        int tc = SsqRequestParams.clamp(testCount, 10, 500);
+        return stream(listener -> statsService.backtest(strategy, tw, tc, opt, seed, listener));
+    }
+
+    @GetMapping(value = "/recommend/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter recommendStream(@RequestParam(defaultValue = "200") @Min(50) @Max(2000) int trainWindow,
+                                      @RequestParam(defaultValue = "80") @Min(10) @Max(500) int testCount,
+                                      @RequestParam(required = false) Long seed) {
+        int tw = SsqRequestParams.clamp(trainWindow, 50, 2000);
+        int tc = SsqRequestParams.clamp(testCount, 10, 500);
+        return stream(listener -> backtestStore.recommend(tw, tc, seed, listener));
+    }
+
+    private SseEmitter stream(StreamTask task) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        AtomicBoolean closed = new AtomicBoolean();
+        emitter.onCompletion(() -> closed.set(true));
+        emitter.onTimeout(() -> closed.set(true));
+        emitter.onError(e -> closed.set(true));
+
+        SsqStatsService.BacktestListener listener = new SsqStatsService.BacktestListener() {
+            @Override
+            public void onStep(Map<String, Object> step) {
+                send(emitter, closed, "step", step);
+            }
+
+            @Override
+            public void onCandidate(Map<String, Object> candidate) {
+                send(emitter, closed, "candidate", candidate);
+            }
+        };
+
+        try {
+            jobService.execute(() -> {
+                try {
+                    Map<String, Object> summary = task.run(listener);
+                    send(emitter, closed, "summary", summary);
+                    emitter.complete();
+                } catch (CancellationException e) {
+                    log.debug("sse stream cancelled: {}", e.getMessage());
+                } catch (Exception e) {
+                    log.warn("sse stream failed", e);
+                    emitter.completeWithError(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("error", "任务队列已满，请稍后再试");
+            try {
+                emitter.send(SseEmitter.event().name("error").data(m));
+            } catch (IOException ignore) {
+                // 客户端已断开
+            }
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    /**
+     * 发送失败（客户端断开）时抛出 CancellationException，让回测循环尽快退出。
+     */
+    private static void send(SseEmitter emitter, AtomicBoolean closed, String name, Object data) {
+        if (closed.get()) {
+            throw new CancellationException("client disconnected");
+        }
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            closed.set(true);
+            throw new CancellationException("client disconnected: " + e.getMessage());
+        }
+    }
+
+    private interface StreamTask {
+        Map<String, Object> run(SsqStatsService.BacktestListener listener);
+    }
+}
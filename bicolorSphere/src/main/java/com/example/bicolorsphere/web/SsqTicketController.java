@@ -0,0 +1,47 @@
+package com.example.bicolorsphere.web;
+
+import com.example.bicolorsphere.service.SsqStatsService;
+import com.example.bicolorsphere.service.SsqTicketService;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 兑奖：批量单式（请求体为纯文本，每行一注，按流读取）与复式/胆拖（组合计数，不展开单注）。
+ */
+@RestController
+@RequestMapping("/api/tickets")
+@CrossOrigin
+public class SsqTicketController {
+
+    private final SsqTicketService ticketService;
+
+    public SsqTicketController(SsqTicketService ticketService) {
+        this.ticketService = ticketService;
+    }
+
+    @PostMapping("/check")
+    public Object check(@RequestParam(required = false) String drawNos,
+                        @RequestParam(defaultValue = SsqTicketService.DETAILS_WINNERS) String details,
+                        InputStream body) throws IOException {
+        return ticketService.check(new InputStreamReader(body, StandardCharsets.UTF_8), SsqRequestParams.splitCsv(drawNos), details);
+    }
+
+    /**
+     * 复式/胆拖：danReds 为空即复式，号码以空格或逗号分隔。
+     */
+    @GetMapping("/compound")
+    public Object compound(@RequestParam(required = false) String danReds,
+                           @RequestParam String reds,
+                           @RequestParam String blues,
+                           @RequestParam(required = false) String drawNos) {
+        return ticketService.checkCompound(
+                SsqStatsService.PredictOptions.parseNumSet(danReds, 1, 33),
+                SsqStatsService.PredictOptions.parseNumSet(reds, 1, 33),
+                SsqStatsService.PredictOptions.parseNumSet(blues, 1, 16),
+                SsqRequestParams.splitCsv(drawNos));
+    }
+}
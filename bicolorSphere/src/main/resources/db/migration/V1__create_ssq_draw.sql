@@ -0,0 +1,15 @@
+CREATE TABLE IF NOT EXISTS ssq_draw (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  draw_no VARCHAR(20) NOT NULL COMMENT '期号',
+  draw_date DATE NULL COMMENT '开奖日期',
+  red1 INT NOT NULL COMMENT '红球1',
+  red2 INT NOT NULL COMMENT '红球2',
+  red3 INT NOT NULL COMMENT '红球3',
+  red4 INT NOT NULL COMMENT '红球4',
+  red5 INT NOT NULL COMMENT '红球5',
+  red6 INT NOT NULL COMMENT '红球6',
+  blue INT NOT NULL COMMENT '蓝球',
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  UNIQUE KEY uk_draw_no (draw_no),
+  KEY idx_draw_date (draw_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='双色球开奖记录表';
@@ -0,0 +1,12 @@
+-- 旧库中 ssq_draw 由早期 schema.sql 建表（TINYINT、无注释），此处一次性补齐字段类型与注释。
+ALTER TABLE ssq_draw COMMENT='双色球开奖记录表';
+ALTER TABLE ssq_draw
+  MODIFY COLUMN draw_no VARCHAR(20) NOT NULL COMMENT '期号',
+  MODIFY COLUMN draw_date DATE NULL COMMENT '开奖日期',
+  MODIFY COLUMN red1 INT NOT NULL COMMENT '红球1',
+  MODIFY COLUMN red2 INT NOT NULL COMMENT '红球2',
+  MODIFY COLUMN red3 INT NOT NULL COMMENT '红球3',
+  MODIFY COLUMN red4 INT NOT NULL COMMENT '红球4',
+  MODIFY COLUMN red5 INT NOT NULL COMMENT '红球5',
+  MODIFY COLUMN red6 INT NOT NULL COMMENT '红球6',
+  MODIFY COLUMN blue INT NOT NULL COMMENT '蓝球';
@@ -0,0 +1,15 @@
+CREATE TABLE IF NOT EXISTS ssq_prediction_record (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键',
+  draw_no VARCHAR(20) NOT NULL COMMENT '期号',
+  predict_reds VARCHAR(64) NOT NULL COMMENT '预测红球（两位数空格分隔）',
+  predict_blue INT NOT NULL COMMENT '预测蓝球',
+  actual_reds VARCHAR(64) NULL COMMENT '真实红球（两位数空格分隔）',
+  actual_blue INT NULL COMMENT '真实蓝球',
+  red_hit INT NULL COMMENT '红球命中个数(0-6)',
+  blue_hit INT NULL COMMENT '蓝球是否命中(0/1)',
+  hit_rate DECIMAL(10,6) NULL COMMENT '命中率=(红中+蓝中)/7',
+  error_rate DECIMAL(10,6) NULL COMMENT '误差率=1-命中率',
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  UNIQUE KEY uk_draw_pick (draw_no, predict_reds, predict_blue)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='双色球预测记录表';
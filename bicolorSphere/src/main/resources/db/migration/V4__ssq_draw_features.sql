@@ -0,0 +1,16 @@
+-- 开奖号码派生特征：入库时由应用计算写入，旧数据在启动时回填（见 SsqDrawFeatureBackfill）。
+ALTER TABLE ssq_draw
+  ADD COLUMN red_sum INT NULL COMMENT '红球和值',
+  ADD COLUMN red_span INT NULL COMMENT '红球跨度',
+  ADD COLUMN odd_count INT NULL COMMENT '红球奇数个数',
+  ADD COLUMN zone1 INT NULL COMMENT '一区(1-11)红球个数',
+  ADD COLUMN zone2 INT NULL COMMENT '二区(12-22)红球个数',
+  ADD COLUMN zone3 INT NULL COMMENT '三区(23-33)红球个数',
+  ADD COLUMN ac_value INT NULL COMMENT 'AC值(红球两两差值去重个数-5)',
+  ADD COLUMN consecutive_pairs INT NULL COMMENT '连号对数',
+  ADD COLUMN repeat_prev INT NULL COMMENT '与上一期重复的红球个数';
+
+CREATE INDEX idx_red_sum ON ssq_draw (red_sum);
+CREATE INDEX idx_red_span ON ssq_draw (red_span);
+CREATE INDEX idx_odd_count ON ssq_draw (odd_count);
+CREATE INDEX idx_zone_sum ON ssq_draw (zone1, zone2, zone3, red_sum);
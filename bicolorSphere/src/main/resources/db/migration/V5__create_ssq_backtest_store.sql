@@ -0,0 +1,36 @@
+-- 持久化的滚动回测：每个配置（策略 + 约束 + 训练窗口 + seed）逐期存预测与命中，新数据入库后只追加新期（见 SsqBacktestStoreService）。
+CREATE TABLE IF NOT EXISTS ssq_backtest_config (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键',
+  strategy VARCHAR(32) NOT NULL COMMENT '策略',
+  options_key VARCHAR(512) NOT NULL DEFAULT '' COMMENT '约束（规范化查询串，空为不带约束）',
+  train_window INT NOT NULL COMMENT '训练窗口期数',
+  seed BIGINT NOT NULL COMMENT '随机种子',
+  steps INT NOT NULL DEFAULT 0 COMMENT '已存期数',
+  last_draw_no VARCHAR(20) NULL COMMENT '最后一期被预测期号',
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  UNIQUE KEY uk_backtest_config (strategy, options_key, train_window, seed)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='双色球滚动回测配置表';
+
+CREATE TABLE IF NOT EXISTS ssq_backtest_step (
+  config_id BIGINT NOT NULL COMMENT '回测配置 id',
+  step_no INT NOT NULL COMMENT '第几期（从 1 起，按期号递增）',
+  draw_no VARCHAR(20) NOT NULL COMMENT '被预测期号',
+  window_start VARCHAR(20) NOT NULL COMMENT '训练窗口首期期号（用于发现补录导致的窗口变化）',
+  predict_reds VARCHAR(64) NOT NULL COMMENT '预测红球（两位数空格分隔）',
+  predict_blue INT NOT NULL COMMENT '预测蓝球',
+  red_hit INT NOT NULL COMMENT '红球命中个数(0-6)',
+  blue_hit TINYINT NOT NULL COMMENT '蓝球是否命中(0/1)',
+  cum_red_hit INT NOT NULL COMMENT '截至本期累计红球命中',
+  cum_blue_hit INT NOT NULL COMMENT '截至本期累计蓝球命中期数',
+  cum_both_hit INT NOT NULL COMMENT '截至本期累计红蓝同时命中期数',
+  cum_dist0 INT NOT NULL COMMENT '截至本期红球命中 0 个的期数',
+  cum_dist1 INT NOT NULL COMMENT '截至本期红球命中 1 个的期数',
+  cum_dist2 INT NOT NULL COMMENT '截至本期红球命中 2 个的期数',
+  cum_dist3 INT NOT NULL COMMENT '截至本期红球命中 3 个的期数',
+  cum_dist4 INT NOT NULL COMMENT '截至本期红球命中 4 个的期数',
+  cum_dist5 INT NOT NULL COMMENT '截至本期红球命中 5 个的期数',
+  cum_dist6 INT NOT NULL COMMENT '截至本期红球命中 6 个的期数',
+  PRIMARY KEY (config_id, step_no),
+  UNIQUE KEY uk_backtest_step_draw (config_id, draw_no)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='双色球滚动回测逐期结果表';
@@ -0,0 +1,9 @@
+-- 抓取失败页的持久化重试队列：同步时重试用尽仍失败的页记在这里，之后每次同步结束前先补抓（见 SsqCrawlScheduler）。
+CREATE TABLE IF NOT EXISTS ssq_crawl_failed_page (
+  page_num INT PRIMARY KEY COMMENT '失败的列表页页码',
+  newest_draw_no VARCHAR(20) NULL COMMENT '首次失败时库里最新期号（据此估算之后新开奖导致的翻页偏移）',
+  attempts INT NOT NULL DEFAULT 1 COMMENT '累计失败次数',
+  last_error VARCHAR(512) NULL COMMENT '最近一次失败原因',
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '首次失败时间',
+  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最近失败时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='双色球抓取失败页重试队列';
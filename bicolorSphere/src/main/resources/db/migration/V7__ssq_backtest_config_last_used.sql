@@ -0,0 +1,11 @@
+-- 持久化回测配置数设上限：按最近一次被查询的时间淘汰（见 SsqBacktestStoreService），并清掉未规范化策略名存下的配置。
+ALTER TABLE ssq_backtest_config
+  ADD COLUMN last_used_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '最近一次被查询的时间';
+
+CREATE INDEX idx_backtest_config_last_used ON ssq_backtest_config (last_used_at);
+
+DELETE s FROM ssq_backtest_step s JOIN ssq_backtest_config c ON c.id = s.config_id
+  WHERE c.strategy NOT IN ('frequency_top', 'omission_top', 'hybrid', 'weighted_random', 'zone_balanced', 'markov', 'bayes', 'ml');
+
+DELETE FROM ssq_backtest_config
+  WHERE strategy NOT IN ('frequency_top', 'omission_top', 'hybrid', 'weighted_random', 'zone_balanced', 'markov', 'bayes', 'ml');
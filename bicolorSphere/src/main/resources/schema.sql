@@ -1,15 +0,0 @@
-CREATE TABLE IF NOT EXISTS ssq_draw (
-  id BIGINT PRIMARY KEY AUTO_INCREMENT,
-  draw_no VARCHAR(16) NOT NULL,
-  draw_date DATE NULL,
-  red1 TINYINT NOT NULL,
-  red2 TINYINT NOT NULL,
-  red3 TINYINT NOT NULL,
-  red4 TINYINT NOT NULL,
-  red5 TINYINT NOT NULL,
-  red6 TINYINT NOT NULL,
-  blue TINYINT NOT NULL,
-  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-  UNIQUE KEY uk_draw_no (draw_no),
-  KEY idx_draw_date (draw_date)
-);